@@ -140,6 +140,55 @@ public class CDXQuery {
 		showResumeKey = ServletRequestUtils.getBooleanParameter(request, "showResumeKey", false);		
 	}
 
+	/**
+	 * @return a key identifying the response to this query, with every
+	 * parameter that affects the output, for use in a response cache
+	 */
+	public String getCacheKey()
+	{
+		StringBuilder sb = new StringBuilder();
+		appendKey(sb, url);
+		appendKey(sb, matchType);
+		appendKey(sb, from);
+		appendKey(sb, to);
+		appendKey(sb, closest);
+		appendKey(sb, sort);
+		appendKey(sb, collapseTime);
+		appendKey(sb, output);
+		appendKey(sb, filter);
+		appendKey(sb, collapse);
+		appendKey(sb, showDupeCount);
+		appendKey(sb, resolveRevisits);
+		appendKey(sb, showGroupCount);
+		appendKey(sb, lastSkipTimestamp);
+		appendKey(sb, showUniqCount);
+		appendKey(sb, offset);
+		appendKey(sb, limit);
+		appendKey(sb, last);
+		appendKey(sb, fastLatest);
+		appendKey(sb, fl);
+		appendKey(sb, page);
+		appendKey(sb, pageSize);
+		appendKey(sb, showNumPages);
+		appendKey(sb, showPagedIndex);
+		appendKey(sb, resumeKey);
+		appendKey(sb, showResumeKey);
+		return sb.toString();
+	}
+	
+	protected static void appendKey(StringBuilder sb, Object value)
+	{
+		if (value instanceof String[]) {
+			for (String s : (String[])value) {
+				sb.append(s.length()).append(':').append(s);
+			}
+			sb.append(';');
+		} else {
+			String s = String.valueOf(value);
+			sb.append(s.length()).append(':').append(s);
+		}
+	}
+
 	public String getUrl() {
 		return url;
 	}
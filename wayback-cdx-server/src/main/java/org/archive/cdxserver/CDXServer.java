@@ -1,10 +1,24 @@
 
 package org.archive.cdxserver;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,10 +37,14 @@ import org.archive.cdxserver.processor.ForwardRevisitResolver;
 import org.archive.cdxserver.processor.GroupCountProcessor;
 import org.archive.cdxserver.processor.LastNLineProcessor;
 import org.archive.cdxserver.processor.ReverseRevisitResolver;
+import org.archive.cdxserver.util.CDXResponseCache;
+import org.archive.cdxserver.util.CapturingResponseWrapper;
 import org.archive.cdxserver.writer.CDXWriter;
+import org.archive.cdxserver.writer.HttpCDXWriter;
 import org.archive.cdxserver.writer.JsonWriter;
 import org.archive.cdxserver.writer.MementoLinkWriter;
 import org.archive.cdxserver.writer.PlainTextWriter;
+import org.archive.cdxserver.writer.RawLineWriter;
 import org.archive.format.cdx.CDXInputSource;
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.CDXLineFactory;
@@ -68,6 +86,19 @@ public class CDXServer extends BaseCDXServer {
 		if (defaultParams == null) {
 			defaultParams = new ZipNumParams(maxPageSize, maxPageSize, 0, false);
 		}
+		
+		if ((zipnumSource != null) && (exportThreads > 0)) {
+			exportExecutor = Executors.newFixedThreadPool(exportThreads, new ThreadFactory() {
+				AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "cdx-export-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
 
 		super.afterPropertiesSet();
 	}
@@ -78,6 +109,16 @@ public class CDXServer extends BaseCDXServer {
 	protected String[] noCollapsePrefix = null;
 	
 	protected ZipNumParams defaultParams;
+	
+	public final static String X_NEXT_PAGE = "X-CDX-Next-Page";
+	
+	// Bulk export: number of pages read and compressed concurrently,
+	// and the most pages written by a single request (0 for all)
+	protected int exportThreads = 4;
+	protected int exportMaxPages = 0;
+	protected ExecutorService exportExecutor;
+	
+	protected CDXResponseCache responseCache = null;
 
 	public ZipNumCluster getZipnumSource() {
 		return zipnumSource;
@@ -127,6 +168,33 @@ public class CDXServer extends BaseCDXServer {
 		this.noCollapsePrefix = noCollapsePrefix;
 	}
 
+	public int getExportThreads() {
+		return exportThreads;
+	}
+
+	public void setExportThreads(int exportThreads) {
+		this.exportThreads = exportThreads;
+	}
+
+	public int getExportMaxPages() {
+		return exportMaxPages;
+	}
+
+	public void setExportMaxPages(int exportMaxPages) {
+		this.exportMaxPages = exportMaxPages;
+	}
+
+	public CDXResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * @param responseCache optional cache of complete responses to /cdx
+	 */
+	public void setResponseCache(CDXResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
 	public CDXInputSource getCdxSource() {
 		return cdxSource;
 	}
@@ -158,48 +226,128 @@ public class CDXServer extends BaseCDXServer {
 		
 		boolean gzip = determineGzip(request, query);
 		
+		AuthToken authToken = super.createAuthToken(request);
+		
+		String cacheKey = null;
+		CapturingResponseWrapper capture = null;
+		
+		if ((responseCache != null) && (query.url != null)) {
+			cacheKey = createCacheKey(request, query, authToken, gzip);
+			
+			try {
+				if (responseCache.writeCached(cacheKey, response)) {
+					return;
+				}
+			} catch (IOException io) {
+				return;
+			}
+			
+			capture = new CapturingResponseWrapper(response, responseCache.getMaxEntryBytes());
+			response = capture;
+		}
+		
 		try {
 		
 			if (query.output.equals("json")) {
 				responseWriter = new JsonWriter(response, gzip);
+			} else if (query.output.equals("ndjson")) {
+				responseWriter = new JsonWriter(response, gzip, true);
 			} else if (query.output.equals("memento")) {
 				responseWriter = new MementoLinkWriter(request, response, query, gzip);			
 			} else {
 				responseWriter = new PlainTextWriter(response, gzip);
 			}
 			
-			AuthToken authToken = super.createAuthToken(request);
-		
 			getCdx(query, authToken, responseWriter);
 			
 		} catch (IOException io) {
 			responseWriter.serverError(io);
+			capture = null;
 		} catch (RuntimeException rte) {
 			responseWriter.serverError(rte);
+			capture = null;
 		} finally {
 			if (responseWriter != null) {
 				responseWriter.close();
 			}
 		}
+		
+		if ((capture != null) && (responseWriter != null) && !responseWriter.isAborted()) {
+			cacheResponse(cacheKey, capture, query);
+		}
+	}
+	
+	protected String createCacheKey(HttpServletRequest request, CDXQuery query, AuthToken authToken, boolean gzip)
+	{
+		// auth level: the access checks below depend only on these
+		boolean allUrl = authChecker.isAllUrlAccessAllowed(authToken);
+		boolean allFields = authChecker.isAllCdxFieldAccessAllowed(authToken);
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(allUrl ? 'U' : 'u');
+		sb.append(allFields ? 'F' : 'f');
+		sb.append(authToken.isIgnoreRobots() ? 'R' : 'r');
+		sb.append(gzip ? 'Z' : 'z');
+		sb.append(query.getCacheKey());
+		
+		// memento links are absolute, built from the request url as seen
+		// by this server, which differs between vhosts and proxies
+		if (query.output.equals("memento")) {
+			CDXQuery.appendKey(sb, request.getRequestURL());
+			CDXQuery.appendKey(sb, request.getQueryString());
+		}
+		return sb.toString();
+	}
+	
+	protected void cacheResponse(String cacheKey, CapturingResponseWrapper capture, CDXQuery query)
+	{
+		CDXResponseCache.CachedResponse cached = capture.getCapturedResponse();
+		
+		if ((cached == null) || (query.matchType == null)) {
+			return;
+		}
+		
+		// query.url and matchType have been normalized by getCdx()
+		String startEndUrl[];
+		
+		try {
+			startEndUrl = urlSurtRangeComputer.determineRange(query.url, query.matchType, "", "");
+		} catch (URIException e) {
+			return;
+		} catch (URISyntaxException e) {
+			return;
+		}
+		
+		if (startEndUrl != null) {
+			responseCache.put(cacheKey, cached, startEndUrl[0], startEndUrl[1]);
+		}
 	}
 		
+	/**
+	 * If no matchType is given, take it from wildcards in the url:
+	 * "*.example.com" is domain, "example.com/*" is prefix, else exact.
+	 */
+	protected static void normalizeMatchType(CDXQuery query)
+	{
+		if (query.matchType == null) {
+			if (query.url.startsWith("*.")) {
+				query.matchType = MatchType.domain;
+				query.url = query.url.substring(2);
+			} else if (query.url.endsWith("*")) {
+				query.matchType = MatchType.prefix;
+				query.url = query.url.substring(0, query.url.length() - 1);
+			} else {
+				query.matchType = MatchType.exact;
+			}
+		}
+	}
+	
 	public void getCdx(CDXQuery query, AuthToken authToken, CDXWriter responseWriter) throws IOException
 	{
 		CloseableIterator<String> iter = null;
 		
 		try {		
-			// Check for wildcards as shortcuts for matchType
-			if (query.matchType == null) {
-				if (query.url.startsWith("*.")) {
-					query.matchType = MatchType.domain;
-					query.url = query.url.substring(2);
-				} else if (query.url.endsWith("*")) {
-					query.matchType = MatchType.prefix;
-					query.url = query.url.substring(0, query.url.length() - 1);
-				} else {
-					query.matchType = MatchType.exact;
-				}
-			}
+			normalizeMatchType(query);
 			
 			CDXAccessFilter accessChecker = null;
 			
@@ -276,6 +424,183 @@ public class CDXServer extends BaseCDXServer {
 		}
 	}
 	
+	/**
+	 * Bulk export of every line in the range of url/matchType, as a gzip
+	 * stream of raw CDX lines in sorted order.
+	 * 
+	 * The range is split into pages of pageSize blocks, as for page= queries.
+	 * Pages are read and compressed concurrently on the export pool, each
+	 * into its own gzip member, and written out in order. Export starts at
+	 * page= (default 0) and covers at most exportMaxPages pages. If pages
+	 * remain, the next page number is the checkpoint token: it is sent in
+	 * the X-CDX-Next-Page header and, as with resume keys, after a blank
+	 * line at the end of the output, and is passed back as page= to resume.
+	 */
+	@RequestMapping(value = { "/cdx/export" })
+	public void exportCdx(HttpServletRequest request, HttpServletResponse response, CDXQuery query) throws IOException {
+		handleAjax(request, response);
+		prepareResponse(response);
+		
+		if ((zipnumSource == null) || (exportExecutor == null)) {
+			response.setStatus(400);
+			response.getWriter().println("Sorry, this server is not configured to support export.");
+			return;
+		}
+		
+		AuthToken authToken = super.createAuthToken(request);
+		
+		// lines are exported raw, with every field
+		if (!authChecker.isAllUrlAccessAllowed(authToken) ||
+				!authChecker.isAllCdxFieldAccessAllowed(authToken)) {
+			response.setStatus(403);
+			response.getWriter().println("Sorry, export requires full access.");
+			return;
+		}
+		
+		normalizeMatchType(query);
+		
+		String startEndUrl[];
+		
+		try {
+			startEndUrl = urlSurtRangeComputer.determineRange(query.url, query.matchType, "", "");
+		} catch (URIException e) {
+			response.setStatus(400);
+			response.getWriter().println(e.toString());
+			return;
+		} catch (URISyntaxException e) {
+			response.setStatus(400);
+			response.getWriter().println(e.toString());
+			return;
+		}
+		
+		if (startEndUrl == null) {
+			response.setStatus(400);
+			response.getWriter().println("Sorry, matchType=" + query.matchType.name() + " is not supported by this server");
+			return;
+		}
+		
+		int pageSize = ((query.pageSize > 0) ? query.pageSize : maxPageSize);
+		
+		int numPages = zipnumSource.getNthPage(Arrays.copyOf(startEndUrl, 2), 0, pageSize, true).numPages;
+		
+		int startPage = Math.max(query.page, 0);
+		int endPage = numPages;
+		
+		if ((exportMaxPages > 0) && (endPage - startPage > exportMaxPages)) {
+			endPage = startPage + exportMaxPages;
+		}
+		
+		response.setContentType("application/x-gzip");
+		response.setHeader(HttpCDXWriter.X_NUM_PAGES, "" + numPages);
+		
+		if (endPage < numPages) {
+			response.setHeader(X_NEXT_PAGE, "" + endPage);
+		}
+		
+		OutputStream out = response.getOutputStream();
+		
+		writeExportPages(out, startEndUrl, pageSize, startPage, endPage);
+		
+		if (endPage < numPages) {
+			out.write(gzipLines(Arrays.asList("", "" + endPage).iterator()));
+		}
+		
+		out.flush();
+	}
+	
+	/**
+	 * Read, gzip and write pages [startPage, endPage) in order, keeping up to
+	 * twice the export pool size pages in flight.
+	 */
+	protected void writeExportPages(OutputStream out, String[] startEndUrl,
+	        int pageSize, int startPage, int endPage) throws IOException {
+		
+		int maxInFlight = exportThreads * 2;
+		List<Future<byte[]>> inFlight = new ArrayList<Future<byte[]>>(maxInFlight);
+		int nextPage = startPage;
+		
+		try {
+			while ((nextPage < endPage) || !inFlight.isEmpty()) {
+				while ((nextPage < endPage) && (inFlight.size() < maxInFlight)) {
+					inFlight.add(exportExecutor.submit(new ExportPageTask(startEndUrl, nextPage++, pageSize)));
+				}
+				
+				byte[] page = inFlight.remove(0).get();
+				out.write(page);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			throw new IOException(cause.toString());
+		} finally {
+			for (Future<byte[]> future : inFlight) {
+				future.cancel(true);
+			}
+		}
+	}
+	
+	protected static byte[] gzipLines(Iterator<String> lines) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes, 64 * 1024);
+		
+		while (lines.hasNext()) {
+			gzip.write(lines.next().getBytes("UTF-8"));
+			gzip.write('\n');
+		}
+		
+		gzip.close();
+		return bytes.toByteArray();
+	}
+	
+	protected class ExportPageTask implements Callable<byte[]> {
+		
+		String[] startEndUrl;
+		int page;
+		int pageSize;
+		
+		ExportPageTask(String[] startEndUrl, int page, int pageSize)
+		{
+			this.startEndUrl = startEndUrl;
+			this.page = page;
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			// each page works on its own copy of the range, which is updated
+			// by the page lookup
+			String[] range = Arrays.copyOf(startEndUrl, 2);
+			
+			PageResult pageResult = zipnumSource.getNthPage(range, page, pageSize, false);
+			
+			if (pageResult.iter == null) {
+				return new byte[0];
+			}
+			
+			ZipNumParams params = new ZipNumParams(defaultParams);
+			params.setTimestampDedupLength(0);
+			
+			CloseableIterator<String> lines = null;
+			
+			try {
+				lines = zipnumSource.getCDXIterator(pageResult.iter, range[0], range[1], page, pageResult.numPages, params);
+				return gzipLines(lines);
+			} finally {
+				if (lines != null) {
+					lines.close();
+				} else {
+					pageResult.iter.close();
+				}
+			}
+		}
+	}
+	
 	protected CloseableIterator<String> createPagedCdxIterator(String[] startEndUrl, CDXQuery query, AuthToken authToken, CDXWriter responseWriter) throws IOException
 	{
 		if (zipnumSource == null) {
@@ -377,6 +702,56 @@ public class CDXServer extends BaseCDXServer {
 		responseWriter.end();
 	}
 
+	protected final static int ABORT_CHECK_INTERVAL = 64;
+	
+	protected final static String ALEXA_DAT_FIELD = " alexa/dat ";
+	
+	protected final static int TIMESTAMP_IN_RANGE = 0;
+	protected final static int TIMESTAMP_SKIP = 1;
+	protected final static int TIMESTAMP_AFTER_END = 2;
+	
+	/**
+	 * Apply the from= and to= limits of query to timestamp
+	 * @return TIMESTAMP_IN_RANGE to include the line, TIMESTAMP_SKIP to skip
+	 * it, or TIMESTAMP_AFTER_END if no later line can be in range
+	 */
+	protected int checkTimestampRange(String timestamp, CDXQuery query)
+	{
+		if (!query.from.isEmpty() && (timestamp.compareTo(query.from) < 0)) {
+			return TIMESTAMP_SKIP;
+		}
+
+		if (!query.to.isEmpty() && (timestamp.compareTo(query.to) > 0) && !timestamp.startsWith(query.to)) {
+			if (query.matchType == MatchType.exact) {
+				return TIMESTAMP_AFTER_END;
+			} else {
+				return TIMESTAMP_SKIP;
+			}
+		}
+		
+		return TIMESTAMP_IN_RANGE;
+	}
+	
+	/**
+	 * @return the second, timestamp, field of a raw cdx line, or null
+	 */
+	protected static String getRawTimestamp(String rawLine)
+	{
+		int start = rawLine.indexOf(' ');
+		
+		if (start < 0) {
+			return null;
+		}
+		
+		int end = rawLine.indexOf(' ', ++start);
+		
+		if (end < 0) {
+			return null;
+		}
+		
+		return rawLine.substring(start, end);
+	}
+
 	protected void writeCdxResponse(
 			CDXWriter responseWriter,
 			CloseableIterator<String> cdx,
@@ -458,27 +833,78 @@ public class CDXServer extends BaseCDXServer {
 			outputFields = parseFormat.createSubset(outputFields);
 		}
 
+		// Fast path: if nothing but the timestamp range looks at the fields,
+		// and the writer prints lines as read, pass raw lines straight through.
+		// Enabled once a parsed line is seen to print exactly as read.
+		RawLineWriter rawWriter = null;
+		
+		if ((outputProcessor == responseWriter) && (responseWriter instanceof RawLineWriter) &&
+				(accessChecker == null) && (filterMatcher == null) && (collapser == null) && (outputFields == null)) {
+			rawWriter = (RawLineWriter)responseWriter;
+		}
+		
+		boolean rawPassthrough = (rawWriter != null);
+		boolean rawVerified = false;
+		String lastRawLine = null;
+
 		outputProcessor.begin();
 
 		int writeCount = 0;
 		long allCount = 0;
 		
 		int writeLimit = query.limit;
+		
+		boolean aborted = false;
 
-		while (cdx.hasNext() && ((writeLimit == 0) || (writeCount < writeLimit)) && (allCount < readLimit) && !responseWriter.isAborted()) {
+		while (cdx.hasNext() && ((writeLimit == 0) || (writeCount < writeLimit)) && (allCount < readLimit) && !aborted) {
 			
 			String rawLine = cdx.next();
 			allCount++;
+			
+			// checking flushes the writer, so only check periodically
+			if ((allCount % ABORT_CHECK_INTERVAL) == 0) {
+				aborted = responseWriter.isAborted();
+			}
 
 			if (query.offset > 0) {
 				--query.offset;
 				continue;
 			}
+			
+			if (rawVerified && (rawLine.indexOf(ALEXA_DAT_FIELD) < 0)) {
+				String timestamp = getRawTimestamp(rawLine);
+				
+				if (timestamp != null) {
+					line = null;
+					lastRawLine = rawLine;
+					
+					int range = checkTimestampRange(timestamp, query);
+					
+					if (range == TIMESTAMP_AFTER_END) {
+						break;
+					} else if (range != TIMESTAMP_IN_RANGE) {
+						continue;
+					}
+					
+					writeCount += rawWriter.writeRawLine(rawLine);
+					
+					if (Thread.interrupted()) {
+						break;
+					}
+					continue;
+				}
+			}
 
 //			prev = line;
 			
 			//line = new CDXLine(rawLine, parseFormat);
 			line = this.cdxLineFactory.createStandardCDXLine(rawLine, parseFormat);
+			lastRawLine = null;
+			
+			if (rawPassthrough && !rawVerified) {
+				rawVerified = line.toString().equals(rawLine);
+				rawPassthrough = rawVerified;
+			}
 			
 			//TODO: better way to handle this special case?
 			if (line.getMimeType().equals("alexa/dat")) {
@@ -509,20 +935,14 @@ public class CDXServer extends BaseCDXServer {
 			outputProcessor.trackLine(line);
 
 			// Timestamp Range Filtering
-			String timestamp = line.getTimestamp();
+			int range = checkTimestampRange(line.getTimestamp(), query);
 
-			if (!query.from.isEmpty() && (timestamp.compareTo(query.from) < 0)) {
+			if (range == TIMESTAMP_AFTER_END) {
+				break;
+			} else if (range != TIMESTAMP_IN_RANGE) {
 				continue;
 			}
 
-			if (!query.to.isEmpty() && (timestamp.compareTo(query.to) > 0) && !timestamp.startsWith(query.to)) {
-				if (query.matchType == MatchType.exact) {
-					break;
-				} else {
-					continue;
-				}
-			}
-
 			// Check regex matcher if it exists
 			if ((filterMatcher != null) && !filterMatcher.include(line)) {
 				continue;
@@ -545,6 +965,10 @@ public class CDXServer extends BaseCDXServer {
 			}
 		}
 
+		if ((line == null) && (lastRawLine != null)) {
+			line = this.cdxLineFactory.createStandardCDXLine(lastRawLine, parseFormat);
+		}
+
 		if (query.showResumeKey && (line != null) && (writeLimit > 0) && (writeCount >= writeLimit)) {
 			StringBuilder sb = new StringBuilder();
 			sb.append(line.getUrlKey());
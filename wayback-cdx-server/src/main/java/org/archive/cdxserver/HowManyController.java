@@ -6,6 +6,13 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -32,11 +39,32 @@ public class HowManyController extends BaseCDXServer {
 
     final static String PART_PREFIX = "part-a-";
     
+    // clusters of a multi-cluster count are counted concurrently
+    protected int countThreads = 4;
+    protected ExecutorService countExecutor;
+    
+    // if true, estimate the partial edge blocks of a range spanning several
+    // blocks as half a block each, rather than reading them
+    protected boolean estimateEdgeBlocks = false;
+    
     @Override
     public void afterPropertiesSet() throws Exception {
         // This controller only works with SURT-sorted CDXs!
         this.setSurtMode(true);
         super.afterPropertiesSet();
+        
+        if (countThreads > 1) {
+            countExecutor = Executors.newFixedThreadPool(countThreads, new ThreadFactory() {
+                AtomicInteger count = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "howmany-count-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
     }
 
     protected long countLines(ZipNumCluster cluster, String start, String end,
@@ -69,8 +97,10 @@ public class HowManyController extends BaseCDXServer {
 
         long adjustment = 0;
 
+        boolean singleBlock = startAndEndBlocks[0].equals(startAndEndBlocks[1]);
+        
         // If less than one block in size, just count the one block
-        if (startAndEndBlocks[0].equals(startAndEndBlocks[1])) {
+        if (singleBlock) {
             numLines = 0;
             startAndEndBlocks[1] = null;
         } else {
@@ -88,6 +118,14 @@ public class HowManyController extends BaseCDXServer {
             }
         }
 
+        if (estimateEdgeBlocks && !singleBlock && (dates == null)) {
+            // half of each of the two edge blocks
+            numLines += 1;
+            numLines *= cluster.getCdxLinesPerBlock();
+            numLines += adjustment;
+            return numLines;
+        }
+
         int count = 0;
         CloseableIterator<String> blocklines = null;
 
@@ -257,7 +295,7 @@ public class HowManyController extends BaseCDXServer {
 
         if (clusters == null) {
             numLines = this.countLines(mainCluster, start, end, firstLastDate);
-        } else {
+        } else if ((countExecutor == null) || (clusters.size() < 2)) {
             numLines = 0;
 
             for (ZipNumCluster cluster : clusters) {
@@ -265,10 +303,67 @@ public class HowManyController extends BaseCDXServer {
                         firstLastDate);
                 numLines += clusterLines;
             }
+        } else {
+            numLines = countClustersConcurrently(clusters, start, end, firstLastDate);
         }
 
         return numLines;
     }
+    
+    protected long countClustersConcurrently(List<ZipNumCluster> clusters,
+            final String start, final String end, String[] firstLastDate)
+            throws IOException {
+        
+        List<Future<Long>> counts = new ArrayList<Future<Long>>(clusters.size());
+        final List<String[]> dates = new ArrayList<String[]>(clusters.size());
+        
+        for (final ZipNumCluster cluster : clusters) {
+            final String[] clusterDates = ((firstLastDate != null) ? new String[2] : null);
+            dates.add(clusterDates);
+            
+            counts.add(countExecutor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    return countLines(cluster, start, end, clusterDates);
+                }
+            }));
+        }
+        
+        long numLines = 0;
+        
+        try {
+            for (int i = 0; i < counts.size(); i++) {
+                numLines += counts.get(i).get();
+                
+                // as when counted in turn, later clusters override the dates
+                String[] clusterDates = dates.get(i);
+                
+                if (clusterDates != null) {
+                    if (clusterDates[0] != null) {
+                        firstLastDate[0] = clusterDates[0];
+                    }
+                    if (clusterDates[1] != null) {
+                        firstLastDate[1] = clusterDates[1];
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Count interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            throw new IOException(cause.toString());
+        } finally {
+            for (Future<Long> count : counts) {
+                count.cancel(true);
+            }
+        }
+        
+        return numLines;
+    }
 
     public ZipNumCluster getMainCluster() {
         return mainCluster;
@@ -278,6 +373,22 @@ public class HowManyController extends BaseCDXServer {
         this.mainCluster = mainCluster;
     }
 
+    public int getCountThreads() {
+        return countThreads;
+    }
+
+    public void setCountThreads(int countThreads) {
+        this.countThreads = countThreads;
+    }
+
+    public boolean isEstimateEdgeBlocks() {
+        return estimateEdgeBlocks;
+    }
+
+    public void setEstimateEdgeBlocks(boolean estimateEdgeBlocks) {
+        this.estimateEdgeBlocks = estimateEdgeBlocks;
+    }
+
     public Map<String, ArrayList<ZipNumCluster>> getAllClusters() {
         return allClusters;
     }
@@ -32,6 +32,7 @@ public class CollapseFieldFilter implements CDXFilter {
 		final int substrLength;
 
 		String prevValue;
+		int prevLength;
 
 		DupeMatch(String str) {
 			try {
@@ -67,18 +68,21 @@ public class CollapseFieldFilter implements CDXFilter {
 		boolean isUnique(FieldSplitLine line) {
 			String currValue = line.getField(fieldIndex);
 
-			if ((substrLength > 0) && (substrLength <= currValue.length())) {
-				currValue = currValue.substring(0, substrLength);
-			}
+			int cmpLength = currValue.length();
 			
-			boolean unique = false;
+			if ((substrLength > 0) && (substrLength <= cmpLength)) {
+				cmpLength = substrLength;
+			}
 			
-			if ((prevValue == null) || !currValue.equals(prevValue)) {
-				unique = true;
-				prevValue = currValue;
+			// compare the prefix in place, keeping the whole value
+			if ((prevValue != null) && (prevLength == cmpLength) &&
+					currValue.regionMatches(0, prevValue, 0, cmpLength)) {
+				return false;
 			}
-
-			return unique;
+			
+			prevValue = currValue;
+			prevLength = cmpLength;
+			return true;
 		}
 		
 		void clear()
@@ -3,8 +3,9 @@ package org.archive.cdxserver.filter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.FieldSplitFormat;
@@ -22,6 +23,10 @@ import org.archive.format.cdx.FieldSplitLine;
  * 
  * Supports !<regex> for not matching
  * 
+ * Each regex is compiled to a {@link StringMatcher}, so simple patterns such
+ * as statuscode:200 or mimetype:text/.* are plain string comparisons, and
+ * all matches are tested cheapest first.
+ * 
  * @author ilya
  *
  */
@@ -35,9 +40,8 @@ public class FieldRegexFilter implements CDXFilter {
 	final protected List<RegexMatch> regexMatchers;
 	
 	class RegexMatch {
-		final Pattern regex;
+		final StringMatcher matcher;
 		final boolean inverted;
-		final String containsStr;
 		final int fieldIndex;
 		
 		RegexMatch(String str)
@@ -62,11 +66,9 @@ public class FieldRegexFilter implements CDXFilter {
 			if (sepIndex < 0) {
 				fieldIndex = -1;
 				if (contains) {
-					containsStr = str;
-					regex = null;
+					matcher = StringMatcher.contains(str);
 				} else {
-					containsStr = null;
-					regex = Pattern.compile(str);
+					matcher = StringMatcher.compile(str);
 				}
 				return;
 			}
@@ -91,30 +93,26 @@ public class FieldRegexFilter implements CDXFilter {
 			fieldIndex = index;
 			
 			if (contains) {
-				containsStr = pattern;
-				regex = null;
+				matcher = StringMatcher.contains(pattern);
 			} else {
-				containsStr = null;
-				regex = Pattern.compile(pattern);
+				matcher = StringMatcher.compile(pattern);
 			}		
 		}
 		
+		int getCost()
+		{
+			// whole line matches scan much more text
+			return (fieldIndex < 0) ? (matcher.getCost() * 4) : matcher.getCost();
+		}
+		
 		boolean matches(FieldSplitLine line)
 		{
 			boolean matched;
 			
 			if (fieldIndex < 0) {
-				if (containsStr != null) {
-					matched = line.toString().contains(containsStr);
-				} else {
-					matched = regex.matcher(line.toString()).matches();	
-				}
+				matched = matcher.matches(line.toString());
 			} else {
-				if (containsStr != null) {
-					matched = line.getField(fieldIndex).contains(containsStr);
-				} else {
-					matched = regex.matcher(line.getField(fieldIndex)).matches();
-				}
+				matched = matcher.matches(line.getField(fieldIndex));
 			}
 			
 			if (inverted) {
@@ -136,6 +134,13 @@ public class FieldRegexFilter implements CDXFilter {
 		        regexMatchers.add(new RegexMatch(regex));
 		    }
 		}
+		
+		// all must match, so fail fast on the cheap tests
+		Collections.sort(regexMatchers, new Comparator<RegexMatch>() {
+			public int compare(RegexMatch o1, RegexMatch o2) {
+				return o1.getCost() - o2.getCost();
+			}
+		});
 	}
 	
 	public boolean include(CDXLine line)
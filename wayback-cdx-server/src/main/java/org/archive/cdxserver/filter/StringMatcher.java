@@ -0,0 +1,320 @@
+package org.archive.cdxserver.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled test of a whole string against a pattern.
+ *
+ * {@link #compile(String)} recognizes the simple regexes that make up most
+ * cdx filters, and turns them into plain string comparisons:
+ *
+ * <literal>          = exact match, eg. statuscode:200
+ * <literal>.*        = prefix match, eg. mimetype:text/.*
+ * .*<literal>        = suffix match
+ * .*<literal>.*      = contains match
+ * <lit>|<lit>|...    = set membership, eg. statuscode:301|302
+ * fixed width        = literal chars, '.', \d and [...] classes, eg. statuscode:[23]..
+ *
+ * Anything else is matched with java.util.regex.
+ *
+ * Each matcher has a cost, so that filters can run the cheapest tests first.
+ */
+public abstract class StringMatcher {
+
+	public final static int COST_SIMPLE = 1;
+	public final static int COST_SCAN = 2;
+	public final static int COST_REGEX = 10;
+
+	public abstract boolean matches(String str);
+
+	public abstract int getCost();
+
+	/**
+	 * @param str the string to look for
+	 * @return a matcher for strings containing str
+	 */
+	public static StringMatcher contains(final String str)
+	{
+		return new StringMatcher() {
+			public boolean matches(String s) {
+				return s.contains(str);
+			}
+			public int getCost() {
+				return COST_SCAN;
+			}
+		};
+	}
+
+	/**
+	 * @param regex the pattern, with {@link java.util.regex.Matcher#matches()}
+	 * semantics
+	 * @return a matcher equivalent to matching regex against the whole string
+	 */
+	public static StringMatcher compile(String regex)
+	{
+		StringMatcher matcher = compileSimple(regex);
+
+		if (matcher != null) {
+			return matcher;
+		}
+
+		final Pattern pattern = Pattern.compile(regex);
+
+		return new StringMatcher() {
+			public boolean matches(String s) {
+				return pattern.matcher(s).matches();
+			}
+			public int getCost() {
+				return COST_REGEX;
+			}
+		};
+	}
+
+	// one position of a fixed width pattern: a set of char ranges, or null
+	// for any char
+	static class CharSet {
+		char[] ranges;
+
+		CharSet(char[] ranges) {
+			this.ranges = ranges;
+		}
+
+		boolean contains(char c) {
+			for (int i = 0; i < ranges.length; i += 2) {
+				if ((c >= ranges[i]) && (c <= ranges[i + 1])) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean isLiteral() {
+			return (ranges.length == 2) && (ranges[0] == ranges[1]);
+		}
+	}
+
+	final static CharSet ANY = new CharSet(null);
+	final static CharSet DOT_STAR = new CharSet(null);
+	final static char[] DIGITS = {'0', '9'};
+
+	static StringMatcher compileSimple(String regex)
+	{
+		if (regex.startsWith("^")) {
+			regex = regex.substring(1);
+		}
+
+		if (regex.endsWith("$") && !regex.endsWith("\\$")) {
+			regex = regex.substring(0, regex.length() - 1);
+		}
+
+		if (regex.indexOf('|') >= 0) {
+			return compileAlternatives(regex);
+		}
+
+		List<CharSet> atoms = parseAtoms(regex);
+
+		if (atoms == null) {
+			return null;
+		}
+
+		int size = atoms.size();
+		boolean leadingStar = (size > 0) && (atoms.get(0) == DOT_STAR);
+		boolean trailingStar = (size > 0) && (atoms.get(size - 1) == DOT_STAR);
+
+		List<CharSet> middle = atoms.subList(leadingStar ? 1 : 0, Math.max(leadingStar ? 1 : 0, trailingStar ? size - 1 : size));
+
+		final String literal = toLiteral(middle);
+
+		if (!leadingStar && !trailingStar) {
+			if (literal != null) {
+				return new StringMatcher() {
+					public boolean matches(String s) {
+						return s.equals(literal);
+					}
+					public int getCost() {
+						return COST_SIMPLE;
+					}
+				};
+			}
+			if (middle.contains(DOT_STAR)) {
+				return null;
+			}
+			final CharSet[] sets = middle.toArray(new CharSet[middle.size()]);
+			return new StringMatcher() {
+				public boolean matches(String s) {
+					if (s.length() != sets.length) {
+						return false;
+					}
+					for (int i = 0; i < sets.length; i++) {
+						if ((sets[i] != ANY) && !sets[i].contains(s.charAt(i))) {
+							return false;
+						}
+					}
+					return true;
+				}
+				public int getCost() {
+					return COST_SIMPLE;
+				}
+			};
+		}
+
+		if (literal == null) {
+			return null;
+		}
+
+		if (leadingStar && trailingStar) {
+			return contains(literal);
+		} else if (trailingStar) {
+			return new StringMatcher() {
+				public boolean matches(String s) {
+					return s.startsWith(literal);
+				}
+				public int getCost() {
+					return COST_SIMPLE;
+				}
+			};
+		} else {
+			return new StringMatcher() {
+				public boolean matches(String s) {
+					return s.endsWith(literal);
+				}
+				public int getCost() {
+					return COST_SIMPLE;
+				}
+			};
+		}
+	}
+
+	static StringMatcher compileAlternatives(String regex)
+	{
+		final Set<String> values = new HashSet<String>();
+
+		for (String alt : regex.split("\\|", -1)) {
+			List<CharSet> atoms = parseAtoms(alt);
+			String literal = (atoms == null ? null : toLiteral(atoms));
+			if (literal == null) {
+				return null;
+			}
+			values.add(literal);
+		}
+
+		return new StringMatcher() {
+			public boolean matches(String s) {
+				return values.contains(s);
+			}
+			public int getCost() {
+				return COST_SIMPLE;
+			}
+		};
+	}
+
+	static String toLiteral(List<CharSet> atoms)
+	{
+		StringBuilder sb = new StringBuilder(atoms.size());
+		for (CharSet atom : atoms) {
+			if ((atom.ranges == null) || !atom.isLiteral()) {
+				return null;
+			}
+			sb.append(atom.ranges[0]);
+		}
+		return sb.toString();
+	}
+
+	static boolean isSpecial(char c)
+	{
+		return "\\.[]{}()*+?^$|".indexOf(c) >= 0;
+	}
+
+	/**
+	 * @return the atoms of a regex made only of literals, '.', ".*", \d and
+	 * simple [...] classes, or null if it uses anything else
+	 */
+	static List<CharSet> parseAtoms(String regex)
+	{
+		List<CharSet> atoms = new ArrayList<CharSet>(regex.length());
+		int len = regex.length();
+
+		for (int i = 0; i < len; i++) {
+			char c = regex.charAt(i);
+			CharSet atom;
+
+			if (c == '\\') {
+				if (++i == len) {
+					return null;
+				}
+				c = regex.charAt(i);
+				if (c == 'd') {
+					atom = new CharSet(DIGITS);
+				} else if (isSpecial(c) || (c == '/') || (c == '-') || (c == ':')) {
+					atom = new CharSet(new char[]{c, c});
+				} else {
+					return null;
+				}
+			} else if (c == '.') {
+				if ((i + 1 < len) && (regex.charAt(i + 1) == '*')) {
+					++i;
+					atom = DOT_STAR;
+				} else {
+					atom = ANY;
+				}
+			} else if (c == '[') {
+				int end = regex.indexOf(']', i + 1);
+				if (end < 0) {
+					return null;
+				}
+				char[] ranges = parseClass(regex.substring(i + 1, end));
+				if (ranges == null) {
+					return null;
+				}
+				atom = new CharSet(ranges);
+				i = end;
+			} else if (isSpecial(c)) {
+				return null;
+			} else {
+				atom = new CharSet(new char[]{c, c});
+			}
+
+			// any quantifier other than .* needs the real regex engine
+			if ((i + 1 < len) && ("*+?{".indexOf(regex.charAt(i + 1)) >= 0)) {
+				return null;
+			}
+
+			atoms.add(atom);
+		}
+		return atoms;
+	}
+
+	static char[] parseClass(String body)
+	{
+		if (body.isEmpty() || body.startsWith("^")) {
+			return null;
+		}
+
+		char[] ranges = new char[body.length() * 2];
+		int size = 0;
+		int len = body.length();
+
+		for (int i = 0; i < len; i++) {
+			char c = body.charAt(i);
+			if ((c == '\\') || (c == '[') || (c == '&')) {
+				return null;
+			}
+			char hi = c;
+			if ((i + 2 < len) && (body.charAt(i + 1) == '-')) {
+				hi = body.charAt(i + 2);
+				if ((hi < c) || (hi == '\\') || (hi == '[') || (hi == '&')) {
+					return null;
+				}
+				i += 2;
+			}
+			ranges[size++] = c;
+			ranges[size++] = hi;
+		}
+		return Arrays.copyOf(ranges, size);
+	}
+}
@@ -1,13 +1,25 @@
 package org.archive.cdxserver.processor;
 
+import java.util.Arrays;
 import java.util.Date;
-import java.util.TreeMap;
 
 import org.archive.format.cdx.CDXLine;
 import org.archive.util.ArchiveUtils;
 
+/**
+ * Keeps the limit lines closest to a target timestamp, and writes them out
+ * nearest first.
+ * 
+ * Lines are held in a bounded max-heap keyed on distance, so each line costs
+ * O(log limit) with no boxing. Input is assumed to be in ascending timestamp
+ * order, so once the heap is full and distances are only growing, the
+ * remaining input cannot contribute and the closest lines are written
+ * immediately, which lets the caller stop reading.
+ */
 public class ClosestTimestampSorted extends WrappedProcessor {
     
+    private final static int INITIAL_CAPACITY = 16;
+    
     enum Dir
     {
         ANY,
@@ -16,14 +28,60 @@ public class ClosestTimestampSorted extends WrappedProcessor {
     };
     
     Dir dir;
-    TreeMap<Long, CDXLine> closestLines;
-    Long target;
+    long target;
     int limit;
     boolean done = false;
     
-    protected Long convTimestamp(String timestamp)
-    {        
-        return ArchiveUtils.getDate(timestamp, new Date()).getTime();
+    // max-heap of the closest lines seen so far, ordered by distance then
+    // arrival, so that among equally distant lines the earliest are kept
+    long[] heapDiffs;
+    long[] heapSeqs;
+    CDXLine[] heapLines;
+    int heapSize = 0;
+    long seq = 0;
+    
+    // start of the day of the last timestamp converted: input is sorted,
+    // so most lines share it with the line before
+    String lastDay = null;
+    long lastDayMillis = 0;
+    
+    protected long convTimestamp(String timestamp)
+    {
+        // fast path for the usual, complete 14-digit timestamp: only the
+        // time of day needs converting
+        int secondOfDay = parseSecondOfDay(timestamp);
+        if (secondOfDay < 0) {
+            return ArchiveUtils.getDate(timestamp, new Date()).getTime();
+        }
+        if ((lastDay == null) || !timestamp.regionMatches(0, lastDay, 0, 8)) {
+            lastDay = timestamp.substring(0, 8);
+            lastDayMillis = ArchiveUtils.getDate(lastDay + "000000", new Date()).getTime();
+        }
+        return lastDayMillis + (secondOfDay * 1000L);
+    }
+    
+    /**
+     * @return the second of the day of a 14-digit timestamp, or -1 if it is
+     * not one
+     */
+    protected static int parseSecondOfDay(String timestamp)
+    {
+        if (timestamp.length() != 14) {
+            return -1;
+        }
+        for (int i = 0; i < 14; i++) {
+            char c = timestamp.charAt(i);
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+        }
+        int hour = ((timestamp.charAt(8) - '0') * 10) + (timestamp.charAt(9) - '0');
+        int minute = ((timestamp.charAt(10) - '0') * 10) + (timestamp.charAt(11) - '0');
+        int second = ((timestamp.charAt(12) - '0') * 10) + (timestamp.charAt(13) - '0');
+        if ((hour > 23) || (minute > 59) || (second > 59)) {
+            return -1;
+        }
+        return (((hour * 60) + minute) * 60) + second;
     }
     
     public ClosestTimestampSorted(BaseProcessor output, String target, int limit) {
@@ -41,7 +99,11 @@ public class ClosestTimestampSorted extends WrappedProcessor {
         
         this.target = convTimestamp(target);
         this.limit = (limit > 0 ? limit : Integer.MAX_VALUE);
-        closestLines = new TreeMap<Long, CDXLine>();
+        
+        int capacity = Math.min(this.limit, INITIAL_CAPACITY);
+        heapDiffs = new long[capacity];
+        heapSeqs = new long[capacity];
+        heapLines = new CDXLine[capacity];
     }
 
     @Override
@@ -50,8 +112,10 @@ public class ClosestTimestampSorted extends WrappedProcessor {
             return Integer.MAX_VALUE;
         }
         
-        Long curr = convTimestamp(line.getTimestamp());
-        Long diff;
+        long curr = convTimestamp(line.getTimestamp());
+        long diff;
+        // true once every later line will be at least as far as this one
+        boolean receding;
         
         switch (dir) {            
         case PREV:
@@ -60,6 +124,7 @@ public class ClosestTimestampSorted extends WrappedProcessor {
             } else {
                 diff = target + curr;
             }
+            receding = (curr >= target);
             break;
             
         case NEXT:
@@ -68,38 +133,111 @@ public class ClosestTimestampSorted extends WrappedProcessor {
             } else {
                 diff = (target - curr) + target * 2;
             }
+            receding = (curr > target);
             break;
             
         case ANY:
         default:
             diff = Math.abs(curr - target);
+            receding = (curr >= target);
             break;
         }
         
-        if (closestLines.size() == limit) {
-            // Assumes ascending timestamp input 
-            if (diff > closestLines.lastKey()) {
-                done = true;
-                return writeSorted();
+        if (heapSize == limit) {
+            if (diff >= heapDiffs[0]) {
+                // cannot displace anything already kept
+                if (receding) {
+                    done = true;
+                    return writeSorted();
+                }
+                return 0;
             }
-        }
-        
-        closestLines.put(diff, line);
-      
-        if (closestLines.size() > limit) {
-            closestLines.remove(closestLines.lastKey());
+            replaceTop(diff, line);
+        } else {
+            add(diff, line);
         }
         
         return 0;
     }
+    
+    private boolean isAfter(int i, int j) {
+        if (heapDiffs[i] != heapDiffs[j]) {
+            return heapDiffs[i] > heapDiffs[j];
+        }
+        return heapSeqs[i] > heapSeqs[j];
+    }
+    
+    private void swap(int i, int j) {
+        long d = heapDiffs[i];
+        heapDiffs[i] = heapDiffs[j];
+        heapDiffs[j] = d;
+        long s = heapSeqs[i];
+        heapSeqs[i] = heapSeqs[j];
+        heapSeqs[j] = s;
+        CDXLine l = heapLines[i];
+        heapLines[i] = heapLines[j];
+        heapLines[j] = l;
+    }
+    
+    private void add(long diff, CDXLine line) {
+        if (heapSize == heapDiffs.length) {
+            int capacity = (int) Math.min(limit, heapSize * 2L);
+            heapDiffs = Arrays.copyOf(heapDiffs, capacity);
+            heapSeqs = Arrays.copyOf(heapSeqs, capacity);
+            heapLines = Arrays.copyOf(heapLines, capacity);
+        }
+        int i = heapSize++;
+        heapDiffs[i] = diff;
+        heapSeqs[i] = seq++;
+        heapLines[i] = line;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isAfter(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+    
+    private void replaceTop(long diff, CDXLine line) {
+        heapDiffs[0] = diff;
+        heapSeqs[0] = seq++;
+        heapLines[0] = line;
+        siftDown(0, heapSize);
+    }
+    
+    private void siftDown(int i, int size) {
+        while (true) {
+            int largest = i;
+            int left = (i * 2) + 1;
+            int right = left + 1;
+            if ((left < size) && isAfter(left, largest)) {
+                largest = left;
+            }
+            if ((right < size) && isAfter(right, largest)) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(i, largest);
+            i = largest;
+        }
+    }
 
     protected int writeSorted() {
-        int count = 0;
-        for (CDXLine line : closestLines.values()) {
-            super.writeLine(line);
-            ++count;
+        // heapsort in place, leaving the closest line first:
+        for (int end = heapSize - 1; end > 0; --end) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        int count = heapSize;
+        for (int i = 0; i < count; ++i) {
+            super.writeLine(heapLines[i]);
+            heapLines[i] = null;
         }
-        closestLines.clear();
+        heapSize = 0;
         return count;
     }
 
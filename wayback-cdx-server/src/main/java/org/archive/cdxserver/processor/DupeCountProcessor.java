@@ -1,13 +1,12 @@
 package org.archive.cdxserver.processor;
 
-import java.util.HashMap;
-
+import org.archive.cdxserver.util.DigestMap;
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.FieldSplitFormat;
 
 public class DupeCountProcessor extends WrappedProcessor {
 
-    protected HashMap<String, DupeTrack> dupeHashmap = null;
+    protected DigestMap<DupeTrack> dupeHashmap = null;
     protected boolean showDupeCount = false;
 
     public final static String dupecount = "dupecount";
@@ -27,7 +26,7 @@ public class DupeCountProcessor extends WrappedProcessor {
 
     public DupeCountProcessor(BaseProcessor output, boolean showDupeCount) {
         super(output);
-        this.dupeHashmap = new HashMap<String, DupeTrack>();
+        this.dupeHashmap = new DigestMap<DupeTrack>();
         
         this.showDupeCount = showDupeCount;
     }
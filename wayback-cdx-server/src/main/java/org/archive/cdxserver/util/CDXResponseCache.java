@@ -0,0 +1,318 @@
+package org.archive.cdxserver.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Size-bounded, TTL-limited cache of complete CDX server responses.
+ *
+ * Each entry holds the status, headers and body bytes of a response,
+ * together with the SURT key range [startKey, endKey) the query covered, so
+ * that entries can be dropped when the index data for that range changes.
+ *
+ * If summaryFiles is set, the cache periodically checks the ZipNum cluster
+ * summaries for changes. When a summary is replaced, every entry overlapping
+ * its key range is invalidated: from the key of its first line onwards, as
+ * the last block of a cluster extends past its last summary line.
+ */
+public class CDXResponseCache {
+
+	private static final Logger LOGGER =
+        Logger.getLogger(CDXResponseCache.class.getName());
+
+	protected long maxBytes = 64 * 1024 * 1024;
+	protected int maxEntryBytes = 256 * 1024;
+	protected long ttlMillis = 60 * 1000;
+
+	protected List<String> summaryFiles = null;
+	protected long summaryCheckInterval = 10 * 1000;
+
+	protected LinkedHashMap<String, CachedResponse> entries =
+		new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+	protected long currBytes = 0;
+
+	protected Map<String, String> summaryStates = new HashMap<String, String>();
+	protected long nextSummaryCheck = 0;
+
+	protected long hits = 0;
+	protected long misses = 0;
+
+	public static class CachedResponse {
+		int status;
+		String contentType;
+		List<String[]> headers;
+		byte[] body;
+		String startKey;
+		String endKey;
+		long expires;
+
+		public CachedResponse(int status, String contentType, List<String[]> headers, byte[] body)
+		{
+			this.status = status;
+			this.contentType = contentType;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		long weight()
+		{
+			long weight = body.length + 128;
+			for (String[] header : headers) {
+				weight += header[0].length() + header[1].length();
+			}
+			return weight;
+		}
+
+		boolean overlaps(String start, String end)
+		{
+			// [startKey, endKey) against [start, end), null end is unbounded
+			if ((end != null) && (startKey.compareTo(end) >= 0)) {
+				return false;
+			}
+			if ((endKey != null) && (endKey.compareTo(start) <= 0)) {
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Write the cached response for key, if there is a live one.
+	 * @return true if a cached response was written
+	 */
+	public boolean writeCached(String key, HttpServletResponse response) throws IOException
+	{
+		checkSummaries();
+
+		CachedResponse cached;
+
+		synchronized (this) {
+			cached = entries.get(key);
+
+			if ((cached != null) && (cached.expires < System.currentTimeMillis())) {
+				remove(key);
+				cached = null;
+			}
+
+			if (cached == null) {
+				misses++;
+				return false;
+			}
+
+			hits++;
+		}
+
+		response.setStatus(cached.status);
+
+		if (cached.contentType != null) {
+			response.setContentType(cached.contentType);
+		}
+
+		for (String[] header : cached.headers) {
+			response.addHeader(header[0], header[1]);
+		}
+
+		response.setContentLength(cached.body.length);
+		OutputStream out = response.getOutputStream();
+		out.write(cached.body);
+		out.flush();
+		return true;
+	}
+
+	/**
+	 * Cache a response to a query covering the keys [startKey, endKey)
+	 */
+	public void put(String key, CachedResponse response, String startKey, String endKey)
+	{
+		if ((response.body.length > maxEntryBytes) || (startKey == null)) {
+			return;
+		}
+
+		response.startKey = startKey;
+		response.endKey = endKey;
+		response.expires = System.currentTimeMillis() + ttlMillis;
+
+		synchronized (this) {
+			remove(key);
+			entries.put(key, response);
+			currBytes += response.weight();
+
+			Iterator<CachedResponse> iter = entries.values().iterator();
+
+			while ((currBytes > maxBytes) && iter.hasNext()) {
+				currBytes -= iter.next().weight();
+				iter.remove();
+			}
+		}
+	}
+
+	protected void remove(String key)
+	{
+		CachedResponse old = entries.remove(key);
+		if (old != null) {
+			currBytes -= old.weight();
+		}
+	}
+
+	/**
+	 * Drop all entries whose key range overlaps [startKey, endKey)
+	 * @param endKey end of the range, or null for no end
+	 * @return number of entries dropped
+	 */
+	public synchronized int invalidate(String startKey, String endKey)
+	{
+		int count = 0;
+		Iterator<CachedResponse> iter = entries.values().iterator();
+
+		while (iter.hasNext()) {
+			CachedResponse cached = iter.next();
+			if (cached.overlaps(startKey, endKey)) {
+				currBytes -= cached.weight();
+				iter.remove();
+				++count;
+			}
+		}
+
+		return count;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		currBytes = 0;
+	}
+
+	/**
+	 * Invalidate the key range of any summary file which changed since the
+	 * last check. Runs at most once per summaryCheckInterval.
+	 */
+	protected void checkSummaries()
+	{
+		if (summaryFiles == null) {
+			return;
+		}
+
+		synchronized (summaryStates) {
+			long now = System.currentTimeMillis();
+
+			if (now < nextSummaryCheck) {
+				return;
+			}
+
+			nextSummaryCheck = now + summaryCheckInterval;
+
+			for (String path : summaryFiles) {
+				File file = new File(path);
+				String state = file.length() + ":" + file.lastModified();
+				String prevState = summaryStates.put(path, state);
+
+				if ((prevState == null) || prevState.equals(state)) {
+					continue;
+				}
+
+				try {
+					String firstKey = readFirstKey(file);
+					int count = invalidate(firstKey, null);
+					LOGGER.info("Summary " + path + " changed, invalidated " + count + " cached responses from " + firstKey);
+				} catch (IOException e) {
+					LOGGER.warning("Summary " + path + " changed, unable to read it, clearing cache: " + e);
+					clear();
+				}
+			}
+		}
+	}
+
+	protected static String readFirstKey(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			String line = raf.readLine();
+			if (line == null) {
+				return "";
+			}
+			// summary lines are "<urlkey> <timestamp>\t<part>\t<offset>..."
+			int end = line.indexOf(' ');
+			if (end < 0) {
+				end = line.indexOf('\t');
+			}
+			return (end < 0 ? line : line.substring(0, end));
+		} finally {
+			raf.close();
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getCurrBytes() {
+		return currBytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+
+	public void setMaxEntryBytes(int maxEntryBytes) {
+		this.maxEntryBytes = maxEntryBytes;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	public void setTtlMillis(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	public List<String> getSummaryFiles() {
+		return summaryFiles;
+	}
+
+	public void setSummaryFiles(List<String> summaryFiles) {
+		this.summaryFiles = new ArrayList<String>(summaryFiles);
+
+		// record current state, so only later changes invalidate
+		synchronized (summaryStates) {
+			for (String path : this.summaryFiles) {
+				File file = new File(path);
+				summaryStates.put(path, file.length() + ":" + file.lastModified());
+			}
+		}
+	}
+
+	public long getSummaryCheckInterval() {
+		return summaryCheckInterval;
+	}
+
+	public void setSummaryCheckInterval(long summaryCheckInterval) {
+		this.summaryCheckInterval = summaryCheckInterval;
+	}
+}
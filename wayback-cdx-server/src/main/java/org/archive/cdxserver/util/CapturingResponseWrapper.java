@@ -0,0 +1,169 @@
+package org.archive.cdxserver.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.archive.cdxserver.util.CDXResponseCache.CachedResponse;
+
+/**
+ * Passes a response through while keeping a copy of its status, headers
+ * and body, so it can be stored in a {@link CDXResponseCache}.
+ * Capture is abandoned once the body grows past maxBytes.
+ */
+public class CapturingResponseWrapper extends HttpServletResponseWrapper {
+
+	protected int maxBytes;
+	protected int status = SC_OK;
+	protected String contentType = null;
+	protected List<String[]> headers = new ArrayList<String[]>();
+	protected ByteArrayOutputStream body = new ByteArrayOutputStream();
+	protected boolean overflow = false;
+
+	protected ServletOutputStream outputStream = null;
+	protected PrintWriter writer = null;
+
+	public CapturingResponseWrapper(HttpServletResponse response, int maxBytes) {
+		super(response);
+		this.maxBytes = maxBytes;
+	}
+
+	protected void capture(byte[] b, int off, int len)
+	{
+		if (overflow) {
+			return;
+		}
+
+		if (body.size() + len > maxBytes) {
+			overflow = true;
+			body = null;
+			return;
+		}
+
+		body.write(b, off, len);
+	}
+
+	/**
+	 * @return the captured response, or null if it is too large or an error
+	 */
+	public CachedResponse getCapturedResponse()
+	{
+		if (writer != null) {
+			writer.flush();
+		}
+
+		if (overflow || (status >= 500)) {
+			return null;
+		}
+
+		return new CachedResponse(status, contentType, headers, body.toByteArray());
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			final ServletOutputStream out = super.getOutputStream();
+
+			outputStream = new ServletOutputStream() {
+				byte[] one = new byte[1];
+
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					one[0] = (byte)b;
+					capture(one, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					capture(b, off, len);
+				}
+
+				@Override
+				public void flush() throws IOException {
+					out.flush();
+				}
+
+				@Override
+				public void close() throws IOException {
+					out.close();
+				}
+			};
+		}
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+		}
+		return writer;
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		super.setStatus(sc);
+		status = sc;
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		super.sendError(sc);
+		status = sc;
+		overflow = true;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		super.sendError(sc, msg);
+		status = sc;
+		overflow = true;
+	}
+
+	@Override
+	public void setContentType(String type) {
+		super.setContentType(type);
+		contentType = type;
+	}
+
+	protected void removeHeader(String name)
+	{
+		for (int i = headers.size() - 1; i >= 0; i--) {
+			if (headers.get(i)[0].equalsIgnoreCase(name)) {
+				headers.remove(i);
+			}
+		}
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		super.setHeader(name, value);
+		removeHeader(name);
+		headers.add(new String[]{name, value});
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		super.addHeader(name, value);
+		headers.add(new String[]{name, value});
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, "" + value);
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		addHeader(name, "" + value);
+	}
+}
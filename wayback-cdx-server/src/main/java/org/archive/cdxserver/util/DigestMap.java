@@ -0,0 +1,290 @@
+package org.archive.cdxserver.util;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Compact map from capture digest to value.
+ *
+ * The usual base32 SHA-1 digests (32 chars of A-Z2-7) are decoded to their
+ * 160 bits, and kept in an open-addressing table with linear probing: keys
+ * in a long array, or optionally a direct ByteBuffer off the heap, and
+ * values in a parallel array. There are no per-entry String or Entry
+ * objects, so a timeline with millions of revisits costs a few dozen bytes
+ * per digest rather than well over a hundred.
+ *
+ * Any other digest string is kept in a plain HashMap. Null values are not
+ * supported: put(key, null) removes key.
+ *
+ * @param <V> the value type
+ */
+public class DigestMap<V> {
+
+	public final static int SHA1_BASE32_LENGTH = 32;
+
+	// three longs per slot, see decodeSha1()
+	protected final static int KEY_LONGS = 3;
+
+	protected final static int[] BASE32 = new int[128];
+
+	static {
+		for (int i = 0; i < BASE32.length; i++) {
+			BASE32[i] = -1;
+		}
+		for (int i = 0; i < 26; i++) {
+			BASE32['A' + i] = i;
+		}
+		for (int i = 0; i < 6; i++) {
+			BASE32['2' + i] = 26 + i;
+		}
+	}
+
+	protected final boolean offHeap;
+	protected long[] keys;
+	protected ByteBuffer offHeapKeys;
+	protected Object[] values;
+	protected int mask;
+	protected int size = 0;
+
+	protected HashMap<String, V> otherDigests = null;
+
+	// scratch for the decoded digest of the current call
+	protected final long[] key = new long[KEY_LONGS];
+
+	/**
+	 * Starts small, most queries see only a few digests
+	 */
+	public DigestMap()
+	{
+		this(8, false);
+	}
+
+	/**
+	 * @param expectedSize number of digests expected
+	 * @param offHeap if true, hold decoded digests in a direct ByteBuffer
+	 */
+	public DigestMap(int expectedSize, boolean offHeap)
+	{
+		this.offHeap = offHeap;
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	protected void allocate(int capacity)
+	{
+		mask = capacity - 1;
+		values = new Object[capacity];
+		if (offHeap) {
+			offHeapKeys = ByteBuffer.allocateDirect(capacity * KEY_LONGS * 8);
+		} else {
+			keys = new long[capacity * KEY_LONGS];
+		}
+	}
+
+	/**
+	 * Decode the 160 bits of a base32 SHA-1 digest into three longs
+	 * @return false if digest is not a 32 char base32 string
+	 */
+	public static boolean decodeSha1(String digest, long[] out)
+	{
+		if (digest.length() != SHA1_BASE32_LENGTH) {
+			return false;
+		}
+
+		// four groups of 8 chars, 40 bits each
+		long g3 = 0;
+
+		for (int g = 0; g < 4; g++) {
+			long acc = 0;
+			for (int i = g * 8; i < (g + 1) * 8; i++) {
+				char c = digest.charAt(i);
+				int v = (c < 128) ? BASE32[c] : -1;
+				if (v < 0) {
+					return false;
+				}
+				acc = (acc << 5) | v;
+			}
+			if (g < 3) {
+				out[g] = acc;
+			} else {
+				g3 = acc;
+			}
+		}
+
+		// spread the last group over the unused top bits of the others
+		out[0] |= (g3 & 0xFFFFFFL) << 40;
+		out[1] |= (g3 >>> 24) << 40;
+		return true;
+	}
+
+	protected long getKey(int slot, int i)
+	{
+		int index = (slot * KEY_LONGS) + i;
+		return offHeap ? offHeapKeys.getLong(index * 8) : keys[index];
+	}
+
+	protected void setKey(int slot, int i, long value)
+	{
+		int index = (slot * KEY_LONGS) + i;
+		if (offHeap) {
+			offHeapKeys.putLong(index * 8, value);
+		} else {
+			keys[index] = value;
+		}
+	}
+
+	protected boolean keyEquals(int slot, long[] k)
+	{
+		return (getKey(slot, 0) == k[0]) && (getKey(slot, 1) == k[1]) && (getKey(slot, 2) == k[2]);
+	}
+
+	protected int hashSlot(long[] k)
+	{
+		// digest bytes are already uniformly distributed
+		long h = k[0] ^ (k[1] * 0x9E3779B97F4A7C15L) ^ k[2];
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * @return slot holding k, or the empty slot where it belongs
+	 */
+	protected int findSlot(long[] k)
+	{
+		int slot = hashSlot(k);
+		while ((values[slot] != null) && !keyEquals(slot, k)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(String digest)
+	{
+		if (!decodeSha1(digest, key)) {
+			return (otherDigests == null) ? null : otherDigests.get(digest);
+		}
+		return (V)values[findSlot(key)];
+	}
+
+	/**
+	 * @return the previous value for digest, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(String digest, V value)
+	{
+		if (value == null) {
+			return remove(digest);
+		}
+
+		if (!decodeSha1(digest, key)) {
+			if (otherDigests == null) {
+				otherDigests = new HashMap<String, V>();
+			}
+			return otherDigests.put(digest, value);
+		}
+
+		int slot = findSlot(key);
+		V old = (V)values[slot];
+
+		if (old == null) {
+			setKey(slot, 0, key[0]);
+			setKey(slot, 1, key[1]);
+			setKey(slot, 2, key[2]);
+			if (++size > ((mask + 1) * 3 / 4)) {
+				values[slot] = value;
+				resize();
+				return null;
+			}
+		}
+
+		values[slot] = value;
+		return old;
+	}
+
+	/**
+	 * @return the removed value for digest, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(String digest)
+	{
+		if (!decodeSha1(digest, key)) {
+			return (otherDigests == null) ? null : otherDigests.remove(digest);
+		}
+
+		int slot = findSlot(key);
+		V old = (V)values[slot];
+
+		if (old == null) {
+			return null;
+		}
+
+		values[slot] = null;
+		size--;
+
+		// shift back later entries of the probe run, so lookups stay correct
+		int hole = slot;
+		int next = (slot + 1) & mask;
+
+		while (values[next] != null) {
+			key[0] = getKey(next, 0);
+			key[1] = getKey(next, 1);
+			key[2] = getKey(next, 2);
+			int home = hashSlot(key);
+
+			// move unless home lies cyclically in (hole, next]
+			boolean stay = (hole <= next) ? ((home > hole) && (home <= next)) : ((home > hole) || (home <= next));
+
+			if (!stay) {
+				setKey(hole, 0, key[0]);
+				setKey(hole, 1, key[1]);
+				setKey(hole, 2, key[2]);
+				values[hole] = values[next];
+				values[next] = null;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+
+		return old;
+	}
+
+	protected void resize()
+	{
+		long[] oldKeys = keys;
+		ByteBuffer oldOffHeapKeys = offHeapKeys;
+		Object[] oldValues = values;
+		int oldCapacity = oldValues.length;
+
+		allocate(oldCapacity * 2);
+
+		for (int i = 0; i < oldCapacity; i++) {
+			if (oldValues[i] == null) {
+				continue;
+			}
+			for (int j = 0; j < KEY_LONGS; j++) {
+				int index = (i * KEY_LONGS) + j;
+				key[j] = offHeap ? oldOffHeapKeys.getLong(index * 8) : oldKeys[index];
+			}
+			int slot = findSlot(key);
+			setKey(slot, 0, key[0]);
+			setKey(slot, 1, key[1]);
+			setKey(slot, 2, key[2]);
+			values[slot] = oldValues[i];
+		}
+	}
+
+	public int size()
+	{
+		return size + ((otherDigests == null) ? 0 : otherDigests.size());
+	}
+
+	public void clear()
+	{
+		allocate(16);
+		size = 0;
+		otherDigests = null;
+	}
+}
@@ -0,0 +1,142 @@
+package org.archive.cdxserver.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reusable byte buffer in front of a servlet output stream, optionally
+ * gzipped, which passes data on only in large chunks.
+ *
+ * Writing never throws: the first IOException is kept, later output is
+ * dropped, and {@link #isError()} reports it so the caller can stop.
+ */
+public class ByteOutputBuffer extends OutputStream {
+
+	public final static int DEFAULT_SIZE = 64 * 1024;
+
+	protected OutputStream out;
+	protected byte[] buf;
+	protected int count = 0;
+	protected IOException error = null;
+
+	public ByteOutputBuffer(OutputStream out, int size)
+	{
+		this.out = out;
+		this.buf = new byte[size];
+	}
+
+	/**
+	 * Create a buffer over the response output stream, setting the
+	 * Content-Encoding header if gzip is true
+	 */
+	public static ByteOutputBuffer create(HttpServletResponse response, boolean gzip) throws IOException
+	{
+		OutputStream out = response.getOutputStream();
+
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+			out = new GZIPOutputStream(out, DEFAULT_SIZE);
+		}
+
+		return new ByteOutputBuffer(out, DEFAULT_SIZE);
+	}
+
+	public boolean isError()
+	{
+		return (error != null);
+	}
+
+	public IOException getError()
+	{
+		return error;
+	}
+
+	protected void flushBuffer()
+	{
+		if ((count > 0) && (error == null)) {
+			try {
+				out.write(buf, 0, count);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		count = 0;
+	}
+
+	@Override
+	public void write(int b)
+	{
+		if (count == buf.length) {
+			flushBuffer();
+		}
+		buf[count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+	{
+		if (len > buf.length - count) {
+			flushBuffer();
+			if (len > buf.length) {
+				if (error == null) {
+					try {
+						out.write(b, off, len);
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				return;
+			}
+		}
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	/**
+	 * Write the low byte of each char of str, which must be all ASCII
+	 */
+	public void writeAscii(String str)
+	{
+		int len = str.length();
+		int i = 0;
+
+		while (i < len) {
+			if (count == buf.length) {
+				flushBuffer();
+			}
+			int end = Math.min(len, i + (buf.length - count));
+			for (; i < end; i++) {
+				buf[count++] = (byte)str.charAt(i);
+			}
+		}
+	}
+
+	@Override
+	public void flush()
+	{
+		flushBuffer();
+		if (error == null) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		flushBuffer();
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+	}
+}
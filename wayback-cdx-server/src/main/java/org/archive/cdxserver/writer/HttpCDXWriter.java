@@ -29,6 +29,11 @@ public abstract class HttpCDXWriter extends CDXWriter {
 	    }
     }
 	
+	protected HttpCDXWriter(HttpServletResponse response, PrintWriter writer) {
+		this.response = response;
+		this.writer = writer;
+	}
+	
 	@Override
 	public void close()
 	{
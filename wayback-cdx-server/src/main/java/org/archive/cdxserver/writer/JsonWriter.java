@@ -1,96 +1,286 @@
 package org.archive.cdxserver.writer;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.FieldSplitFormat;
 
+/**
+ * Writes cdx lines as JSON: either one array holding a header row of field
+ * names and then a row per line, or, in ndjson mode, one object per line
+ * keyed by field name, for streaming consumers.
+ *
+ * Output is encoded straight into a {@link ByteOutputBuffer}. Separators
+ * and field names are encoded once, and fields are only escaped if they
+ * contain characters needing it, with the same escapes as
+ * StringEscapeUtils.escapeJava.
+ */
 public class JsonWriter extends HttpCDXWriter {
 
+	public final static String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+	protected final static byte[] LINE_SEP = ascii(",\n");
+	protected final static byte[] FIELD_SEP = ascii("\", \"");
+	protected final static byte[] NDJSON_FIELD_SEP = ascii("\",");
+	protected final static byte[] NDJSON_LINE_END = ascii("\"}\n");
+
     boolean writeHeader = true;
     boolean firstLine = true;
 
+    protected final boolean ndjson;
+    protected final ByteOutputBuffer out;
+
+    // "{\"name\":\"" or "\"name\":\"" for each field, for the last names seen
+    protected FieldSplitFormat prefixNames = null;
+    protected byte[][] fieldPrefixes = null;
+
     public JsonWriter(HttpServletResponse response, boolean gzip) throws IOException {
-    	super(response, gzip);
-		setContentType("application/json");
+    	this(response, gzip, false);
+    }
+
+    public JsonWriter(HttpServletResponse response, boolean gzip, boolean ndjson) throws IOException {
+    	this(response, ByteOutputBuffer.create(response, gzip), ndjson);
+    }
+
+    protected JsonWriter(HttpServletResponse response, ByteOutputBuffer out, boolean ndjson) throws IOException {
+    	super(response, new PrintWriter(new OutputStreamWriter(out, "UTF-8")));
+    	this.out = out;
+    	this.ndjson = ndjson;
+		setContentType(ndjson ? NDJSON_CONTENT_TYPE : "application/json");
+    }
+
+    protected static byte[] ascii(String str)
+    {
+    	byte[] bytes = new byte[str.length()];
+    	for (int i = 0; i < bytes.length; i++) {
+    		bytes[i] = (byte)str.charAt(i);
+    	}
+    	return bytes;
     }
 
     @Override
     public void begin() {
         firstLine = true;
-        writer.print('[');
+        if (!ndjson) {
+        	out.write('[');
+        }
     }
-    
+
     protected void writeHeader(FieldSplitFormat names)
     {
   		if (names == null || names.getLength() == 0) {
-  			writer.print("[]");
+  			out.writeAscii("[]");
   			return;
   		}
 
-  		writer.print('[');
+  		out.write('[');
 
   		for (int i = 0; i < names.getLength(); i++) {
   			if (i > 0) {
-  				writer.print(',');
+  				out.write(',');
   			}
-  			writer.print('\"');
-  			writer.print(names.getName(i));
-  			writer.print('\"');
+  			out.write('\"');
+  			writeEscaped(names.getName(i));
+  			out.write('\"');
   		}
 
-  		writer.print(']');
+  		out.write(']');
+    }
+
+    protected byte[][] getFieldPrefixes(FieldSplitFormat names, int numFields)
+    {
+    	if ((names != prefixNames) || (fieldPrefixes == null) || (fieldPrefixes.length != numFields)) {
+    		fieldPrefixes = new byte[numFields][];
+    		for (int i = 0; i < numFields; i++) {
+    			String name = (((names != null) && (i < names.getLength())) ? names.getName(i) : ("" + i));
+    			fieldPrefixes[i] = ascii((i == 0 ? "{\"" : "\"") + escape(name) + "\":\"");
+    		}
+    		prefixNames = names;
+    	}
+    	return fieldPrefixes;
     }
 
     @Override
     public int writeLine(CDXLine line) {
+    	if (ndjson) {
+    		return writeObjectLine(line);
+    	}
+
         if (firstLine) {
             if (writeHeader) {
             	writeHeader(line.getNames());
-                writer.println(',');
+            	out.write(LINE_SEP, 0, LINE_SEP.length);
             }
             firstLine = false;
         } else {
-            writer.println(',');
+        	out.write(LINE_SEP, 0, LINE_SEP.length);
         }
 
-        writer.print('[');
+        out.write('[');
 
-        boolean firstField = true;
+        int numFields = line.getNumFields();
 
-        for (int i = 0; i < line.getNumFields(); i++) {
-          String field = line.getField(i);
-            if (firstField) {
-                writer.print('\"');
-                firstField = false;
+        for (int i = 0; i < numFields; i++) {
+            if (i == 0) {
+                out.write('\"');
             } else {
-                writer.print("\", \"");
+            	out.write(FIELD_SEP, 0, FIELD_SEP.length);
             }
-            writer.print(StringEscapeUtils.escapeJava(field));
+            writeEscaped(line.getField(i));
+        }
+
+        if (numFields > 0) {
+            out.write('\"');
+        }
+
+        out.write(']');
+        return 1;
+    }
+
+    protected int writeObjectLine(CDXLine line)
+    {
+        int numFields = line.getNumFields();
+
+        if (numFields == 0) {
+        	out.writeAscii("{}\n");
+        	return 1;
         }
 
-        if (!firstField) {
-            writer.print('\"');
+        byte[][] prefixes = getFieldPrefixes(line.getNames(), numFields);
+
+        for (int i = 0; i < numFields; i++) {
+        	if (i > 0) {
+        		out.write(NDJSON_FIELD_SEP, 0, NDJSON_FIELD_SEP.length);
+        	}
+        	out.write(prefixes[i], 0, prefixes[i].length);
+        	writeEscaped(line.getField(i));
         }
 
-        writer.print(']');
+        out.write(NDJSON_LINE_END, 0, NDJSON_LINE_END.length);
         return 1;
     }
 
+    protected static boolean needsEscape(char c)
+    {
+    	return (c < 32) || (c > 0x7f) || (c == '"') || (c == '\\');
+    }
+
+    protected void writeEscaped(String field)
+    {
+    	int len = field.length();
+
+    	for (int i = 0; i < len; i++) {
+    		if (needsEscape(field.charAt(i))) {
+    			out.writeAscii(escape(field));
+    			return;
+    		}
+    	}
+
+    	out.writeAscii(field);
+    }
+
+    /**
+     * Escape as StringEscapeUtils.escapeJava does, giving only ASCII
+     */
+    protected static String escape(String str)
+    {
+    	StringBuilder sb = null;
+    	int len = str.length();
+
+    	for (int i = 0; i < len; i++) {
+    		char c = str.charAt(i);
+
+    		if (!needsEscape(c)) {
+    			if (sb != null) {
+    				sb.append(c);
+    			}
+    			continue;
+    		}
+
+    		if (sb == null) {
+    			sb = new StringBuilder(len + 16);
+    			sb.append(str, 0, i);
+    		}
+
+    		switch (c) {
+    		case '"':
+    			sb.append("\\\"");
+    			break;
+    		case '\\':
+    			sb.append("\\\\");
+    			break;
+    		case '\b':
+    			sb.append("\\b");
+    			break;
+    		case '\n':
+    			sb.append("\\n");
+    			break;
+    		case '\t':
+    			sb.append("\\t");
+    			break;
+    		case '\f':
+    			sb.append("\\f");
+    			break;
+    		case '\r':
+    			sb.append("\\r");
+    			break;
+    		default:
+    			String hex = Integer.toHexString(c).toUpperCase();
+    			sb.append("\\u");
+    			for (int pad = hex.length(); pad < 4; pad++) {
+    				sb.append('0');
+    			}
+    			sb.append(hex);
+    			break;
+    		}
+    	}
+
+    	return (sb == null ? str : sb.toString());
+    }
+
     @Override
     public void end() {
-        writer.println(']');
+    	if (!ndjson) {
+    		out.writeAscii("]\n");
+    	}
     }
 
     @Override
     public void writeResumeKey(String resumeKey) {
-        writer.println(",");
-        writer.println("[],");
-        writer.print("[\"");
-        writer.print(resumeKey);
-        writer.print("\"]");
+    	if (ndjson) {
+    		out.writeAscii("{\"resumeKey\":\"");
+    		writeEscaped(resumeKey);
+    		out.writeAscii("\"}\n");
+    		return;
+    	}
+    	out.writeAscii(",\n");
+    	out.writeAscii("[],\n");
+    	out.writeAscii("[\"");
+    	writeEscaped(resumeKey);
+    	out.writeAscii("\"]");
     }
+
+	@Override
+	public boolean isAborted()
+	{
+		// unlike checkError(), does not flush
+		return out.isError();
+	}
+
+	@Override
+	public void writeMiscLine(String line)
+	{
+		super.writeMiscLine(line);
+		writer.flush();
+	}
+
+	@Override
+    public void printNumPages(int numPages, boolean printInBody) {
+		super.printNumPages(numPages, printInBody);
+		writer.flush();
+	}
 }
@@ -6,7 +6,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.archive.format.cdx.CDXLine;
 
-public class PlainTextWriter extends HttpCDXWriter {
+public class PlainTextWriter extends HttpCDXWriter implements RawLineWriter {
 	
 	public PlainTextWriter(HttpServletResponse response, boolean gzip) throws IOException
 	{
@@ -25,6 +25,11 @@ public class PlainTextWriter extends HttpCDXWriter {
 		return 1;
 	}
 
+	public int writeRawLine(String rawLine) {
+		writer.println(rawLine);
+		return 1;
+	}
+
 	@Override
 	public void end() {
 
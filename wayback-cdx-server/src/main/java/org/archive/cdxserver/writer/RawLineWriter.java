@@ -0,0 +1,18 @@
+package org.archive.cdxserver.writer;
+
+/**
+ * Implemented by a CDXWriter that prints a CDX line exactly as read, so
+ * that lines which need no other processing can be written without being
+ * parsed.
+ */
+public interface RawLineWriter {
+
+	/**
+	 * Write a line as read, with the same result as writeLine() of the
+	 * parsed line.
+	 * 
+	 * @param rawLine unparsed CDX line
+	 * @return the number of lines written
+	 */
+	public int writeRawLine(String rawLine);
+}
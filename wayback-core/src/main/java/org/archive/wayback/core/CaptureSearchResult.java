@@ -21,6 +21,7 @@ package org.archive.wayback.core;
 
 import java.util.Date;
 
+import org.archive.wayback.util.PackedTimestamp;
 import org.archive.wayback.util.url.UrlOperations;
 
 /**
@@ -226,10 +227,22 @@ public class CaptureSearchResult extends SearchResult {
 		put(CAPTURE_URL_KEY,urlKey);
 	}
 	public Date getCaptureDate() {
+		return new Date(getCaptureTime());
+	}
+	/**
+	 * @return capture date as milliseconds since the epoch, computed without
+	 * allocating a Date for complete 14-digit timestamps
+	 */
+	public long getCaptureTime() {
 		if(cachedDate == -1) {
-			cachedDate = tsToDate(getCaptureTimestamp()).getTime();
+			String timestamp = getCaptureTimestamp();
+			long time = PackedTimestamp.toEpochMillis(timestamp);
+			if(time == PackedTimestamp.INVALID) {
+				time = tsToDate(timestamp).getTime();
+			}
+			cachedDate = time;
 		}
-		return new Date(cachedDate);
+		return cachedDate;
 	}
 	public void setCaptureDate(Date date) {
 		cachedDate = date.getTime();
@@ -45,4 +45,8 @@ public class CaptureSearchResultPartitionMap
 		return element.getCaptureDate();
 	}
 
+	public long elementToTime(CaptureSearchResult element) {
+		return element.getCaptureTime();
+	}
+
 }
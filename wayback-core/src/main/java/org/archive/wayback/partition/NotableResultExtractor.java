@@ -32,7 +32,7 @@ import org.archive.wayback.util.ObjectFilter;
  *
  */
 public class NotableResultExtractor implements ObjectFilter<CaptureSearchResult>{
-	private Date want;
+	private long wantTime;
 	
 	private long closestDist = -1;
 	private CaptureSearchResult first;
@@ -42,12 +42,10 @@ public class NotableResultExtractor implements ObjectFilter<CaptureSearchResult>
 	private CaptureSearchResult next;
 	
 	public NotableResultExtractor(Date want) {
-		this.want = want;
+		this.wantTime = want.getTime();
 	}
 	public int filterObject(CaptureSearchResult o) {
-		Date oDate = o.getCaptureDate();
-		long tmp = oDate.getTime();
-		long cmp = oDate.getTime() - want.getTime();
+		long cmp = o.getCaptureTime() - wantTime;
 		long abs = Math.abs(cmp);
 		
 		last = o;
@@ -67,7 +65,7 @@ public class NotableResultExtractor implements ObjectFilter<CaptureSearchResult>
 				if(abs < closestDist) {
 					// after, but closer:
 					// if closest was before want, it's now prev:
-					if(closest.getCaptureDate().before(want)) {
+					if(closest.getCaptureTime() < wantTime) {
 						prev = closest;
 					}
 					closest = o;
@@ -51,4 +51,11 @@ implements ElementPartitionMap<Partition<CaptureSearchResult>> {
 		return element.getStart();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.archive.wayback.util.partition.ElementPartitionMap#elementToTime(java.lang.Object)
+	 */
+	public long elementToTime(Partition<CaptureSearchResult> element) {
+		return element.getStart().getTime();
+	}
+
 }
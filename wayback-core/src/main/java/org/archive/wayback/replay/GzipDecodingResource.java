@@ -32,9 +32,9 @@ package org.archive.wayback.replay;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 import org.archive.wayback.core.Resource;
+import org.archive.wayback.util.PooledGZIPInputStream;
 
 public class GzipDecodingResource extends Resource {
 	
@@ -42,12 +42,15 @@ public class GzipDecodingResource extends Resource {
 	
 	private Resource source;
 	
+	private PooledGZIPInputStream gzip = null;
+	
 	public GzipDecodingResource(Resource source)
 	{
 		this.source = source;
 	
 		try {
-			this.setInputStream(new GZIPInputStream(source));
+			gzip = new PooledGZIPInputStream(source);
+			this.setInputStream(gzip);
 		} catch (IOException io) {
 			// If can't read as gzip, might as well as send back raw data.
 			this.setInputStream(source);
@@ -66,7 +69,12 @@ public class GzipDecodingResource extends Resource {
 
 	@Override
 	public void close() throws IOException {
-		source.close();		
+		if (gzip != null) {
+			// also closes source
+			gzip.close();
+		} else {
+			source.close();
+		}
 	}
 
 	@Override
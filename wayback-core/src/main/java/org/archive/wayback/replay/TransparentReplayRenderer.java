@@ -19,8 +19,13 @@
  */
 package org.archive.wayback.replay;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 
 import javax.servlet.ServletException;
@@ -34,6 +39,7 @@ import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.BadContentException;
+import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 
 /**
  * ReplayRenderer implementation which returns the archive document as 
@@ -54,10 +60,38 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 	private final static String NOCACHE_HEADER_VALUE = "no";
 	
 	private final static int BUFFER_SIZE = 4096;
+
+	// request attributes for Tomcat's sendfile support
+	private final static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	private boolean sendLocalFiles = false;
+
 	public TransparentReplayRenderer(HttpHeaderProcessor httpHeaderProcessor) {
 		this.httpHeaderProcessor = httpHeaderProcessor;
 	}
 
+	/**
+	 * @return true if payloads of uncompressed local records are sent
+	 * straight from the file
+	 */
+	public boolean isSendLocalFiles() {
+		return sendLocalFiles;
+	}
+
+	/**
+	 * @param sendLocalFiles if true, the payload of an
+	 * uncompressed, unchunked record in a local WARC file is sent straight
+	 * from the file, with the container's sendfile if supported, else
+	 * FileChannel.transferTo(), rather than copied through the Resource.
+	 * Defaults to false.
+	 */
+	public void setSendLocalFiles(boolean sendLocalFiles) {
+		this.sendLocalFiles = sendLocalFiles;
+	}
+
 	@Override
 	public void renderResource(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse, WaybackRequest wbRequest,
@@ -85,11 +119,10 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 		// if a HttpHeaderProcessor has mangled it too badly. Should this
 		// happen in the HttpHeaderProcessor itself?
 		String origLength = HttpHeaderOperation.getContentLength(headers);
+		long contentLength = -1;
 		if(origLength != null) {
 			headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER, origLength);
 			
-			long contentLength = -1;
-			
 			try {
 			    contentLength = Long.parseLong(origLength);
 			} catch (NumberFormatException n) {
@@ -104,6 +137,12 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 
 		HttpHeaderOperation.sendHeaders(headers, httpResponse);
 
+		if(sendLocalFiles && (contentLength > 0)
+				&& sendLocalPayload(httpRequest, httpResponse, payloadResource,
+						contentLength)) {
+			return;
+		}
+
 		// and copy the raw byte-stream.
 		OutputStream os = httpResponse.getOutputStream();
 		byte[] buffer = new byte[BUFFER_SIZE];
@@ -119,4 +158,50 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 			}
 		}
 	}
+
+	/**
+	 * Send the payload straight from its local WARC file, if it is an
+	 * uncompressed record, and exactly contentLength bytes long.
+	 * @return true if sent, false if the payload must be copied instead
+	 */
+	protected boolean sendLocalPayload(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse, Resource payloadResource,
+			long contentLength) throws IOException {
+		if(!(payloadResource instanceof WarcResource)) {
+			return false;
+		}
+		WarcResource warc = (WarcResource) payloadResource;
+		long offset = warc.getLocalPayloadOffset();
+		if((offset < 0) || (warc.getLocalPayloadLength() != contentLength)) {
+			return false;
+		}
+		File file = warc.getLocalFile();
+
+		if((httpRequest != null) && Boolean.TRUE.equals(
+				httpRequest.getAttribute(SENDFILE_SUPPORT))) {
+			// the container sends the file after we return
+			httpRequest.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+			httpRequest.setAttribute(SENDFILE_START, Long.valueOf(offset));
+			httpRequest.setAttribute(SENDFILE_END, Long.valueOf(offset + contentLength));
+			return true;
+		}
+
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			WritableByteChannel out =
+				Channels.newChannel(httpResponse.getOutputStream());
+			long end = offset + contentLength;
+			while(offset < end) {
+				long sent = channel.transferTo(offset, end - offset, out);
+				if(sent <= 0) {
+					throw new IOException("Unexpected end of " + file);
+				}
+				offset += sent;
+			}
+		} finally {
+			fis.close();
+		}
+		return true;
+	}
 }
@@ -0,0 +1,134 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+
+/**
+ * Accepts a date-ordered stream of CaptureSearchResults, retaining only the
+ * first and last results, the result closest to a requested date, and up to
+ * windowSize results either side of it.
+ * 
+ * The closest result is chosen exactly as by
+ * {@link org.archive.wayback.resourceindex.filters.ClosestResultTrackingFilter},
+ * so the closest result annotated on the CaptureSearchResults is always
+ * retained. Memory used is proportional to windowSize, rather than to the
+ * number of captures.
+ *
+ * @version $Date$, $Revision$
+ */
+public class ClosestWindowCollector {
+	private int windowSize;
+	private long wantMS;
+
+	private int numSeen = 0;
+	private CaptureSearchResult first = null;
+	private CaptureSearchResult last = null;
+	private CaptureSearchResult closest = null;
+	private long closestDiffMS = 0;
+	private boolean closestFound = false;
+	private LinkedList<CaptureSearchResult> before =
+		new LinkedList<CaptureSearchResult>();
+	private List<CaptureSearchResult> after =
+		new ArrayList<CaptureSearchResult>();
+
+	/**
+	 * @param wantMS the number of MS since the epoch of the desired date
+	 * @param windowSize number of results to retain either side of the
+	 * closest result
+	 */
+	public ClosestWindowCollector(long wantMS, int windowSize) {
+		this.wantMS = wantMS;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * @param result the next result, in increasing date order
+	 */
+	public void add(CaptureSearchResult result) {
+		numSeen++;
+		if(first == null) {
+			first = result;
+		}
+		last = result;
+		if(!closestFound) {
+			long diffMS = Math.abs(result.getCaptureTime() - wantMS);
+			if((closest == null) || (diffMS <= closestDiffMS)) {
+				if(closest != null) {
+					before.add(closest);
+					if(before.size() > windowSize) {
+						before.removeFirst();
+					}
+				}
+				closest = result;
+				closestDiffMS = diffMS;
+				return;
+			}
+			// dates now moving away from the desired date:
+			closestFound = true;
+		}
+		if(after.size() < windowSize) {
+			after.add(result);
+		}
+	}
+
+	/**
+	 * @return number of results passed to add()
+	 */
+	public int getNumSeen() {
+		return numSeen;
+	}
+
+	/**
+	 * @return the closest result seen so far
+	 */
+	public CaptureSearchResult getClosest() {
+		return closest;
+	}
+
+	/**
+	 * Append the retained results, in date order, to results.
+	 * @param results CaptureSearchResults to populate
+	 */
+	public void addTo(CaptureSearchResults results) {
+		if(closest == null) {
+			return;
+		}
+		if((first != closest) && (before.isEmpty() || (first != before.getFirst()))) {
+			results.addSearchResult(first);
+		}
+		for(CaptureSearchResult result : before) {
+			results.addSearchResult(result);
+		}
+		results.addSearchResult(closest);
+		for(CaptureSearchResult result : after) {
+			results.addSearchResult(result);
+		}
+		if((last != closest) && (after.isEmpty()
+				|| (last != after.get(after.size() - 1)))) {
+			results.addSearchResult(last);
+		}
+	}
+}
@@ -23,23 +23,47 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.resourceindex.cdx.CDXIndex;
 import org.archive.wayback.util.CompositeSortedIterator;
+import org.archive.wayback.util.DaemonThreadFactory;
 
 /**
  * SearchResultSource that aggregates results from multiple SearchResultSources.
  * 
+ * If parallelThreads is set, forward prefix lookups against all sources are
+ * issued concurrently on a shared, bounded thread pool, each limited to
+ * sourceTimeout milliseconds from when it starts, so the time to the first
+ * result tracks the slowest source rather than the sum of all sources.
+ * When every pool thread is busy, further lookups run on the requesting
+ * thread instead of queueing.
+ * 
  * @author brad
  * @version $Date$, $Revision$
  */
 public class CompositeSearchResultSource implements SearchResultSource {
+	private static final Logger LOGGER =
+		Logger.getLogger(CompositeSearchResultSource.class.getName());
 
 	protected List<SearchResultSource> sources;
 
+	private int parallelThreads = 0;
+	private long sourceTimeout = 10000;
+	private ExecutorService executor = null;
+
 	/**
 	 * Constructor
 	 */
@@ -65,6 +89,10 @@ public class CompositeSearchResultSource implements SearchResultSource {
 	public CloseableIterator<CaptureSearchResult> getPrefixIterator(String prefix)
 			throws ResourceIndexNotAvailableException {
 
+		if ((parallelThreads > 0) && (sources.size() > 1)) {
+			return getParallelPrefixIterator(prefix);
+		}
+
 		Comparator<CaptureSearchResult> comparator = new SearchResultComparator();
 		CompositeSortedIterator<CaptureSearchResult> itr = new CompositeSortedIterator<CaptureSearchResult>(comparator);
 		
@@ -78,10 +106,8 @@ public class CompositeSearchResultSource implements SearchResultSource {
 				itr.addComponent(source.getPrefixIterator(prefix));
 				added++;
 			} catch (ResourceIndexNotAvailableException e) {
-				if (source instanceof ZipNumClusterSearchResultSource) {
-					if (((ZipNumClusterSearchResultSource)source).getCluster().isRequired()) {
-						throw e;
-					}
+				if (isRequired(source)) {
+					throw e;
 				}
 				
 				lastExc = e;
@@ -100,6 +126,186 @@ public class CompositeSearchResultSource implements SearchResultSource {
 		return itr;
 	}
 
+	/**
+	 * @param source a component SearchResultSource
+	 * @return true if failure of source must fail the whole query
+	 */
+	protected boolean isRequired(SearchResultSource source) {
+		if (source instanceof ZipNumClusterSearchResultSource) {
+			return ((ZipNumClusterSearchResultSource)source).getCluster().isRequired();
+		}
+		return false;
+	}
+
+	/**
+	 * Issue getPrefixIterator() against every source concurrently, and merge
+	 * the results with the same failure policy as the sequential version:
+	 * failure (or timeout) of a required source fails the query, other
+	 * failures are tolerated unless every source fails.
+	 */
+	protected CloseableIterator<CaptureSearchResult> getParallelPrefixIterator(
+			String prefix) throws ResourceIndexNotAvailableException {
+
+		ExecutorService service = getExecutor();
+		List<SourceLookup> lookups = new ArrayList<SourceLookup>(sources.size());
+		List<Future<CloseableIterator<CaptureSearchResult>>> futures =
+			new ArrayList<Future<CloseableIterator<CaptureSearchResult>>>(sources.size());
+		for (SearchResultSource source : sources) {
+			SourceLookup lookup = new SourceLookup(source, prefix);
+			lookups.add(lookup);
+			futures.add(service.submit(lookup));
+		}
+
+		Comparator<CaptureSearchResult> comparator = new SearchResultComparator();
+		CompositeSortedIterator<CaptureSearchResult> itr = new CompositeSortedIterator<CaptureSearchResult>(comparator);
+
+		int added = 0;
+		ResourceIndexNotAvailableException lastExc = null;
+		ResourceIndexNotAvailableException requiredExc = null;
+
+		for (int i = 0; i < lookups.size(); i++) {
+			SourceLookup lookup = lookups.get(i);
+			Future<CloseableIterator<CaptureSearchResult>> future = futures.get(i);
+			ResourceIndexNotAvailableException exc = null;
+			if (requiredExc == null) {
+				try {
+					long now = System.currentTimeMillis();
+					long deadline = lookup.getStarted(now) + sourceTimeout;
+					long remaining = Math.max(0, deadline - now);
+					itr.addComponent(future.get(remaining, TimeUnit.MILLISECONDS));
+					added++;
+					continue;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof ResourceIndexNotAvailableException) {
+						exc = (ResourceIndexNotAvailableException) cause;
+					} else {
+						exc = new ResourceIndexNotAvailableException(
+								String.valueOf(cause));
+					}
+				} catch (TimeoutException e) {
+					LOGGER.warning("Timed out after " + sourceTimeout
+							+ "ms searching " + lookup.source + " for " + prefix);
+					exc = new ResourceIndexNotAvailableException(
+							"Timed out searching index");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					exc = new ResourceIndexNotAvailableException(
+							"Interrupted searching index");
+				}
+			}
+			// either failed, or the query is already being abandoned:
+			lookup.abandon();
+			future.cancel(true);
+			if (exc != null) {
+				if (isRequired(lookup.source)) {
+					requiredExc = exc;
+				}
+				lastExc = exc;
+			}
+		}
+
+		if ((requiredExc != null) || ((lastExc != null) && (added == 0))) {
+			try {
+				itr.close();
+			} catch (IOException io) {
+				
+			}
+			throw (requiredExc != null) ? requiredExc : lastExc;
+		}
+
+		return itr;
+	}
+
+	/**
+	 * Lookups never queue: each starts at once on a pool thread or, when
+	 * all are busy (or the pool has been shut down), on the requesting
+	 * thread.
+	 */
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(0, parallelThreads, 60,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new DaemonThreadFactory("CompositeSearchResultSource"),
+					new RejectedExecutionHandler() {
+						public void rejectedExecution(Runnable r,
+								ThreadPoolExecutor executor) {
+							r.run();
+						}
+					});
+		}
+		return executor;
+	}
+
+	/**
+	 * Performs getPrefixIterator() for one source, priming the first result
+	 * so any seek happens on the worker thread. If the lookup is abandoned
+	 * before it completes, the iterator is closed rather than returned.
+	 */
+	private class SourceLookup
+		implements Callable<CloseableIterator<CaptureSearchResult>> {
+		private SearchResultSource source;
+		private String prefix;
+		private CloseableIterator<CaptureSearchResult> result = null;
+		private boolean abandoned = false;
+		private long started = -1;
+
+		SourceLookup(SearchResultSource source, String prefix) {
+			this.source = source;
+			this.prefix = prefix;
+		}
+
+		/**
+		 * @param now current time, returned if the lookup has not started
+		 * @return milliseconds since the epoch when the lookup started
+		 */
+		synchronized long getStarted(long now) {
+			return (started < 0) ? now : started;
+		}
+
+		public CloseableIterator<CaptureSearchResult> call() throws Exception {
+			synchronized (this) {
+				started = System.currentTimeMillis();
+			}
+			CloseableIterator<CaptureSearchResult> itr =
+				source.getPrefixIterator(prefix);
+			try {
+				itr.hasNext();
+			} catch (RuntimeException e) {
+				try {
+					source.cleanup(itr);
+				} catch (IOException io) {
+					LOGGER.warning(io.toString());
+				}
+				throw e;
+			}
+			synchronized (this) {
+				if (!abandoned) {
+					result = itr;
+					return itr;
+				}
+			}
+			source.cleanup(itr);
+			return null;
+		}
+
+		void abandon() {
+			CloseableIterator<CaptureSearchResult> toClose;
+			synchronized (this) {
+				abandoned = true;
+				toClose = result;
+				result = null;
+			}
+			if (toClose != null) {
+				try {
+					source.cleanup(toClose);
+				} catch (IOException e) {
+					LOGGER.warning(e.toString());
+				}
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -159,7 +365,47 @@ public class CompositeSearchResultSource implements SearchResultSource {
 		return sources;
 	}
 
+	/**
+	 * @return the number of threads used to search sources concurrently, or
+	 * 		0 if sources are searched sequentially
+	 */
+	public int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	/**
+	 * @param parallelThreads if greater than 0, search all sources
+	 * 		concurrently using a pool of up to this many threads, shared by
+	 * 		all queries. Lookups beyond that run on the requesting thread.
+	 */
+	public void setParallelThreads(int parallelThreads) {
+		this.parallelThreads = parallelThreads;
+	}
+
+	/**
+	 * @return the maximum milliseconds to wait for each source when searching
+	 * 		concurrently
+	 */
+	public long getSourceTimeout() {
+		return sourceTimeout;
+	}
+
+	/**
+	 * @param sourceTimeout the maximum milliseconds to wait for each source
+	 * 		when searching concurrently. Sources which time out are treated
+	 * 		as unavailable.
+	 */
+	public void setSourceTimeout(long sourceTimeout) {
+		this.sourceTimeout = sourceTimeout;
+	}
+
 	public void shutdown() throws IOException {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
 		for(SearchResultSource source : sources) {
 			source.shutdown();
 		}
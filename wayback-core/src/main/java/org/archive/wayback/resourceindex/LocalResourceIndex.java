@@ -118,6 +118,8 @@ public class LocalResourceIndex implements ResourceIndex {
 	
 	private boolean markPrefixQueries = false;
 	
+	private int replayWindowSize = 0;
+	
 	private ObjectFilter<CaptureSearchResult> annotater = null;
 	
 	private ObjectFilter<CaptureSearchResult> filter = null;
@@ -209,8 +211,18 @@ public class LocalResourceIndex implements ResourceIndex {
 			
 			itr = new ObjectFilterIterator<CaptureSearchResult>(source.getPrefixIterator(urlKey),filters);
 			
-			while(itr.hasNext()) {
-				results.addSearchResult(itr.next());
+			if((type == TYPE_REPLAY) && (replayWindowSize > 0)) {
+				// stream, keeping only the results replay may need:
+				ClosestWindowCollector collector = new ClosestWindowCollector(
+						wbRequest.getReplayDate().getTime(), replayWindowSize);
+				while(itr.hasNext()) {
+					collector.add(itr.next());
+				}
+				collector.addTo(results);
+			} else {
+				while(itr.hasNext()) {
+					results.addSearchResult(itr.next());
+				}
 			}
 		} catch(RuntimeIOException e) {
 			throw new ResourceIndexNotAvailableException(e.getLocalizedMessage());
@@ -383,6 +395,23 @@ public class LocalResourceIndex implements ResourceIndex {
 		this.source = source;
 	}
 
+	/**
+	 * @return number of captures retained either side of the closest for
+	 * replay queries, or 0 if all matching captures are retained
+	 */
+	public int getReplayWindowSize() {
+		return replayWindowSize;
+	}
+
+	/**
+	 * @param replayWindowSize if > 0, replay queries retain only the first
+	 * and last matching captures and this many captures either side of the
+	 * closest, rather than every matching capture
+	 */
+	public void setReplayWindowSize(int replayWindowSize) {
+		this.replayWindowSize = replayWindowSize;
+	}
+
 	public boolean isDedupeRecords() {
 		return dedupeRecords;
 	}
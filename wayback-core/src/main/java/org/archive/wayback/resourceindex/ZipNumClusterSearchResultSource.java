@@ -30,6 +30,8 @@ public class ZipNumClusterSearchResultSource implements SearchResultSource, Adap
 	protected int timestampDedupLength = 0;
 	
 	protected List<String> ignoreRobotPaths;
+	
+	protected boolean lazyParsing = false;
 		
 	public void init() throws IOException
 	{
@@ -112,7 +114,12 @@ public class ZipNumClusterSearchResultSource implements SearchResultSource, Adap
 	
 	@Override
 	public CaptureSearchResult adapt(String line) {
-		CaptureSearchResult result = CDXFlexFormat.parseCDXLineFlexFast(line);
+		CaptureSearchResult result;
+		if (lazyParsing) {
+			result = CDXFlexFormat.parseCDXLineFlexLazy(line);
+		} else {
+			result = CDXFlexFormat.parseCDXLineFlexFast(line);
+		}
 		
 		if (ignoreRobotPaths != null) {
 			for (String path : ignoreRobotPaths) {
@@ -141,4 +148,16 @@ public class ZipNumClusterSearchResultSource implements SearchResultSource, Adap
 	public void setTimestampDedupLength(int timestampDedupLength) {
 		this.timestampDedupLength = timestampDedupLength;
 	}	
+
+	public boolean isLazyParsing() {
+		return lazyParsing;
+	}
+
+	/**
+	 * @param lazyParsing if true, results keep the CDX line and copy each
+	 * field out of it only when it is first requested
+	 */
+	public void setLazyParsing(boolean lazyParsing) {
+		this.lazyParsing = lazyParsing;
+	}
 }
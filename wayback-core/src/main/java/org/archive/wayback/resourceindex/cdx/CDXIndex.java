@@ -45,10 +45,22 @@ public class CDXIndex extends FlatFile implements SearchResultSource {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	private boolean lazyParsing = false;
+
+	/**
+	 * Load or build the sparse in-memory index for this file, if a
+	 * sparseIndexInterval has been configured, so the first query does not
+	 * pay for it.
+	 * @throws IOException if the file could not be indexed
+	 */
+	public void init() throws IOException {
+		getSparseIndex();
+	}
+
 	protected CloseableIterator<CaptureSearchResult> adaptIterator(Iterator<String> itr)
 		throws IOException {
 		return new AdaptedIterator<String,CaptureSearchResult>(itr,
-				new CDXLineToSearchResultAdapter());
+				new CDXLineToSearchResultAdapter(lazyParsing));
 	}
 
 	/* (non-Javadoc)
@@ -115,7 +127,7 @@ public class CDXIndex extends FlatFile implements SearchResultSource {
 			wantTime = wanted.getTime();
 		}
 		private long searchResultToDistance(CaptureSearchResult sr) {
-			return Math.abs(wantTime - sr.getCaptureDate().getTime());
+			return Math.abs(wantTime - sr.getCaptureTime());
 		}
 		/* (non-Javadoc)
 		 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
@@ -145,4 +157,19 @@ public class CDXIndex extends FlatFile implements SearchResultSource {
 	public void shutdown() throws IOException {
 		// no-op
 	}
+
+	/**
+	 * @return true if results copy fields out of CDX lines only on demand
+	 */
+	public boolean isLazyParsing() {
+		return lazyParsing;
+	}
+
+	/**
+	 * @param lazyParsing if true, return results which keep the CDX line and
+	 * copy each field out of it only when it is first requested
+	 */
+	public void setLazyParsing(boolean lazyParsing) {
+		this.lazyParsing = lazyParsing;
+	}
 }
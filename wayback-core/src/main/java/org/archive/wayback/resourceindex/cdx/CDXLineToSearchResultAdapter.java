@@ -32,7 +32,23 @@ import org.archive.wayback.util.Adapter;
  */
 public class CDXLineToSearchResultAdapter implements Adapter<String,CaptureSearchResult> {	
 
+	private boolean lazy = false;
+
+	public CDXLineToSearchResultAdapter() {
+	}
+
+	/**
+	 * @param lazy if true, produce results which copy fields out of the line
+	 * only when they are requested
+	 */
+	public CDXLineToSearchResultAdapter(boolean lazy) {
+		this.lazy = lazy;
+	}
+
 	public CaptureSearchResult adapt(String line) {
+		if(lazy) {
+			return CDXFlexFormat.parseCDXLineFlexLazy(line);
+		}
 		return CDXFlexFormat.parseCDXLineFlex(line);
 	}
 }
@@ -0,0 +1,250 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdx.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.archive.wayback.util.ByteOp;
+import org.archive.wayback.util.PackedTimestamp;
+
+/**
+ * Constants and primitive codecs shared by {@link BinaryCDXWriter} and
+ * {@link BinaryCDXIndex}.
+ * 
+ * A binary CDX file holds the same records as a sorted CDX file, laid out
+ * as:
+ * <pre>
+ *   MAGIC
+ *   block*            - sorted records, RECORDS_PER_BLOCK per block
+ *   string tables     - mime types, HTTP codes, filenames, robot flags
+ *   block index       - first key, offset, length and count of each block
+ *   long tablesOffset
+ *   long indexOffset
+ * </pre>
+ * Within a block each record is:
+ * <pre>
+ *   varint  bytes of urlkey shared with the previous record in the block
+ *   varint  length of the remaining urlkey bytes, then those bytes
+ *   int64   timestamp, as packed by {@link PackedTimestamp}
+ *   varint  offset + 1
+ *   varint  compressed length + 1
+ *   varint  mime type, HTTP code, filename and robot flags table indexes
+ *   varint  length, then bytes of the original URL, digest and redirect URL
+ * </pre>
+ * so reading a record involves no delimiter scanning or number parsing.
+ *
+ * @version $Date$, $Revision$
+ */
+public class BinaryCDXFormat {
+	/** written at the start of every binary CDX file */
+	public final static String MAGIC = "WB-BINARY-CDX-1";
+	/** default number of records in each block */
+	public final static int RECORDS_PER_BLOCK = 128;
+	/** number of interned string tables */
+	public final static int NUM_TABLES = 4;
+	/** index of the mime type table */
+	public final static int MIME_TABLE = 0;
+	/** index of the HTTP code table */
+	public final static int HTTP_CODE_TABLE = 1;
+	/** index of the filename table */
+	public final static int FILE_TABLE = 2;
+	/** index of the robot flags table */
+	public final static int ROBOT_FLAGS_TABLE = 3;
+	private final static String EMPTY_VALUE = "-";
+
+	/**
+	 * @param os OutputStream to write to
+	 * @param value non-negative value to write as an unsigned LEB128 varint
+	 * @throws IOException if os throws one
+	 */
+	public static void writeVarLong(OutputStream os, long value)
+	throws IOException {
+		if(value < 0) {
+			throw new IllegalArgumentException("Negative varint:" + value);
+		}
+		while((value & ~0x7FL) != 0) {
+			os.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		os.write((int) value);
+	}
+
+	/**
+	 * @param os OutputStream to write to
+	 * @param value to write as 8 big-endian bytes
+	 * @throws IOException if os throws one
+	 */
+	public static void writeLong(OutputStream os, long value)
+	throws IOException {
+		for(int shift = 56; shift >= 0; shift -= 8) {
+			os.write((int) (value >>> shift));
+		}
+	}
+
+	/**
+	 * Write key front-coded against previous.
+	 * @param os OutputStream to write to
+	 * @param previous UTF-8 bytes of the previous key in the block, or null
+	 * @param key UTF-8 bytes of the key to write
+	 * @throws IOException if os throws one
+	 */
+	public static void writeKey(OutputStream os, byte previous[], byte key[])
+	throws IOException {
+		int shared = 0;
+		if(previous != null) {
+			int max = Math.min(previous.length, key.length);
+			while((shared < max) && (previous[shared] == key[shared])) {
+				shared++;
+			}
+		}
+		writeVarLong(os, shared);
+		writeVarLong(os, key.length - shared);
+		os.write(key, shared, key.length - shared);
+	}
+
+	/**
+	 * @param os OutputStream to write to
+	 * @param value String to write as a varint length and UTF-8 bytes, with
+	 * "-" written as the empty String
+	 * @throws IOException if os throws one
+	 */
+	public static void writeString(OutputStream os, String value)
+	throws IOException {
+		if((value == null) || value.equals(EMPTY_VALUE)) {
+			writeVarLong(os, 0);
+			return;
+		}
+		byte bytes[] = value.getBytes(ByteOp.UTF8);
+		writeVarLong(os, bytes.length);
+		os.write(bytes);
+	}
+
+	/**
+	 * Sequential reader of the primitive values within a block.
+	 */
+	public static class Cursor {
+		byte buffer[];
+		int pos;
+		int limit;
+		byte key[] = new byte[256];
+		int keyLength = 0;
+
+		/**
+		 * @param buffer bytes to decode
+		 * @param pos offset of the first byte
+		 * @param limit offset after the last byte
+		 */
+		public Cursor(byte buffer[], int pos, int limit) {
+			this.buffer = buffer;
+			this.pos = pos;
+			this.limit = limit;
+		}
+
+		/**
+		 * @return true if there are bytes remaining
+		 */
+		public boolean hasRemaining() {
+			return pos < limit;
+		}
+
+		/**
+		 * @return the next unsigned LEB128 varint
+		 * @throws IOException if the varint is truncated
+		 */
+		public long readVarLong() throws IOException {
+			long value = 0;
+			int shift = 0;
+			while(pos < limit) {
+				int b = buffer[pos++] & 0xFF;
+				value |= ((long) (b & 0x7F)) << shift;
+				if((b & 0x80) == 0) {
+					return value;
+				}
+				shift += 7;
+			}
+			throw new IOException("Truncated varint");
+		}
+
+		/**
+		 * @return the next varint, which must fit in an int
+		 * @throws IOException if the varint is truncated
+		 */
+		public int readVarInt() throws IOException {
+			return (int) readVarLong();
+		}
+
+		/**
+		 * @return the next 8 byte big-endian long
+		 * @throws IOException if fewer than 8 bytes remain
+		 */
+		public long readLong() throws IOException {
+			if(limit - pos < 8) {
+				throw new IOException("Truncated long");
+			}
+			long value = 0;
+			for(int i = 0; i < 8; i++) {
+				value = (value << 8) | (buffer[pos++] & 0xFF);
+			}
+			return value;
+		}
+
+		/**
+		 * @return the next String written by writeString(), with the empty
+		 * String returned as "-"
+		 * @throws IOException if the String is truncated
+		 */
+		public String readString() throws IOException {
+			int len = readVarInt();
+			if(len == 0) {
+				return EMPTY_VALUE;
+			}
+			if(limit - pos < len) {
+				throw new IOException("Truncated string");
+			}
+			String value = new String(buffer, pos, len, ByteOp.UTF8);
+			pos += len;
+			return value;
+		}
+
+		/**
+		 * Read a front-coded key: a varint count of bytes shared with the
+		 * previous key read by this Cursor, then the remaining bytes.
+		 * @return the key
+		 * @throws IOException if the key is truncated
+		 */
+		public String readKey() throws IOException {
+			int shared = readVarInt();
+			int len = readVarInt();
+			if((shared > keyLength) || (limit - pos < len)) {
+				throw new IOException("Corrupt key");
+			}
+			int total = shared + len;
+			if(total > key.length) {
+				key = Arrays.copyOf(key, Math.max(total, key.length * 2));
+			}
+			System.arraycopy(buffer, pos, key, shared, len);
+			pos += len;
+			keyLength = total;
+			return new String(key, 0, keyLength, ByteOp.UTF8);
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdx.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NoSuchElementException;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.FastCaptureSearchResult;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.resourceindex.SearchResultSource;
+import org.archive.wayback.util.ByteOp;
+import org.archive.wayback.util.PackedTimestamp;
+
+/**
+ * SearchResultSource reading a binary CDX file written by
+ * {@link BinaryCDXWriter}.
+ * 
+ * The string tables and block index are held in memory, so a lookup is an
+ * in-memory binary search followed by reading whole blocks, whose records
+ * decode straight into {@link FastCaptureSearchResult}s without splitting
+ * or parsing text.
+ * 
+ * Like {@link org.archive.wayback.resourceindex.cdx.CDXIndex}, prefix
+ * iterators start at the first record at or after the prefix and continue
+ * to the end of the file. Reverse iteration is not supported.
+ *
+ * @version $Date$, $Revision$
+ */
+public class BinaryCDXIndex implements SearchResultSource {
+	private final static int TRAILER_LENGTH = 16;
+
+	private File file = null;
+	private String tables[][];
+	private String blockKeys[];
+	private long blockOffsets[];
+	private int blockLengths[];
+
+	/**
+	 * Load the string tables and block index.
+	 * @throws IOException if the file could not be read, or is not a
+	 * 		binary CDX file
+	 */
+	public synchronized void init() throws IOException {
+		if(file == null) {
+			throw new IOException("No path set");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte magic[] = BinaryCDXFormat.MAGIC.getBytes(ByteOp.UTF8);
+			byte header[] = new byte[magic.length + 1];
+			long length = raf.length();
+			if(length < header.length + TRAILER_LENGTH) {
+				throw new IOException("Not a binary CDX:" + file);
+			}
+			raf.readFully(header);
+			BinaryCDXFormat.Cursor cursor =
+				new BinaryCDXFormat.Cursor(header, 0, header.length);
+			if(!BinaryCDXFormat.MAGIC.equals(cursor.readString())) {
+				throw new IOException("Not a binary CDX:" + file);
+			}
+			raf.seek(length - TRAILER_LENGTH);
+			long tablesOffset = raf.readLong();
+			if((tablesOffset < header.length)
+					|| (tablesOffset > length - TRAILER_LENGTH)) {
+				throw new IOException("Corrupt binary CDX trailer:" + file);
+			}
+			byte tail[] = new byte[(int) (length - TRAILER_LENGTH - tablesOffset)];
+			raf.seek(tablesOffset);
+			raf.readFully(tail);
+			cursor = new BinaryCDXFormat.Cursor(tail, 0, tail.length);
+
+			String newTables[][] = new String[BinaryCDXFormat.NUM_TABLES][];
+			for(int t = 0; t < BinaryCDXFormat.NUM_TABLES; t++) {
+				int count = cursor.readVarInt();
+				// index 0 is reserved for null:
+				newTables[t] = new String[count + 1];
+				for(int i = 1; i <= count; i++) {
+					newTables[t][i] = cursor.readString();
+				}
+			}
+			int numBlocks = cursor.readVarInt();
+			String keys[] = new String[numBlocks];
+			long offsets[] = new long[numBlocks];
+			int lengths[] = new int[numBlocks];
+			for(int i = 0; i < numBlocks; i++) {
+				keys[i] = cursor.readString();
+				offsets[i] = cursor.readVarLong();
+				lengths[i] = cursor.readVarInt();
+				// record count, unused for now:
+				cursor.readVarInt();
+			}
+			tables = newTables;
+			blockKeys = keys;
+			blockOffsets = offsets;
+			blockLengths = lengths;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return number of blocks in the loaded file
+	 */
+	public int getBlockCount() {
+		return blockKeys == null ? 0 : blockKeys.length;
+	}
+
+	/**
+	 * @param prefix key to search for
+	 * @return index of the last block whose first key is less than prefix,
+	 * 		or 0 if there is none.
+	 */
+	private int findStartBlock(String prefix) {
+		int min = 0;
+		int max = blockKeys.length - 1;
+		int found = 0;
+		while(min <= max) {
+			int mid = (min + max) >>> 1;
+			if(blockKeys[mid].compareTo(prefix) < 0) {
+				found = mid;
+				min = mid + 1;
+			} else {
+				max = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	private synchronized void ensureLoaded()
+	throws ResourceIndexNotAvailableException {
+		if(blockKeys == null) {
+			try {
+				init();
+			} catch (IOException e) {
+				throw new ResourceIndexNotAvailableException(e.getMessage());
+			}
+		}
+	}
+
+	public CloseableIterator<CaptureSearchResult> getPrefixIterator(
+			String prefix) throws ResourceIndexNotAvailableException {
+		ensureLoaded();
+		try {
+			return new BlockIterator(findStartBlock(prefix), prefix);
+		} catch (IOException e) {
+			throw new ResourceIndexNotAvailableException(e.getMessage());
+		}
+	}
+
+	public CloseableIterator<CaptureSearchResult> getPrefixReverseIterator(
+			String prefix) throws ResourceIndexNotAvailableException {
+		throw new ResourceIndexNotAvailableException("unsupported op");
+	}
+
+	public void cleanup(CloseableIterator<CaptureSearchResult> c)
+			throws IOException {
+		c.close();
+	}
+
+	public void shutdown() throws IOException {
+		// no-op
+	}
+
+	/**
+	 * Iterates records from a starting block to the end of the file, skipping
+	 * records before a starting key.
+	 */
+	private class BlockIterator implements CloseableIterator<CaptureSearchResult> {
+		private RandomAccessFile raf;
+		private int nextBlock;
+		private byte buffer[] = new byte[0];
+		private BinaryCDXFormat.Cursor cursor = null;
+		private String skipBefore;
+		private CaptureSearchResult cachedNext = null;
+
+		BlockIterator(int firstBlock, String skipBefore) throws IOException {
+			this.nextBlock = firstBlock;
+			this.skipBefore = skipBefore;
+			raf = new RandomAccessFile(file, "r");
+		}
+
+		private boolean loadNextBlock() throws IOException {
+			if(nextBlock >= blockKeys.length) {
+				return false;
+			}
+			int length = blockLengths[nextBlock];
+			if(buffer.length < length) {
+				buffer = new byte[length];
+			}
+			raf.seek(blockOffsets[nextBlock]);
+			raf.readFully(buffer, 0, length);
+			cursor = new BinaryCDXFormat.Cursor(buffer, 0, length);
+			nextBlock++;
+			return true;
+		}
+
+		private CaptureSearchResult readRecord() throws IOException {
+			FastCaptureSearchResult result = new FastCaptureSearchResult();
+			String urlKey = cursor.readKey();
+			long timestamp = cursor.readLong();
+			long offset = cursor.readVarLong() - 1;
+			long compressedLength = cursor.readVarLong() - 1;
+			int mime = cursor.readVarInt();
+			int code = cursor.readVarInt();
+			int fileIdx = cursor.readVarInt();
+			int robot = cursor.readVarInt();
+			String originalUrl = cursor.readString();
+			String digest = cursor.readString();
+			String redirect = cursor.readString();
+			if((skipBefore != null) && (urlKey.compareTo(skipBefore) < 0)) {
+				return null;
+			}
+			skipBefore = null;
+			result.setUrlKey(urlKey);
+			result.setCaptureTimestamp(
+					PackedTimestamp.unpack(timestamp));
+			result.setOffset(offset);
+			result.setCompressedLength(compressedLength);
+			result.setMimeType(tables[BinaryCDXFormat.MIME_TABLE][mime]);
+			result.setHttpCode(tables[BinaryCDXFormat.HTTP_CODE_TABLE][code]);
+			result.setFile(tables[BinaryCDXFormat.FILE_TABLE][fileIdx]);
+			result.setRobotFlags(
+					tables[BinaryCDXFormat.ROBOT_FLAGS_TABLE][robot]);
+			result.setOriginalUrl(originalUrl);
+			result.setDigest(digest);
+			result.setRedirectUrl(redirect);
+			return result;
+		}
+
+		public boolean hasNext() {
+			if(cachedNext != null) {
+				return true;
+			}
+			if(raf == null) {
+				return false;
+			}
+			try {
+				while(cachedNext == null) {
+					if((cursor == null) || !cursor.hasRemaining()) {
+						if(!loadNextBlock()) {
+							close();
+							return false;
+						}
+					}
+					cachedNext = readRecord();
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return true;
+		}
+
+		public CaptureSearchResult next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			CaptureSearchResult result = cachedNext;
+			cachedNext = null;
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() throws IOException {
+			if(raf != null) {
+				raf.close();
+				raf = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the path of the binary CDX file
+	 */
+	public String getPath() {
+		return file == null ? null : file.getAbsolutePath();
+	}
+
+	/**
+	 * @param path the path of the binary CDX file
+	 */
+	public void setPath(String path) {
+		file = new File(path);
+	}
+}
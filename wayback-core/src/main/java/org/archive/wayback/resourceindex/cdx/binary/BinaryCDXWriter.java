@@ -0,0 +1,317 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdx.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.cdx.format.CDXFlexFormat;
+import org.archive.wayback.util.ByteOp;
+import org.archive.wayback.util.PackedTimestamp;
+
+/**
+ * Converts a sorted, space delimited CDX file into the binary layout
+ * described in {@link BinaryCDXFormat}.
+ * 
+ * Records must be added in sorted order. Lines which cannot be parsed, or
+ * which have a non-numeric timestamp or a negative offset or length, are
+ * logged and skipped.
+ *
+ * @version $Date$, $Revision$
+ */
+public class BinaryCDXWriter {
+	private static final Logger LOGGER =
+		Logger.getLogger(BinaryCDXWriter.class.getName());
+
+	private OutputStream os;
+	private long written = 0;
+	private int recordsPerBlock;
+
+	private ByteArrayOutputStream block = new ByteArrayOutputStream();
+	private int blockCount = 0;
+	private String blockFirstKey = null;
+	private byte previousKey[] = null;
+	private String lastKey = null;
+
+	private List<HashMap<String,Integer>> tableMaps;
+	private List<List<String>> tables;
+
+	private List<String> indexKeys = new ArrayList<String>();
+	private List<Long> indexOffsets = new ArrayList<Long>();
+	private List<Integer> indexLengths = new ArrayList<Integer>();
+	private List<Integer> indexCounts = new ArrayList<Integer>();
+
+	/**
+	 * @param os OutputStream to write the binary CDX to
+	 * @param recordsPerBlock number of records in each block
+	 * @throws IOException if os throws one
+	 */
+	public BinaryCDXWriter(OutputStream os, int recordsPerBlock)
+	throws IOException {
+		this.os = os;
+		this.recordsPerBlock = recordsPerBlock;
+		tableMaps = new ArrayList<HashMap<String,Integer>>();
+		tables = new ArrayList<List<String>>();
+		for(int i = 0; i < BinaryCDXFormat.NUM_TABLES; i++) {
+			tableMaps.add(new HashMap<String,Integer>());
+			tables.add(new ArrayList<String>());
+		}
+		byte magic[] = BinaryCDXFormat.MAGIC.getBytes(ByteOp.UTF8);
+		BinaryCDXFormat.writeVarLong(os, magic.length);
+		os.write(magic);
+		written = magic.length + 1;
+	}
+
+	/**
+	 * @param os OutputStream to write the binary CDX to
+	 * @throws IOException if os throws one
+	 */
+	public BinaryCDXWriter(OutputStream os) throws IOException {
+		this(os, BinaryCDXFormat.RECORDS_PER_BLOCK);
+	}
+
+	/**
+	 * @param table which table
+	 * @param value String to intern
+	 * @return index of value in table, 0 for null
+	 */
+	private int intern(int table, String value) {
+		if(value == null) {
+			return 0;
+		}
+		HashMap<String,Integer> map = tableMaps.get(table);
+		Integer idx = map.get(value);
+		if(idx == null) {
+			List<String> values = tables.get(table);
+			values.add(value);
+			idx = values.size();
+			map.put(value, idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * @param timestamp capture timestamp, of 14 or fewer digits
+	 * @return timestamp, right padded with zeros to 14 digits and packed, or
+	 * 		PackedTimestamp.INVALID if it is missing or not all digits
+	 */
+	private static long packTimestamp(String timestamp) {
+		if(timestamp == null) {
+			return PackedTimestamp.INVALID;
+		}
+		if(timestamp.length() > PackedTimestamp.DIGITS) {
+			timestamp = timestamp.substring(0, PackedTimestamp.DIGITS);
+		} else if(timestamp.length() < PackedTimestamp.DIGITS) {
+			StringBuilder sb = new StringBuilder(PackedTimestamp.DIGITS);
+			sb.append(timestamp);
+			while(sb.length() < PackedTimestamp.DIGITS) {
+				sb.append('0');
+			}
+			timestamp = sb.toString();
+		}
+		return PackedTimestamp.pack(timestamp);
+	}
+
+	/**
+	 * @param result CaptureSearchResult to check
+	 * @return reason result cannot be written, or null if it can
+	 */
+	private static String checkResult(CaptureSearchResult result) {
+		if(packTimestamp(result.getCaptureTimestamp())
+				== PackedTimestamp.INVALID) {
+			return "bad timestamp";
+		}
+		if((result.getOffset() < -1) || (result.getCompressedLength() < -1)) {
+			return "bad offset or length";
+		}
+		return null;
+	}
+
+	/**
+	 * @param line CDX line to add
+	 * @return true if the line was parsed and added
+	 * @throws IOException if the underlying stream throws one, or if the
+	 * 		line sorts before the previously added one
+	 */
+	public boolean add(String line) throws IOException {
+		CaptureSearchResult result = CDXFlexFormat.parseCDXLineFlexFast(line);
+		if(result == null) {
+			LOGGER.warning("Skipping unparseable CDX line(" + line + ")");
+			return false;
+		}
+		String problem = checkResult(result);
+		if(problem != null) {
+			LOGGER.warning("Skipping CDX line with " + problem + "(" + line
+					+ ")");
+			return false;
+		}
+		add(result);
+		return true;
+	}
+
+	/**
+	 * @param result CaptureSearchResult to add, sorting at or after the
+	 * 		previously added one
+	 * @throws IOException if the underlying stream throws one, or if result
+	 * 		is unsorted or has a bad timestamp, offset or length, in which case
+	 * 		nothing is written
+	 */
+	public void add(CaptureSearchResult result) throws IOException {
+		String problem = checkResult(result);
+		if(problem != null) {
+			throw new IOException("Record with " + problem + " at "
+					+ result.getUrlKey());
+		}
+		String urlKey = result.getUrlKey();
+		if((lastKey != null) && (urlKey.compareTo(lastKey) < 0)) {
+			throw new IOException("Unsorted input at " + urlKey);
+		}
+		lastKey = urlKey;
+		if(blockCount == 0) {
+			blockFirstKey = urlKey;
+			previousKey = null;
+		}
+		byte key[] = urlKey.getBytes(ByteOp.UTF8);
+		BinaryCDXFormat.writeKey(block, previousKey, key);
+		previousKey = key;
+		BinaryCDXFormat.writeLong(block,
+				packTimestamp(result.getCaptureTimestamp()));
+		BinaryCDXFormat.writeVarLong(block, result.getOffset() + 1);
+		BinaryCDXFormat.writeVarLong(block, result.getCompressedLength() + 1);
+		BinaryCDXFormat.writeVarLong(block,
+				intern(BinaryCDXFormat.MIME_TABLE, result.getMimeType()));
+		BinaryCDXFormat.writeVarLong(block,
+				intern(BinaryCDXFormat.HTTP_CODE_TABLE, result.getHttpCode()));
+		BinaryCDXFormat.writeVarLong(block,
+				intern(BinaryCDXFormat.FILE_TABLE, result.getFile()));
+		BinaryCDXFormat.writeVarLong(block,
+				intern(BinaryCDXFormat.ROBOT_FLAGS_TABLE, result.getRobotFlags()));
+		BinaryCDXFormat.writeString(block, result.getOriginalUrl());
+		BinaryCDXFormat.writeString(block, result.getDigest());
+		BinaryCDXFormat.writeString(block, result.getRedirectUrl());
+		if(++blockCount == recordsPerBlock) {
+			flushBlock();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if(blockCount == 0) {
+			return;
+		}
+		indexKeys.add(blockFirstKey);
+		indexOffsets.add(written);
+		indexLengths.add(block.size());
+		indexCounts.add(blockCount);
+		block.writeTo(os);
+		written += block.size();
+		block.reset();
+		blockCount = 0;
+	}
+
+	/**
+	 * Write the final block, string tables, block index and trailer, and
+	 * close the underlying stream.
+	 * @throws IOException if the underlying stream throws one
+	 */
+	public void close() throws IOException {
+		flushBlock();
+		ByteArrayOutputStream tail = new ByteArrayOutputStream();
+		long tablesOffset = written;
+		for(List<String> values : tables) {
+			BinaryCDXFormat.writeVarLong(tail, values.size());
+			for(String value : values) {
+				BinaryCDXFormat.writeString(tail, value);
+			}
+		}
+		long indexOffset = written + tail.size();
+		BinaryCDXFormat.writeVarLong(tail, indexKeys.size());
+		for(int i = 0; i < indexKeys.size(); i++) {
+			BinaryCDXFormat.writeString(tail, indexKeys.get(i));
+			BinaryCDXFormat.writeVarLong(tail, indexOffsets.get(i));
+			BinaryCDXFormat.writeVarLong(tail, indexLengths.get(i));
+			BinaryCDXFormat.writeVarLong(tail, indexCounts.get(i));
+		}
+		BinaryCDXFormat.writeLong(tail, tablesOffset);
+		BinaryCDXFormat.writeLong(tail, indexOffset);
+		tail.writeTo(os);
+		written += tail.size();
+		os.close();
+	}
+
+	/**
+	 * Convert a sorted CDX file into a binary CDX file.
+	 * @param cdx sorted CDX file to read
+	 * @param target binary CDX file to write
+	 * @return number of records written
+	 * @throws IOException if either file could not be accessed
+	 */
+	public static long convert(File cdx, File target) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(cdx), ByteOp.UTF8));
+		long count = 0;
+		try {
+			BinaryCDXWriter writer = new BinaryCDXWriter(
+					new BufferedOutputStream(new FileOutputStream(target),
+							ByteOp.BUFFER_SIZE * 16));
+			String line;
+			while((line = br.readLine()) != null) {
+				if(line.startsWith(" CDX ")) {
+					continue;
+				}
+				if(writer.add(line)) {
+					count++;
+				}
+			}
+			writer.close();
+		} finally {
+			br.close();
+		}
+		return count;
+	}
+
+	/**
+	 * @param args sorted CDX file path, and binary CDX path to write
+	 */
+	public static void main(String[] args) {
+		if(args.length != 2) {
+			System.err.println("USAGE: SORTED_CDX_PATH BINARY_CDX_PATH");
+			System.exit(2);
+		}
+		try {
+			long count = convert(new File(args[0]), new File(args[1]));
+			System.out.println("Wrote " + count + " records to " + args[1]);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -16,7 +16,7 @@ public class CDXFlexFormat extends CDXFormat {
 	public CDXFlexFormat(String cdxSpec) throws CDXFormatException {
 		super(cdxSpec);
 	}
-	private static int getEndOfHostIndex(String url) {
+	static int getEndOfHostIndex(String url) {
 		int portIdx = url.indexOf(UrlOperations.PORT_SEPARATOR);
 		int pathIdx = url.indexOf(UrlOperations.PATH_START);
 		if(portIdx == -1 && pathIdx == -1) {
@@ -47,6 +47,11 @@ public class CDXFlexFormat extends CDXFormat {
 		return parseCDXLineFlex(line, result);
 	}
 		
+	// Defer copying fields out of the line until they are requested
+	public static CaptureSearchResult parseCDXLineFlexLazy(String line) {
+		return LazyCaptureSearchResult.parse(line);
+	}
+
 	public static CaptureSearchResult parseCDXLineFlex(String line, CaptureSearchResult result) {		
 		String[] tokens = line.split(" ");
 		boolean hasRobotFlags = false;
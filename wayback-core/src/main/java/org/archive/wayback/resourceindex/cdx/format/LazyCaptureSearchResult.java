@@ -0,0 +1,292 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdx.format;
+
+import org.archive.wayback.core.FastCaptureSearchResult;
+
+/**
+ * CaptureSearchResult over a single CDX line, in any of the layouts accepted
+ * by {@link CDXFlexFormat#parseCDXLineFlex(String)}, which records only the
+ * positions of the fields when created, and copies each String field out of
+ * the line the first time it is requested.
+ * 
+ * Offset and compressed length are parsed immediately, without allocation,
+ * so malformed lines are rejected by {@link #parse(String)} exactly as
+ * parseCDXLineFlex() would reject them. Setters, annotations and custom
+ * values behave as in {@link FastCaptureSearchResult}.
+ */
+public class LazyCaptureSearchResult extends FastCaptureSearchResult {
+	private final static String SCHEME_STRING = "://";
+	private final static String DEFAULT_SCHEME = "http://";
+
+	private final static int URL_KEY = 0;
+	private final static int CAPTURE_TIMESTAMP = 1;
+	private final static int ORIGINAL_URL = 2;
+	private final static int MIME_TYPE = 3;
+	private final static int HTTP_CODE = 4;
+	private final static int DIGEST = 5;
+	private final static int REDIRECT_URL = 6;
+	private final static int ROBOT_FLAGS = 7;
+	private final static int MAX_FIELDS = 11;
+
+	private String line;
+	/* field i runs from starts[i] to starts[i+1] - 1 */
+	private int[] starts;
+	private int fileField;
+	/* bit i set once field i has been copied out, or explicitly set */
+	private int decoded = 0;
+
+	private LazyCaptureSearchResult(String line, int[] starts, int numFields) {
+		this.line = line;
+		this.starts = starts;
+		this.fileField = numFields - 1;
+		if(numFields == 9) {
+			// no robot flags:
+			decoded |= 1 << ROBOT_FLAGS;
+		}
+	}
+
+	/**
+	 * @param line CDX line with 9, 10 or 11 space separated fields
+	 * @return LazyCaptureSearchResult for line, or null if line has the
+	 * wrong number of fields or a malformed offset or length
+	 */
+	public static LazyCaptureSearchResult parse(String line) {
+		int[] starts = new int[MAX_FIELDS + 1];
+		int numFields = 1;
+		int len = line.length();
+		// as with String.split(), trailing empty fields are ignored:
+		while((len > 0) && (line.charAt(len - 1) == ' ')) {
+			len--;
+		}
+		for(int i = 0; i < len; i++) {
+			if(line.charAt(i) == ' ') {
+				if(numFields == MAX_FIELDS) {
+					return null;
+				}
+				starts[numFields++] = i + 1;
+			}
+		}
+		if(numFields < 9) {
+			return null;
+		}
+		starts[numFields] = len + 1;
+		LazyCaptureSearchResult result =
+			new LazyCaptureSearchResult(line, starts, numFields);
+		int offsetField = numFields - 2;
+		if(!result.isEmptyField(offsetField)) {
+			long offset = result.parseField(offsetField);
+			if(offset < 0) {
+				return null;
+			}
+			result.cachedOffset = offset;
+			if(numFields == MAX_FIELDS) {
+				int lengthField = numFields - 3;
+				if(!result.isEmptyField(lengthField)) {
+					long length = result.parseField(lengthField);
+					if(length < 0) {
+						return null;
+					}
+					result.cachedCompressedLength = length;
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean isEmptyField(int field) {
+		return (starts[field + 1] - starts[field] == 2)
+			&& (line.charAt(starts[field]) == '-');
+	}
+
+	/**
+	 * @return the non-negative decimal value of field, or -1 if it is not a
+	 * number
+	 */
+	private long parseField(int field) {
+		int start = starts[field];
+		int end = starts[field + 1] - 1;
+		if((start == end) || (end - start > 18)) {
+			return -1;
+		}
+		long value = 0;
+		for(int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if((c < '0') || (c > '9')) {
+				return -1;
+			}
+			value = (value * 10) + (c - '0');
+		}
+		return value;
+	}
+
+	private String field(int field) {
+		return line.substring(starts[field], starts[field + 1] - 1);
+	}
+
+	private boolean needs(int field) {
+		if((decoded & (1 << field)) != 0) {
+			return false;
+		}
+		decoded |= 1 << field;
+		return true;
+	}
+
+	private void mark(int field) {
+		decoded |= 1 << field;
+	}
+
+	@Override
+	public String getUrlKey() {
+		if(needs(URL_KEY)) {
+			urlKey = field(URL_KEY);
+		}
+		return urlKey;
+	}
+
+	@Override
+	public void setUrlKey(String urlKey) {
+		mark(URL_KEY);
+		super.setUrlKey(urlKey);
+	}
+
+	@Override
+	public String getCaptureTimestamp() {
+		if(needs(CAPTURE_TIMESTAMP)) {
+			captureTimestamp = field(CAPTURE_TIMESTAMP);
+		}
+		return captureTimestamp;
+	}
+
+	@Override
+	public void setCaptureTimestamp(String captureTimestamp) {
+		mark(CAPTURE_TIMESTAMP);
+		super.setCaptureTimestamp(captureTimestamp);
+	}
+
+	@Override
+	public String getOriginalUrl() {
+		if(needs(ORIGINAL_URL)) {
+			String url = field(ORIGINAL_URL);
+			// convert from ORIG_HOST to ORIG_URL here:
+			if(!url.contains(SCHEME_STRING)) {
+				String key = getUrlKey();
+				StringBuilder sb = new StringBuilder(key.length());
+				sb.append(DEFAULT_SCHEME);
+				sb.append(url);
+				sb.append(key.substring(CDXFlexFormat.getEndOfHostIndex(key)));
+				url = sb.toString();
+			}
+			originalUrl = url;
+		}
+		return originalUrl;
+	}
+
+	@Override
+	public void setOriginalUrl(String originalUrl) {
+		mark(ORIGINAL_URL);
+		super.setOriginalUrl(originalUrl);
+	}
+
+	@Override
+	public String getMimeType() {
+		if(needs(MIME_TYPE)) {
+			mimeType = field(MIME_TYPE);
+		}
+		return mimeType;
+	}
+
+	@Override
+	public void setMimeType(String mimeType) {
+		mark(MIME_TYPE);
+		super.setMimeType(mimeType);
+	}
+
+	@Override
+	public String getHttpCode() {
+		if(needs(HTTP_CODE)) {
+			httpCode = field(HTTP_CODE);
+		}
+		return httpCode;
+	}
+
+	@Override
+	public void setHttpCode(String httpCode) {
+		mark(HTTP_CODE);
+		super.setHttpCode(httpCode);
+	}
+
+	@Override
+	public String getDigest() {
+		if(needs(DIGEST)) {
+			digest = field(DIGEST);
+		}
+		return digest;
+	}
+
+	@Override
+	public void setDigest(String digest) {
+		mark(DIGEST);
+		super.setDigest(digest);
+	}
+
+	@Override
+	public String getRedirectUrl() {
+		if(needs(REDIRECT_URL)) {
+			redirectUrl = field(REDIRECT_URL);
+		}
+		return redirectUrl;
+	}
+
+	@Override
+	public void setRedirectUrl(String redirectUrl) {
+		mark(REDIRECT_URL);
+		super.setRedirectUrl(redirectUrl);
+	}
+
+	@Override
+	public String getRobotFlags() {
+		if(needs(ROBOT_FLAGS)) {
+			robotFlags = field(ROBOT_FLAGS);
+		}
+		return robotFlags;
+	}
+
+	@Override
+	public void setRobotFlags(String robotFlags) {
+		mark(ROBOT_FLAGS);
+		super.setRobotFlags(robotFlags);
+	}
+
+	@Override
+	public String getFile() {
+		// the file is always the last field, tracked in bit MAX_FIELDS:
+		if(needs(MAX_FIELDS)) {
+			file = field(fileField).trim();
+		}
+		return file;
+	}
+
+	@Override
+	public void setFile(String file) {
+		mark(MAX_FIELDS);
+		super.setFile(file);
+	}
+}
@@ -1,10 +1,10 @@
 package org.archive.wayback.resourceindex.cdxserver;
 
-import java.util.HashMap;
 import java.util.LinkedList;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.archive.cdxserver.CDXQuery;
+import org.archive.cdxserver.util.DigestMap;
 import org.archive.format.cdx.CDXLine;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
@@ -22,6 +22,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	protected CaptureSearchResults results = null;
 	
 	protected String targetTimestamp;
+	protected long targetTime;
 	protected int flip = 1;
 	protected boolean done = false;
 	protected CaptureSearchResult closest = null;
@@ -31,8 +32,8 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	protected CaptureSearchResult prevResult = null;
 	protected CDXLine prevLine = null;
 	
-	protected HashMap<String, CaptureSearchResult> digestToOriginal;
-	protected HashMap<String, LinkedList<CaptureSearchResult>> digestToRevisits;
+	protected DigestMap<CaptureSearchResult> digestToOriginal;
+	protected DigestMap<LinkedList<CaptureSearchResult>> digestToRevisits;
 	
 	protected boolean resolveRevisits = false;
 	protected boolean seekSingleCapture = false;
@@ -57,6 +58,10 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	{		
 		targetTimestamp = timestamp;
 		
+		if (timestamp != null) {
+			targetTime = Timestamp.parseAfter(timestamp).getDate().getTime();
+		}
+		
 		if (isReverse) {
 			flip = -1;
 		}
@@ -68,9 +73,9 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 		
 		if (resolveRevisits) {
 			if (isReverse) {
-				digestToRevisits = new HashMap<String, LinkedList<CaptureSearchResult>>();
+				digestToRevisits = new DigestMap<LinkedList<CaptureSearchResult>>();
 			} else {
-				digestToOriginal = new HashMap<String, CaptureSearchResult>();
+				digestToOriginal = new DigestMap<CaptureSearchResult>();
 			}
 		}
     }
@@ -229,10 +234,8 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 		
 		
 		// Now compare date diff
-		long nextTime = nextResult.getCaptureDate().getTime();
-		long lastTime = lastResult.getCaptureDate().getTime();
-		
-		long targetTime = Timestamp.parseAfter(targetTimestamp).getDate().getTime();
+		long nextTime = nextResult.getCaptureTime();
+		long lastTime = lastResult.getCaptureTime();
 		
 		if (Math.abs(nextTime - targetTime) < Math.abs(lastTime - targetTime)) {
 			return nextResult;
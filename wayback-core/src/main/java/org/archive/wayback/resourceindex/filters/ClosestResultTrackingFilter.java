@@ -59,7 +59,7 @@ public class ClosestResultTrackingFilter implements ObjectFilter<CaptureSearchRe
 			// optimization, skip the math: 
 			return FILTER_INCLUDE;
 		}
-		long captureMS = o.getCaptureDate().getTime();
+		long captureMS = o.getCaptureTime();
 		long diffMS = Math.abs(captureMS - wantMS);
 
 		if(closest == null) {
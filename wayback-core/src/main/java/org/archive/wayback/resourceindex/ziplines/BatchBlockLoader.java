@@ -0,0 +1,44 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A BlockLoader which can also fetch many ranges in one call.
+ * ZiplinesChunkIterator batches block fetches through loaders implementing
+ * this, and fetches blocks one at a time from any other BlockLoader.
+ *
+ * @version $Date$, $Revision$
+ */
+public interface BatchBlockLoader extends BlockLoader {
+	/**
+	 * Fetch many ranges at once. Implementations should group requests by
+	 * URL and merge contiguous or nearby ranges, so that wide scans cost a
+	 * few large reads instead of many small ones.
+	 * 
+	 * @param requests ranges to fetch
+	 * @return a new byte[] for each request, in the order of requests
+	 * @throws IOException on Network and protocol failures, as well as Timeouts
+	 */
+	public List<byte[]> getBlocks(List<BlockRequest> requests)
+	throws IOException;
+}
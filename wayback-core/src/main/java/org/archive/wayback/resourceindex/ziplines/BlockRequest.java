@@ -0,0 +1,225 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A single (url, offset, length) range to be fetched through
+ * {@link BatchBlockLoader#getBlocks(List)}, and static helpers that coalesce
+ * many such requests into a few larger reads.
+ *
+ * @version $Date$, $Revision$
+ */
+public class BlockRequest {
+	/** Default largest gap between two ranges that are read as one */
+	public final static int DEFAULT_MAX_GAP = 16 * 1024;
+	/** Default largest single read produced by merging ranges */
+	public final static int DEFAULT_MAX_MERGED_LENGTH = 4 * 1024 * 1024;
+
+	private String url;
+	private long offset;
+	private int length;
+
+	/**
+	 * @param url String URL or path to fetch from
+	 * @param offset byte start offset of the desired range
+	 * @param length number of octets to fetch
+	 */
+	public BlockRequest(String url, long offset, int length) {
+		this.url = url;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return the url
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return the offset
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the length
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return url + "(" + offset + ":" + length + ")";
+	}
+
+	/**
+	 * A contiguous range of one URL which covers one or more BlockRequests.
+	 */
+	public static class MergedRange {
+		String url;
+		long start;
+		long end;
+		List<Integer> members = new ArrayList<Integer>();
+
+		MergedRange(String url, long start, long end) {
+			this.url = url;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @return the url
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return offset of the first byte of the range
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * @return number of bytes in the range
+		 */
+		public int getLength() {
+			return (int) (end - start);
+		}
+
+		/**
+		 * @return indexes of the requests covered by this range
+		 */
+		public List<Integer> getMembers() {
+			return members;
+		}
+	}
+
+	/**
+	 * Group requests by URL, and merge ranges which overlap, touch, or are
+	 * separated by at most maxGap bytes, so long as the merged range stays
+	 * at most maxMergedLength bytes.
+	 *
+	 * @param requests ranges to fetch
+	 * @param maxGap largest number of unwanted bytes read between two ranges
+	 * @param maxMergedLength largest merged range
+	 * @return the merged ranges
+	 */
+	public static List<MergedRange> coalesce(final List<BlockRequest> requests,
+			int maxGap, int maxMergedLength) {
+		List<Integer> order = new ArrayList<Integer>(requests.size());
+		for(int i = 0; i < requests.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				BlockRequest r1 = requests.get(o1);
+				BlockRequest r2 = requests.get(o2);
+				int cmp = r1.url.compareTo(r2.url);
+				if(cmp != 0) {
+					return cmp;
+				}
+				return r1.offset < r2.offset ? -1 :
+					(r1.offset == r2.offset ? 0 : 1);
+			}
+		});
+		List<MergedRange> ranges = new ArrayList<MergedRange>();
+		MergedRange current = null;
+		for(Integer i : order) {
+			BlockRequest r = requests.get(i);
+			long end = r.offset + r.length;
+			if((current != null) && current.url.equals(r.url)
+					&& (r.offset <= current.end + maxGap)
+					&& (Math.max(end, current.end) - current.start
+							<= maxMergedLength)) {
+				current.end = Math.max(end, current.end);
+			} else {
+				current = new MergedRange(r.url, r.offset, end);
+				ranges.add(current);
+			}
+			current.members.add(i);
+		}
+		return ranges;
+	}
+
+	/**
+	 * Split the bytes of a merged range back into the requests it covers.
+	 * @param requests the original requests
+	 * @param range the MergedRange
+	 * @param bytes the bytes fetched for range
+	 * @param results array, parallel to requests, to receive the bytes
+	 * @throws IOException if bytes does not cover the whole range
+	 */
+	public static void split(List<BlockRequest> requests, MergedRange range,
+			byte[] bytes, byte[][] results) throws IOException {
+		if(bytes.length < range.getLength()) {
+			throw new IOException("Short read for " + range.url + "("
+					+ range.start + ":" + range.getLength() + ")");
+		}
+		for(Integer i : range.members) {
+			BlockRequest r = requests.get(i);
+			int from = (int) (r.offset - range.start);
+			if((from == 0) && (r.length == bytes.length)) {
+				results[i] = bytes;
+			} else {
+				byte[] block = new byte[r.length];
+				System.arraycopy(bytes, from, block, 0, r.length);
+				results[i] = block;
+			}
+		}
+	}
+
+	/**
+	 * Implement {@link BatchBlockLoader#getBlocks(List)} with one
+	 * {@link BlockLoader#getBlock(String, long, int)} call per merged range.
+	 * @param loader BlockLoader to fetch merged ranges with
+	 * @param requests ranges to fetch
+	 * @param maxGap largest number of unwanted bytes read between two ranges
+	 * @param maxMergedLength largest merged range
+	 * @return bytes of each request, in the order of requests
+	 * @throws IOException if any range could not be fetched
+	 */
+	public static List<byte[]> loadCoalesced(BlockLoader loader,
+			List<BlockRequest> requests, int maxGap, int maxMergedLength)
+	throws IOException {
+		byte[][] results = new byte[requests.size()][];
+		for(MergedRange range : coalesce(requests, maxGap, maxMergedLength)) {
+			byte[] bytes = loader.getBlock(range.url, range.start,
+					range.getLength());
+			split(requests, range, bytes, results);
+		}
+		List<byte[]> list = new ArrayList<byte[]>(results.length);
+		for(byte[] result : results) {
+			list.add(result);
+		}
+		return list;
+	}
+}
@@ -21,6 +21,7 @@ package org.archive.wayback.resourceindex.ziplines;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.List;
 
 /**
  * Generic BlockLoader, which may simplify configuration - inspecting each 
@@ -29,7 +30,7 @@ import java.net.URISyntaxException;
  * @author brad
  *
  */
-public class GenericBlockLoader implements BlockLoader {
+public class GenericBlockLoader implements BatchBlockLoader {
 	Http11BlockLoader http = null;
 	HDFSBlockLoader hdfs = null;
 	LocalFileBlockLoader local = null;
@@ -81,6 +82,18 @@ public class GenericBlockLoader implements BlockLoader {
 		}
 		return http.getBlock(url, offset, length);
 	}
+
+	/**
+	 * Fetch requests, merging nearby ranges of the same file into single
+	 * reads.
+	 */
+	public List<byte[]> getBlocks(List<BlockRequest> requests)
+			throws IOException {
+		return BlockRequest.loadCoalesced(this, requests,
+				BlockRequest.DEFAULT_MAX_GAP,
+				BlockRequest.DEFAULT_MAX_MERGED_LENGTH);
+	}
+	
 	public void setDefaultFSURI(String uri) {
 		defaultFSURI = uri;
 //		hdfs.setDefaultFSURI(uri);
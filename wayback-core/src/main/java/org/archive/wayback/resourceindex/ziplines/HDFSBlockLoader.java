@@ -22,13 +22,14 @@ package org.archive.wayback.resourceindex.ziplines;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
-public class HDFSBlockLoader implements BlockLoader {
+public class HDFSBlockLoader implements BatchBlockLoader {
 	FileSystem fs = null;
 	String defaultFSURI = null;
 	public HDFSBlockLoader(String defaultFSURI) {
@@ -61,6 +62,17 @@ public class HDFSBlockLoader implements BlockLoader {
 		return buffer;
 	}
 
+	/**
+	 * Fetch requests, merging nearby ranges of the same file into single
+	 * reads.
+	 */
+	public List<byte[]> getBlocks(List<BlockRequest> requests)
+			throws IOException {
+		return BlockRequest.loadCoalesced(this, requests,
+				BlockRequest.DEFAULT_MAX_GAP,
+				BlockRequest.DEFAULT_MAX_MERGED_LENGTH);
+	}
+
 	/**
 	 * @return the defaultFSURI
 	 */
@@ -21,6 +21,7 @@ package org.archive.wayback.resourceindex.ziplines;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.logging.Logger;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
@@ -42,13 +43,15 @@ import com.google.common.io.ByteStreams;
  * @author brad
  *
  */
-public class Http11BlockLoader implements BlockLoader {
+public class Http11BlockLoader implements BatchBlockLoader {
 	private static final Logger LOGGER = Logger.getLogger(
 			Http11BlockLoader.class.getName());
 
     private MultiThreadedHttpConnectionManager connectionManager = null;
     private HostConfiguration hostConfiguration = null;
     private HttpClient http = null; 
+    private int maxRangeGap = BlockRequest.DEFAULT_MAX_GAP;
+    private int maxMergedLength = BlockRequest.DEFAULT_MAX_MERGED_LENGTH;
 
     /**
      * 
@@ -109,6 +112,52 @@ public class Http11BlockLoader implements BlockLoader {
 	    }
 	}    
 
+	/**
+	 * Fetch many ranges, grouping them by URL and issuing a single ranged
+	 * GET for each run of ranges separated by at most maxRangeGap bytes,
+	 * up to maxMergedLength bytes per request.
+	 * 
+	 * @param requests ranges to fetch
+	 * @return a new byte[] for each request, in the order of requests
+	 * @throws IOException on HTTP and Socket failures, as well as Timeouts
+	 */
+	public List<byte[]> getBlocks(List<BlockRequest> requests)
+	throws IOException {
+		return BlockRequest.loadCoalesced(this, requests, maxRangeGap,
+				maxMergedLength);
+	}
+
+    /**
+     * @return the largest gap, in bytes, between two ranges of the same URL
+     * which are fetched with a single request by getBlocks()
+     */
+    public int getMaxRangeGap() {
+    	return maxRangeGap;
+    }
+
+    /**
+     * @param maxRangeGap the largest gap, in bytes, between two ranges of
+     * the same URL which are fetched with a single request by getBlocks()
+     */
+    public void setMaxRangeGap(int maxRangeGap) {
+    	this.maxRangeGap = maxRangeGap;
+    }
+
+    /**
+     * @return the largest single request, in bytes, made by getBlocks()
+     */
+    public int getMaxMergedLength() {
+    	return maxMergedLength;
+    }
+
+    /**
+     * @param maxMergedLength the largest single request, in bytes, made by
+     * getBlocks()
+     */
+    public void setMaxMergedLength(int maxMergedLength) {
+    	this.maxMergedLength = maxMergedLength;
+    }
+
     /**
      * @param hostPort to proxy requests through - ex. "localhost:3128"
      */
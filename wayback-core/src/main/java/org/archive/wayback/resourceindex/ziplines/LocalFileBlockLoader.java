@@ -22,6 +22,7 @@ package org.archive.wayback.resourceindex.ziplines;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.List;
 
 /**
  * Simple block loader which uses RandomAccessFiles to grab ranges of local 
@@ -29,7 +30,7 @@ import java.io.RandomAccessFile;
  * @author brad
  *
  */
-public class LocalFileBlockLoader implements BlockLoader {
+public class LocalFileBlockLoader implements BatchBlockLoader {
 
 	public byte[] getBlock(String url, long offset, int length)
 			throws IOException {
@@ -45,4 +46,15 @@ public class LocalFileBlockLoader implements BlockLoader {
 		return b;
 	}
 
+	/**
+	 * Fetch requests, merging nearby ranges of the same file into single
+	 * reads.
+	 */
+	public List<byte[]> getBlocks(List<BlockRequest> requests)
+			throws IOException {
+		return BlockRequest.loadCoalesced(this, requests,
+				BlockRequest.DEFAULT_MAX_GAP,
+				BlockRequest.DEFAULT_MAX_MERGED_LENGTH);
+	}
+
 }
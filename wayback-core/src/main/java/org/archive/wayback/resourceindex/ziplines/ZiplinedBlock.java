@@ -21,15 +21,16 @@ package org.archive.wayback.resourceindex.ziplines;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
-import org.archive.util.zip.OpenJDK7GZIPInputStream;
 import org.archive.wayback.util.ByteOp;
+import org.archive.wayback.util.PooledGZIPInputStream;
 
 /**
  * @author brad
@@ -40,6 +41,8 @@ public class ZiplinedBlock {
 			ZiplinedBlock.class.getName());
 
 	BlockLoader loader = null;
+	ZiplinedBlockCache cache = null;
+	byte[] preloaded = null;
 	String urlOrPaths[] = null;
 	long offset = -1;
 	public final static int BLOCK_SIZE = 128 * 1024;
@@ -74,6 +77,14 @@ public class ZiplinedBlock {
 		this.loader = loader;
 	}
         
+	/**
+	 * @param cache the ZiplinedBlockCache to consult, and populate, before
+	 * loading this block with the BlockLoader
+	 */
+	public void setCache(ZiplinedBlockCache cache) {
+		this.cache = cache;
+	}
+
 	/**
 	 * @return a BufferedReader of the underlying compressed data in this block
 	 * @throws IOException for usual reasons
@@ -85,7 +96,35 @@ public class ZiplinedBlock {
 		return readBlockInefficiently();
 	}
         
+	/**
+	 * @return true if this block can be read without fetching it
+	 */
+	public boolean isAvailable() {
+		return (preloaded != null) ||
+			((cache != null) && cache.contains(urlOrPaths[0], offset));
+	}
+
+	/**
+	 * @return a BlockRequest for this block's first location
+	 */
+	public BlockRequest getBlockRequest() {
+		return new BlockRequest(urlOrPaths[0], offset, count);
+	}
+
+	/**
+	 * @param compressed the bytes of this block, fetched in a batch with
+	 * others, to be used by the next readBlock() instead of fetching again
+	 */
+	public void setPreloaded(byte[] compressed) {
+		this.preloaded = compressed;
+	}
+
 	protected byte[] attemptBlockLoad(BlockLoader remote) {
+		if(preloaded != null) {
+			byte[] bytes = preloaded;
+			preloaded = null;
+			return bytes;
+		}
 		for(String urlOrPath : urlOrPaths) {
 			try {
 				return remote.getBlock(urlOrPath, offset, count);
@@ -99,18 +138,45 @@ public class ZiplinedBlock {
 	
 	protected BufferedReader readBlockEfficiently(BlockLoader remote)
 	throws IOException {
+		if(cache != null) {
+			return readBlockCached(remote);
+		}
 		byte bytes[] = attemptBlockLoad(remote);
 		if(bytes == null) {
 			throw new IOException("Unable to load block!");
 		}
 		return new BufferedReader(new InputStreamReader(
-				new OpenJDK7GZIPInputStream(new ByteArrayInputStream(bytes)),
+				new PooledGZIPInputStream(new ByteArrayInputStream(bytes)),
 				ByteOp.UTF8));
 //		return new BufferedReader(new InputStreamReader(
 //				new GZIPInputStream(new ByteArrayInputStream(bytes)),
 //				ByteOp.UTF8));
 	}
         
+	protected BufferedReader readBlockCached(BlockLoader remote)
+	throws IOException {
+		byte inflated[] = cache.get(urlOrPaths[0], offset);
+		if(inflated == null) {
+			byte bytes[] = attemptBlockLoad(remote);
+			if(bytes == null) {
+				throw new IOException("Unable to load block!");
+			}
+			InputStream is = new PooledGZIPInputStream(
+					new ByteArrayInputStream(bytes));
+			ByteArrayOutputStream baos =
+				new ByteArrayOutputStream(bytes.length * 4);
+			try {
+				ByteOp.copyStream(is, baos);
+			} finally {
+				is.close();
+			}
+			inflated = baos.toByteArray();
+			cache.put(urlOrPaths[0], offset, inflated);
+		}
+		return new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(inflated), ByteOp.UTF8));
+	}
+        
 	protected BufferedReader readBlockInefficiently() throws IOException {
 		StringBuilder sb = new StringBuilder(16);
 		sb.append(BYTES_HEADER).append(offset).append(BYTES_MINUS);
@@ -121,6 +187,6 @@ public class ZiplinedBlock {
 		URLConnection uc = u.openConnection();
 		uc.setRequestProperty(RANGE_HEADER, sb.toString());
 		return new BufferedReader(new InputStreamReader(
-				new GZIPInputStream(uc.getInputStream()),ByteOp.UTF8));
+				new PooledGZIPInputStream(uc.getInputStream()),ByteOp.UTF8));
 	}
 }
@@ -0,0 +1,168 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.util.logging.Logger;
+
+import org.archive.wayback.util.ConcurrentLRUCache;
+
+/**
+ * Size-bounded cache of decompressed ZipNum blocks, keyed by the block's
+ * part file and offset, and shared by all requests that use the same
+ * instance. Hot blocks are then fetched and inflated once, rather than once
+ * per request.
+ * 
+ * Blocks are held as their inflated bytes, which are about half the size
+ * of the equivalent Strings.
+ *
+ * @version $Date$, $Revision$
+ */
+public class ZiplinedBlockCache {
+	private static final Logger LOGGER = Logger.getLogger(
+			ZiplinedBlockCache.class.getName());
+
+	/** Default maximum total size of cached blocks: 64MB */
+	public final static long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+	/* approximate per-entry overhead of key, array header and map entry */
+	private final static int ENTRY_OVERHEAD = 128;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private ConcurrentLRUCache<String,byte[]> cache = null;
+
+	public ZiplinedBlockCache() {
+	}
+
+	/**
+	 * @param maxBytes maximum total size of cached blocks
+	 */
+	public ZiplinedBlockCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	private synchronized ConcurrentLRUCache<String,byte[]> getCache() {
+		if(cache == null) {
+			cache = new ConcurrentLRUCache<String,byte[]>(maxBytes);
+		}
+		return cache;
+	}
+
+	/**
+	 * @param partFile path or URL identifying the ZipNum part file
+	 * @param offset of the block within partFile
+	 * @return String key for the block
+	 */
+	public static String makeKey(String partFile, long offset) {
+		return partFile + ":" + offset;
+	}
+
+	/**
+	 * @param partFile path or URL identifying the ZipNum part file
+	 * @param offset of the block within partFile
+	 * @return the inflated bytes of the block, or null if not cached
+	 */
+	public byte[] get(String partFile, long offset) {
+		return getCache().get(makeKey(partFile, offset));
+	}
+
+	/**
+	 * @param partFile path or URL identifying the ZipNum part file
+	 * @param offset of the block within partFile
+	 * @return true if the block is cached
+	 */
+	public boolean contains(String partFile, long offset) {
+		return getCache().containsKey(makeKey(partFile, offset));
+	}
+
+	/**
+	 * @param partFile path or URL identifying the ZipNum part file
+	 * @param offset of the block within partFile
+	 * @param inflated the decompressed bytes of the block
+	 */
+	public void put(String partFile, long offset, byte[] inflated) {
+		getCache().put(makeKey(partFile, offset), inflated,
+				inflated.length + ENTRY_OVERHEAD);
+	}
+
+	/**
+	 * Remove all cached blocks, for example after the index has been
+	 * replaced.
+	 */
+	public void clear() {
+		getCache().clear();
+		LOGGER.info("Cleared block cache");
+	}
+
+	/**
+	 * @return the maximum total size of cached blocks
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes the maximum total size of cached blocks. Must be set
+	 * before the cache is first used.
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return number of lookups which found the block cached
+	 */
+	public long getHitCount() {
+		return getCache().getHitCount();
+	}
+
+	/**
+	 * @return number of lookups which did not find the block cached
+	 */
+	public long getMissCount() {
+		return getCache().getMissCount();
+	}
+
+	/**
+	 * @return number of blocks evicted to make room for others
+	 */
+	public long getEvictionCount() {
+		return getCache().getEvictionCount();
+	}
+
+	/**
+	 * @return number of blocks currently cached
+	 */
+	public int getSize() {
+		return getCache().size();
+	}
+
+	/**
+	 * @return approximate number of bytes currently cached
+	 */
+	public long getCachedBytes() {
+		return getCache().getWeight();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ZiplinedBlockCache(blocks=%d bytes=%d hits=%d"
+				+ " misses=%d evictions=%d)", getSize(), getCachedBytes(),
+				getHitCount(), getMissCount(), getEvictionCount());
+	}
+}
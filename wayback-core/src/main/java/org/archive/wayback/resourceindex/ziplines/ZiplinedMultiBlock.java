@@ -5,10 +5,9 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.SequenceInputStream;
 import java.util.ArrayList;
 
-import org.archive.util.zip.OpenJDK7GZIPInputStream;
+import org.archive.wayback.util.PooledGZIPInputStream;
 
 public class ZiplinedMultiBlock extends ZiplinedBlock {
 	
@@ -54,21 +53,15 @@ public class ZiplinedMultiBlock extends ZiplinedBlock {
 		}
 		
 		int count = 0;
-		InputStream currChain = null;
 		
 		for (int blockSize : blockSizes) {
-			InputStream nextStream = new ByteArrayInputStream(bytes, count, blockSize);
-			nextStream = new OpenJDK7GZIPInputStream(nextStream);
-			
-			if (currChain == null) {
-				currChain = nextStream;
-			} else {
-				currChain = new SequenceInputStream(currChain, nextStream);
-			}
-			
 			count += blockSize;
 		}
 		
-		return new BufferedReader(new InputStreamReader(currChain));
+		// the blocks are consecutive gzip members, decoded in turn with one
+		// pooled Inflater
+		InputStream is = new PooledGZIPInputStream(new ByteArrayInputStream(bytes, 0, count));
+		
+		return new BufferedReader(new InputStreamReader(is));
 	}
 }
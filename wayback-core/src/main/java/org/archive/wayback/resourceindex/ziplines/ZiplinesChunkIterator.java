@@ -25,8 +25,16 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.util.io.RuntimeIOException;
@@ -46,6 +54,11 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 	private Iterator<ZiplinedBlock> blockItr = null;
 	private String cachedNext = null;
 	private boolean truncated = false;
+	private ExecutorService executor = null;
+	private int readAhead = 0;
+	private LinkedList<Future<BufferedReader>> pending = null;
+	private int batchSize = 0;
+	private LinkedList<ZiplinedBlock> batch = new LinkedList<ZiplinedBlock>();
 	/**
 	 * @param blocks which should be fetched and unzipped, one after another
 	 */
@@ -53,6 +66,134 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 		LOGGER.info("initialized with " + blocks.size() + " blocks");
 		blockItr = blocks.iterator();
 	}
+	/**
+	 * @param blocks which should be fetched and unzipped, one after another
+	 * @param executor ExecutorService used to fetch blocks ahead of use
+	 * @param readAhead number of blocks beyond the current one to fetch
+	 * concurrently
+	 */
+	public ZiplinesChunkIterator(List<ZiplinedBlock> blocks,
+			ExecutorService executor, int readAhead) {
+		this(blocks);
+		if((executor != null) && (readAhead > 0)) {
+			this.executor = executor;
+			this.readAhead = readAhead;
+			pending = new LinkedList<Future<BufferedReader>>();
+		}
+	}
+
+	/**
+	 * Fetches one block in the background. If cancelled before or while the
+	 * block is read, closes the reader it produced, releasing its inflater.
+	 */
+	private static class BlockFetch extends FutureTask<BufferedReader> {
+		BlockFetch(final ZiplinedBlock block) {
+			super(new Callable<BufferedReader>() {
+				public BufferedReader call() throws IOException {
+					return block.readBlock();
+				}
+			});
+		}
+		@Override
+		protected void set(BufferedReader br) {
+			super.set(br);
+			if(isCancelled()) {
+				closeQuietly(br);
+			}
+		}
+	}
+
+	private static void closeQuietly(BufferedReader br) {
+		try {
+			br.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed closing block", e);
+		}
+	}
+
+	private void fillReadAhead() {
+		while((pending.size() < readAhead) && blockItr.hasNext()) {
+			BlockFetch fetch = new BlockFetch(blockItr.next());
+			pending.add(fetch);
+			executor.execute(fetch);
+		}
+	}
+
+	/**
+	 * Fetch the bytes of the next batchSize blocks which are not already
+	 * cached through one BatchBlockLoader.getBlocks() call, so nearby blocks
+	 * are read with a few large requests. Blocks whose loader is not a
+	 * BatchBlockLoader, and all blocks of a failed batch fetch, fall back to
+	 * loading themselves.
+	 */
+	private void fillBatch() {
+		while((batch.size() < batchSize) && blockItr.hasNext()) {
+			batch.add(blockItr.next());
+		}
+		List<ZiplinedBlock> toLoad = new ArrayList<ZiplinedBlock>(batch.size());
+		List<BlockRequest> requests = new ArrayList<BlockRequest>(batch.size());
+		for(ZiplinedBlock block : batch) {
+			if((block.loader instanceof BatchBlockLoader)
+					&& !block.isAvailable()) {
+				toLoad.add(block);
+				requests.add(block.getBlockRequest());
+			}
+		}
+		if(requests.size() < 2) {
+			return;
+		}
+		BatchBlockLoader loader = (BatchBlockLoader) toLoad.get(0).loader;
+		try {
+			List<byte[]> loaded = loader.getBlocks(requests);
+			for(int i = 0; i < toLoad.size(); i++) {
+				toLoad.get(i).setPreloaded(loaded.get(i));
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Failed batch block fetch:" + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return BufferedReader for the next block, fetched in a batch with
+	 * the following blocks, or null if there are no more blocks
+	 */
+	private BufferedReader nextBatchedBlock() {
+		if(batch.isEmpty()) {
+			fillBatch();
+			if(batch.isEmpty()) {
+				return null;
+			}
+		}
+		try {
+			return batch.removeFirst().readBlock();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed block fetch", e);
+			throw new RuntimeIOException();
+		}
+	}
+
+	/**
+	 * @return BufferedReader for the next block, fetched in the background,
+	 * or null if there are no more blocks
+	 */
+	private BufferedReader nextPrefetchedBlock() {
+		fillReadAhead();
+		if(pending.isEmpty()) {
+			return null;
+		}
+		Future<BufferedReader> future = pending.removeFirst();
+		fillReadAhead();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.log(Level.WARNING, "Interrupted waiting for block", e);
+			throw new RuntimeIOException();
+		} catch (ExecutionException e) {
+			LOGGER.log(Level.WARNING, "Failed block fetch", e.getCause());
+			throw new RuntimeIOException();
+		}
+	}
 	/* (non-Javadoc)
 	 * @see java.util.Iterator#hasNext()
 	 */
@@ -77,10 +218,21 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 				}
 			} else {
 				// do we have more blocks to use?
-				if(blockItr.hasNext()) {
+				if(pending != null) {
+					br = nextPrefetchedBlock();
+					if(br == null) {
+						return false;
+					}
+				} else if(batchSize > 1) {
+					br = nextBatchedBlock();
+					if(br == null) {
+						return false;
+					}
+				} else if(blockItr.hasNext()) {
 					try {
 						br = blockItr.next().readBlock();
 					} catch (IOException e) {
+						LOGGER.log(Level.WARNING, "Failed block fetch", e);
 						throw new RuntimeIOException();
 					}
 				} else {
@@ -114,6 +266,23 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 	public void close() throws IOException {
 		if(br != null) {
 			br.close();
+			br = null;
+		}
+		if(pending != null) {
+			// fetches which already finished hold pooled inflaters in their
+			// readers, those cancelled here close their own when done:
+			for(Future<BufferedReader> future : pending) {
+				if(!future.cancel(true) && !future.isCancelled()) {
+					try {
+						closeQuietly(future.get());
+					} catch (ExecutionException e) {
+						// failed fetches hold nothing
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+			pending.clear();
 		}
 	}
 	public static void main(String[] args) {
@@ -150,6 +319,13 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 			System.exit(1);
 		}
 	}
+	/**
+	 * @param batchSize if greater than 1, fetch this many blocks at a time
+	 * through BatchBlockLoader.getBlocks(), which merges nearby ranges
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
 	/**
 	 * @return the truncated
 	 */
@@ -19,12 +19,18 @@
  */
 package org.archive.wayback.resourceindex.ziplines;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,7 +43,9 @@ import org.archive.wayback.resourceindex.cdx.format.CDXFlexFormat;
 import org.archive.wayback.resourceindex.cdx.format.CDXFormat;
 import org.archive.wayback.resourceindex.cdx.format.CDXFormatException;
 import org.archive.wayback.util.AdaptedIterator;
+import org.archive.wayback.util.DaemonThreadFactory;
 import org.archive.wayback.util.flatfile.FlatFile;
+import org.archive.wayback.util.flatfile.FrontCodedLineIndex;
 
 /**
  * A set of Ziplines files, which are CDX files specially compressed into a 
@@ -79,6 +87,16 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	 */
 	private String chunkIndexPath = null;
 	private FlatFile chunkIndex = null;
+	/**
+	 * If true, search chunkIndexPath through a shared memory-mapped view
+	 */
+	private boolean memoryMapChunkIndex = false;
+	/**
+	 * If > 0, hold the whole chunk index in memory, front-coded with a
+	 * restart point every this many lines
+	 */
+	private int chunkIndexRestartInterval = 0;
+	private FrontCodedLineIndex frontCodedChunkIndex = null;
 	/**
 	 * Local path containing URL for each CHUNK
 	 */
@@ -87,6 +105,11 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	private CDXFormat format = null;
 	private int maxBlocks = 1000;
 	private BlockLoader blockLoader = null;
+	private ZiplinedBlockCache blockCache = null;
+	private int readAheadBlocks = 0;
+	private int readAheadThreads = 10;
+	private ExecutorService readAheadExecutor = null;
+	private int batchBlocks = 0;
 	
 	protected int timestampDedupLength = 0;
 	
@@ -125,6 +148,14 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		}
 		lines.close();
 		chunkIndex = new FlatFile(chunkIndexPath);
+		chunkIndex.setMemoryMapped(memoryMapChunkIndex);
+		if(chunkIndexRestartInterval > 0) {
+			frontCodedChunkIndex = FrontCodedLineIndex.build(
+					new File(chunkIndexPath), chunkIndexRestartInterval);
+			LOGGER.info("Loaded " + frontCodedChunkIndex.size() + 
+					" chunk index lines from (" + chunkIndexPath + ") into " +
+					frontCodedChunkIndex.getMemoryUsage() + " bytes");
+		}
 	}
 	protected CloseableIterator<CaptureSearchResult> adaptIterator(Iterator<String> itr) 
 	throws IOException {
@@ -178,7 +209,11 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		
 		
 		try {
-			itr = chunkIndex.getRecordIteratorLT(prefix);
+			if(frontCodedChunkIndex != null) {
+				itr = frontCodedChunkIndex.getRecordIteratorLT(prefix);
+			} else {
+				itr = chunkIndex.getRecordIteratorLT(prefix);
+			}
 			
 			String currLine = null;
 			String nextLine = null;
@@ -256,6 +291,7 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 					block = new ZiplinedBlock(bl.getLocations(), offset, length);
 				}
 				block.setLoader(blockLoader);
+				block.setCache(blockCache);
 				blocks.add(block);
 			}
 		} finally {
@@ -269,7 +305,14 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	public Iterator<String> getZiplinesChunkIterator(String prefix, String urlkey) throws ResourceIndexNotAvailableException, IOException
 	{
 		ArrayList<ZiplinedBlock> blocks = getBlockListForPrefix(prefix, urlkey);
-		ZiplinesChunkIterator zci = new ZiplinesChunkIterator(blocks);
+		ZiplinesChunkIterator zci;
+		if((readAheadBlocks > 0) && (blocks.size() > 1)) {
+			zci = new ZiplinesChunkIterator(blocks, getReadAheadExecutor(),
+					readAheadBlocks);
+		} else {
+			zci = new ZiplinesChunkIterator(blocks);
+			zci.setBatchSize(batchBlocks);
+		}
 		zci.setTruncated(false);
 		return zci;
 	}
@@ -313,7 +356,37 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	 */
         @Override
 	public void shutdown() throws IOException {
-		// no-op..
+		synchronized(this) {
+			if(readAheadExecutor != null) {
+				readAheadExecutor.shutdownNow();
+				readAheadExecutor = null;
+			}
+		}
+	}
+
+	/**
+	 * Read-ahead fetches wait for at most readAheadThreads free threads;
+	 * beyond that the scanning thread fetches the block itself, so scans
+	 * abandoned without close() cannot leave an unbounded backlog.
+	 */
+	private synchronized ExecutorService getReadAheadExecutor() {
+		if(readAheadExecutor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(readAheadThreads,
+					readAheadThreads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(readAheadThreads),
+					new DaemonThreadFactory("ZiplinesReadAhead"),
+					new RejectedExecutionHandler() {
+						public void rejectedExecution(Runnable r,
+								ThreadPoolExecutor executor) {
+							// also after shutdown, so no fetch is left
+							// for an iterator to wait on forever:
+							r.run();
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+			readAheadExecutor = pool;
+		}
+		return readAheadExecutor;
 	}
 	/**
 	 * @return the format
@@ -339,6 +412,35 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	public void setChunkIndexPath(String chunkIndexPath) {
 		this.chunkIndexPath = chunkIndexPath;
 	}
+	/**
+	 * @return true if the chunk index is searched through a memory-mapped view
+	 */
+	public boolean isMemoryMapChunkIndex() {
+		return memoryMapChunkIndex;
+	}
+	/**
+	 * @param memoryMapChunkIndex if true, search the chunk index through a
+	 * memory-mapped view shared across requests, rather than opening it for
+	 * each request
+	 */
+	public void setMemoryMapChunkIndex(boolean memoryMapChunkIndex) {
+		this.memoryMapChunkIndex = memoryMapChunkIndex;
+	}
+	/**
+	 * @return number of lines between restart points in the in-memory
+	 * front-coded chunk index, or 0 if the chunk index is read from disk
+	 */
+	public int getChunkIndexRestartInterval() {
+		return chunkIndexRestartInterval;
+	}
+	/**
+	 * @param chunkIndexRestartInterval if > 0, load the whole chunk index
+	 * into memory at init(), front-coded with a restart point every this
+	 * many lines, so locating blocks does no I/O
+	 */
+	public void setChunkIndexRestartInterval(int chunkIndexRestartInterval) {
+		this.chunkIndexRestartInterval = chunkIndexRestartInterval;
+	}
 	/**
 	 * @return the chunkMapPath
 	 */
@@ -378,6 +480,70 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		this.blockLoader = blockLoader;
 	}
 
+	/**
+	 * @return the blockCache, or null if blocks are not cached
+	 */
+	public ZiplinedBlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	/**
+	 * @param blockCache cache of decompressed blocks, which may be shared
+	 * with other ZiplinesSearchResultSources
+	 */
+	public void setBlockCache(ZiplinedBlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+
+	/**
+	 * @return the number of blocks fetched ahead of the one being read
+	 */
+	public int getReadAheadBlocks() {
+		return readAheadBlocks;
+	}
+
+	/**
+	 * @param readAheadBlocks if greater than 0, multi-block scans fetch this
+	 * many blocks ahead of the one being read, concurrently
+	 */
+	public void setReadAheadBlocks(int readAheadBlocks) {
+		this.readAheadBlocks = readAheadBlocks;
+	}
+
+	/**
+	 * @return the size of the thread pool shared by all read-ahead fetches
+	 */
+	public int getReadAheadThreads() {
+		return readAheadThreads;
+	}
+
+	/**
+	 * @param readAheadThreads the size of the thread pool shared by all
+	 * read-ahead fetches. When all threads are busy and as many fetches are
+	 * queued, scans fetch their next blocks themselves.
+	 */
+	public void setReadAheadThreads(int readAheadThreads) {
+		this.readAheadThreads = readAheadThreads;
+	}
+
+	/**
+	 * @return the number of blocks fetched together through
+	 * BatchBlockLoader.getBlocks()
+	 */
+	public int getBatchBlocks() {
+		return batchBlocks;
+	}
+
+	/**
+	 * @param batchBlocks if greater than 1, multi-block scans fetch this many
+	 * blocks at a time through BatchBlockLoader.getBlocks(), which merges
+	 * adjacent ranges of the same part file into single requests. Ignored if
+	 * readAheadBlocks is set, or if the BlockLoader is not a BatchBlockLoader.
+	 */
+	public void setBatchBlocks(int batchBlocks) {
+		this.batchBlocks = batchBlocks;
+	}
+
 	private static void USAGE() {
 		System.err.println("USAGE:");
 		System.err.println("");
@@ -1,9 +1,11 @@
 package org.archive.wayback.resourcestore;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,6 +25,7 @@ import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.ResourceNotAvailableException;
 import org.archive.wayback.resourcestore.resourcefile.ArcResource;
+import org.archive.wayback.resourcestore.resourcefile.ArcWarcFilenameFilter;
 import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 
 public class FlexResourceStore implements ResourceStore {
@@ -39,6 +42,10 @@ public class FlexResourceStore implements ResourceStore {
 	
 	protected boolean failOnFirstUnavailable = false;
 	
+	protected ReplicaFetcher replicaFetcher = null;
+	
+	protected ReplicaHealthTracker healthTracker = null;
+	
 	public ZipNumBlockLoader getBlockLoader() {
 		return blockLoader;
 	}
@@ -71,6 +78,30 @@ public class FlexResourceStore implements ResourceStore {
 		this.failOnFirstUnavailable = failOnFirstUnavailable;
 	}
 
+	public ReplicaFetcher getReplicaFetcher() {
+		return replicaFetcher;
+	}
+
+	/**
+	 * @param replicaFetcher if set, the paths from all sources are fetched
+	 * with hedged requests, rather than one after another
+	 */
+	public void setReplicaFetcher(ReplicaFetcher replicaFetcher) {
+		this.replicaFetcher = replicaFetcher;
+	}
+
+	public ReplicaHealthTracker getHealthTracker() {
+		return healthTracker;
+	}
+
+	/**
+	 * @param healthTracker if set, paths are tried best endpoint first,
+	 * and paths on endpoints known to be down are skipped
+	 */
+	public void setHealthTracker(ReplicaHealthTracker healthTracker) {
+		this.healthTracker = healthTracker;
+	}
+
 	public interface SourceResolver
 	{
 		String[] lookupPath(String filename) throws IOException;
@@ -84,6 +115,15 @@ public class FlexResourceStore implements ResourceStore {
 		protected String path;
 		protected String prefixPath;
 		
+		protected boolean inMemory = false;
+		protected boolean offHeap = false;
+		protected long checkInterval = 10000;
+		protected PathIndexTable table;
+		
+		protected int negativeCacheSize = 0;
+		protected long negativeCacheTTL = 60000;
+		protected NegativeLookupCache negativeCache;
+		
 		public void setPathIndex(String path) throws IOException
 		{
 			this.path = path;
@@ -103,8 +143,96 @@ public class FlexResourceStore implements ResourceStore {
 			this.prefixPath = prefixPath;
 		}
 
+		public boolean isInMemory() {
+			return inMemory;
+		}
+
+		/**
+		 * @param inMemory if true, load the whole path index into a
+		 * PathIndexTable on first use, rather than searching the file for
+		 * each lookup
+		 */
+		public void setInMemory(boolean inMemory) {
+			this.inMemory = inMemory;
+		}
+
+		public boolean isOffHeap() {
+			return offHeap;
+		}
+
+		/**
+		 * @param offHeap with inMemory, keep the loaded index off the heap
+		 */
+		public void setOffHeap(boolean offHeap) {
+			this.offHeap = offHeap;
+		}
+
+		public long getCheckInterval() {
+			return checkInterval;
+		}
+
+		/**
+		 * @param checkInterval with inMemory, milliseconds between checks
+		 * of the path index file for changes
+		 */
+		public void setCheckInterval(long checkInterval) {
+			this.checkInterval = checkInterval;
+		}
+
+		public int getNegativeCacheSize() {
+			return negativeCacheSize;
+		}
+
+		/**
+		 * @param negativeCacheSize number of names not found on disk to
+		 * remember, 0 for none. Not needed with inMemory.
+		 */
+		public void setNegativeCacheSize(int negativeCacheSize) {
+			this.negativeCacheSize = negativeCacheSize;
+		}
+
+		public long getNegativeCacheTTL() {
+			return negativeCacheTTL;
+		}
+
+		/**
+		 * @param negativeCacheTTL milliseconds to remember a name not found
+		 */
+		public void setNegativeCacheTTL(long negativeCacheTTL) {
+			this.negativeCacheTTL = negativeCacheTTL;
+		}
+
+		protected synchronized PathIndexTable getTable() throws IOException {
+			if (table == null) {
+				table = new PathIndexTable(path, DELIMITER, offHeap);
+				table.setCheckInterval(checkInterval);
+			}
+			return table;
+		}
+
+		protected synchronized NegativeLookupCache getNegativeCache() {
+			if (negativeCache == null) {
+				negativeCache = new NegativeLookupCache(negativeCacheSize, negativeCacheTTL);
+			}
+			return negativeCache;
+		}
+
 		@Override
 		public String[] lookupPath(String filename) throws IOException {
+			if (inMemory) {
+				String[] paths = getTable().lookup(filename);
+				if (prefixPath != null) {
+					for (int i = 0; i < paths.length; i++) {
+						paths[i] = prefixPath + paths[i];
+					}
+				}
+				return paths;
+			}
+			
+			if ((negativeCacheSize > 0) && getNegativeCache().isMissing(filename)) {
+				return EMPTY_STRINGS;
+			}
+			
 			CloseableIterator<String> iter = null;
 			List<String> paths = new ArrayList<String>();
 			
@@ -138,6 +266,9 @@ public class FlexResourceStore implements ResourceStore {
 			}
 			
 			if (paths.isEmpty()) {
+				if (negativeCacheSize > 0) {
+					getNegativeCache().addMissing(filename);
+				}
 				return EMPTY_STRINGS;
 			}
 			
@@ -202,9 +333,15 @@ public class FlexResourceStore implements ResourceStore {
 			throw new ResourceNotAvailableException("No ARC/WARC name in search result...", filename);
 		}
 		
+		if (replicaFetcher != null) {
+			return retrieveHedged(result);
+		}
+		
 		Resource resource = null;
 		boolean breakOnErr = false;
 		
+		ReplicaFetcher.Fetch fetch = createFetch(result);
+		
 		StringBuilder excMsg = new StringBuilder();
 		IOException lastExc = null;
 				
@@ -227,13 +364,17 @@ public class FlexResourceStore implements ResourceStore {
 				}
 			}
 			
-			if (paths.length == 0) {
+			if ((paths == null) || (paths.length == 0)) {
 				continue;
 			}
 			
+			if (healthTracker != null) {
+				paths = healthTracker.order(paths);
+			}
+			
 			for (String path : paths) {
 				try {
-					resource = getResource(path, result);
+					resource = fetch.fetch(path);
 					
 					if (resource != null) {
 						return resource;
@@ -267,6 +408,86 @@ public class FlexResourceStore implements ResourceStore {
 		throw rnae;
 	}
 	
+	/**
+	 * Look up the paths from all sources, then fetch from whichever
+	 * responds first with the replicaFetcher
+	 */
+	protected Resource retrieveHedged(CaptureSearchResult result)
+			throws ResourceNotAvailableException {
+		
+		String filename = result.getFile();
+		
+		List<String> paths = new ArrayList<String>();
+		List<Exception> errors = new ArrayList<Exception>();
+		
+		for (SourceResolver resolver : sources) {
+			try {
+				paths.addAll(Arrays.asList(resolver.lookupPath(filename)));
+			} catch (IOException io) {
+				errors.add(io);
+				
+				if (failOnFirstUnavailable) {
+					break;
+				}
+			}
+		}
+		
+		Resource resource = null;
+		
+		String[] pathsArray = paths.toArray(EMPTY_STRINGS);
+		
+		if (healthTracker != null) {
+			pathsArray = healthTracker.order(pathsArray);
+		}
+		
+		if (errors.isEmpty() || !failOnFirstUnavailable) {
+			resource = replicaFetcher.fetch(pathsArray, createFetch(result), failOnFirstUnavailable, errors);
+		}
+		
+		if (resource != null) {
+			return resource;
+		}
+		
+		if (errors.isEmpty()) {
+			throw new ResourceNotAvailableException("File not Found: " + filename, filename, new FileNotFoundException(filename));
+		}
+		
+		StringBuilder excMsg = new StringBuilder();
+		
+		for (Exception e : errors) {
+			if (excMsg.length() > 0) {
+				excMsg.append(" ");
+			}
+			excMsg.append(e.getMessage());
+		}
+		
+		throw new ResourceNotAvailableException(excMsg.toString(), filename, errors.get(errors.size() - 1));
+	}
+	
+	/**
+	 * @return a Fetch of result from a path with getResource(), tracked by
+	 * the healthTracker, if any
+	 */
+	protected ReplicaFetcher.Fetch createFetch(final CaptureSearchResult result)
+	{
+		ReplicaFetcher.Fetch fetch = new ReplicaFetcher.Fetch() {
+			@Override
+			public Resource fetch(String path) throws IOException {
+				try {
+					return getResource(path, result);
+				} catch (ResourceNotAvailableException e) {
+					throw new IOException(e.getMessage(), e);
+				}
+			}
+		};
+		
+		if (healthTracker != null) {
+			fetch = healthTracker.track(fetch);
+		}
+		
+		return fetch;
+	}
+	
 	public Resource getResource(String path, CaptureSearchResult result) throws IOException, ResourceNotAvailableException
 	{		
 		Resource r = null;
@@ -291,6 +512,13 @@ public class FlexResourceStore implements ResourceStore {
 			
 			r = loadResource(path, is);
 			
+			// an uncompressed record on local disk, whose payload may be
+			// sent straight from the file
+			if ((r instanceof WarcResource) && !path.contains("://")
+					&& path.endsWith(ArcWarcFilenameFilter.WARC_SUFFIX)) {
+				((WarcResource) r).setLocalFile(new File(path), offset);
+			}
+			
 			r.parseHeaders();
 			
 			success = true;
@@ -321,6 +549,9 @@ public class FlexResourceStore implements ResourceStore {
 
 	@Override
 	public void shutdown() throws IOException {
+		if (replicaFetcher != null) {
+			replicaFetcher.shutdown();
+		}
 		blockLoader.close();
 	}
 }
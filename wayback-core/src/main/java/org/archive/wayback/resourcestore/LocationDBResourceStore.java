@@ -20,6 +20,8 @@
 package org.archive.wayback.resourcestore;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.archive.wayback.ResourceStore;
@@ -41,6 +43,8 @@ public class LocationDBResourceStore implements ResourceStore {
         Logger.getLogger(LocationDBResourceStore.class.getName());
 
 	private ResourceFileLocationDB db = null;
+	private ReplicaFetcher replicaFetcher = null;
+	private ReplicaHealthTracker healthTracker = null;
 
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.ResourceStore#retrieveResource(org.archive.wayback.core.SearchResult)
@@ -68,16 +72,25 @@ public class LocationDBResourceStore implements ResourceStore {
 		
 		final long offset = result.getOffset();
 
+		if(healthTracker != null) {
+			urls = healthTracker.order(urls);
+		}
+
+		ReplicaFetcher.Fetch fetch = createFetch(offset);
+
+		if(replicaFetcher != null) {
+			return retrieveHedged(urls, fetch, fileName);
+		}
+
 		String errMsg = "Unable to retrieve";
 		Exception origException = null;
 		
 		Resource r = null;
-		// TODO: attempt multiple threads?
 		for(String url : urls) {
 				
 			try {
 
-				r = ResourceFactory.getResource(url, offset);
+				r = fetch.fetch(url);
 				// TODO: attempt to grab the first few KB? The underlying 
 				// 		InputStreams support mark(), so we could reset() after.
 				//      wait for now, currently this will parse HTTP headers, 
@@ -98,10 +111,44 @@ public class LocationDBResourceStore implements ResourceStore {
 		return r;
 	}
 
+	private Resource retrieveHedged(String urls[], ReplicaFetcher.Fetch fetch,
+			String fileName) throws ResourceNotAvailableException {
+
+		List<Exception> errors = new ArrayList<Exception>();
+		Resource r = replicaFetcher.fetch(urls, fetch, false, errors);
+
+		if(r == null) {
+			String errMsg = "Unable to retrieve";
+			Exception origException = null;
+			if(!errors.isEmpty()) {
+				origException = errors.get(errors.size() - 1);
+				errMsg = origException.toString();
+				LOGGER.info("Unable to retrieve " + fileName + " - " + errors);
+			}
+			throw new ResourceNotAvailableException(errMsg, fileName, origException);
+		}
+		return r;
+	}
+
+	private ReplicaFetcher.Fetch createFetch(final long offset) {
+		ReplicaFetcher.Fetch fetch = new ReplicaFetcher.Fetch() {
+			public Resource fetch(String url) throws IOException {
+				return ResourceFactory.getResource(url, offset);
+			}
+		};
+		if(healthTracker != null) {
+			fetch = healthTracker.track(fetch);
+		}
+		return fetch;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.ResourceStore#shutdown()
 	 */
 	public void shutdown() throws IOException {
+		if(replicaFetcher != null) {
+			replicaFetcher.shutdown();
+		}
 		db.shutdown();
 	}
 
@@ -118,4 +165,35 @@ public class LocationDBResourceStore implements ResourceStore {
 	public void setDb(ResourceFileLocationDB db) {
 		this.db = db;
 	}
+
+	/**
+	 * @return the ReplicaFetcher used to fetch from several urls at once,
+	 * or null
+	 */
+	public ReplicaFetcher getReplicaFetcher() {
+		return replicaFetcher;
+	}
+
+	/**
+	 * @param replicaFetcher if set, the urls of a file are fetched with
+	 * hedged requests, rather than one after another
+	 */
+	public void setReplicaFetcher(ReplicaFetcher replicaFetcher) {
+		this.replicaFetcher = replicaFetcher;
+	}
+
+	/**
+	 * @return the ReplicaHealthTracker ordering urls, or null
+	 */
+	public ReplicaHealthTracker getHealthTracker() {
+		return healthTracker;
+	}
+
+	/**
+	 * @param healthTracker if set, urls are tried best endpoint first, and
+	 * urls on endpoints known to be down are skipped
+	 */
+	public void setHealthTracker(ReplicaHealthTracker healthTracker) {
+		this.healthTracker = healthTracker;
+	}
 }
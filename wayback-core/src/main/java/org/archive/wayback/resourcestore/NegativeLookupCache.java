@@ -0,0 +1,84 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers names recently looked up and not found, for up to ttl
+ * milliseconds, so that repeated lookups of a missing name (eg. one held
+ * by a later source of a FlexResourceStore) do not each search the index
+ * on disk. Holds at most maxSize names, least recently used are dropped.
+ */
+public class NegativeLookupCache {
+
+	private final int maxSize;
+	private final long ttl;
+	private final LinkedHashMap<String, Long> missing;
+
+	/**
+	 * @param maxSize the most names to remember
+	 * @param ttl milliseconds to remember a name for
+	 */
+	public NegativeLookupCache(final int maxSize, long ttl) {
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.missing = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @param name the name to check
+	 * @return true if name was recently not found
+	 */
+	public synchronized boolean isMissing(String name) {
+		Long expires = missing.get(name);
+		if (expires == null) {
+			return false;
+		}
+		if (expires < System.currentTimeMillis()) {
+			missing.remove(name);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param name a name that was not found
+	 */
+	public synchronized void addMissing(String name) {
+		missing.put(name, System.currentTimeMillis() + ttl);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Memory resident copy of a sorted "name&lt;delimiter&gt;path" index, such
+ * as the path index of a FlexResourceStore.PathIndex or the flat file of a
+ * FlatFileResourceFileLocationDB, so that a lookup costs a hash probe
+ * rather than a binary search of the file on disk.
+ *
+ * Lines are kept as UTF-8 bytes in large chunks, on the heap or, if
+ * offHeap, in direct buffers, and indexed by an open addressing table of
+ * chunk offsets, so there are no per-name objects. Lines for the same
+ * name must be adjacent, as they are in a sorted file.
+ *
+ * Every checkInterval milliseconds a lookup checks the modification time
+ * of the file, and if it has changed, a new table is loaded in the
+ * background and swapped in when complete. Lookups meanwhile use the old
+ * table.
+ */
+public class PathIndexTable {
+	private final static Logger LOGGER =
+		Logger.getLogger(PathIndexTable.class.getName());
+
+	final static String[] EMPTY_STRINGS = new String[0];
+
+	private final static String UTF8 = "UTF-8";
+	private final static int CHUNK_SIZE = 16 * 1024 * 1024;
+	private final static byte SEP = '\n';
+
+	private File file;
+	private String delimiter;
+	private boolean offHeap;
+	private long checkInterval = 10000;
+
+	private volatile Table table = null;
+	private long lastCheck = 0;
+	private boolean reloading = false;
+
+	/**
+	 * @param path the index file
+	 * @param delimiter separates name and path on each line
+	 * @param offHeap if true, keep the lines in direct buffers
+	 * @throws IOException if the file cannot be loaded
+	 */
+	public PathIndexTable(String path, String delimiter, boolean offHeap)
+		throws IOException {
+		this.file = new File(path);
+		this.delimiter = delimiter;
+		this.offHeap = offHeap;
+		this.table = load();
+		this.lastCheck = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param name the file name to look up
+	 * @return all paths for name, in file order, possibly none
+	 */
+	public String[] lookup(String name) {
+		checkReload();
+		try {
+			return table.lookup(name.getBytes(UTF8));
+		} catch (IOException e) {
+			// UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return the number of names held
+	 */
+	public int size() {
+		return table.size;
+	}
+
+	protected void checkReload() {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (reloading || (now - lastCheck < checkInterval)) {
+				return;
+			}
+			lastCheck = now;
+			if (file.lastModified() == table.lastModified) {
+				return;
+			}
+			reloading = true;
+		}
+
+		Thread loader = new Thread("PathIndexTable reload " + file) {
+			public void run() {
+				try {
+					table = load();
+				} catch (IOException e) {
+					LOGGER.warning("Failed to reload " + file + ": " + e);
+				} catch (OutOfMemoryError e) {
+					LOGGER.severe("Out of memory reloading " + file);
+				} finally {
+					synchronized (PathIndexTable.this) {
+						reloading = false;
+					}
+				}
+			}
+		};
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	protected Table load() throws IOException {
+		long start = System.currentTimeMillis();
+		long lastModified = file.lastModified();
+		Table newTable = new Table();
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), UTF8), 1024 * 1024);
+		try {
+			String line;
+			byte[] prevName = null;
+			while ((line = reader.readLine()) != null) {
+				int idx = line.indexOf(delimiter);
+				if (idx <= 0) {
+					continue;
+				}
+				byte[] name = line.substring(0, idx).getBytes(UTF8);
+				byte[] path = line.substring(idx + delimiter.length()).getBytes(UTF8);
+				long offset = newTable.append(name, path);
+				if ((prevName == null) || !Arrays.equals(name, prevName)) {
+					newTable.insert(name, offset);
+				}
+				prevName = name;
+			}
+		} finally {
+			reader.close();
+		}
+		newTable.lastModified = lastModified;
+		LOGGER.info("Loaded " + newTable.size + " names from " + file + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return newTable;
+	}
+
+	static int hash(byte[] b, int off, int len) {
+		int h = 0x811C9DC5;
+		for (int i = off; i < off + len; i++) {
+			h = (h ^ (b[i] & 0xff)) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * One loaded copy of the index. Offsets are (chunk << 32) | position,
+	 * stored plus one in slots, so that 0 is empty. Each line is stored as
+	 * name SEP path SEP.
+	 */
+	class Table {
+		List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+		long[] slots = new long[1024];
+		int size = 0;
+		long lastModified;
+
+		private byte[] scratch = new byte[256];
+
+		long append(byte[] name, byte[] path) {
+			int len = name.length + path.length + 2;
+			ByteBuffer chunk = (chunks.isEmpty() ? null : chunks.get(chunks.size() - 1));
+			if ((chunk == null) || (chunk.remaining() < len)) {
+				int capacity = Math.max(CHUNK_SIZE, len);
+				chunk = (offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity));
+				chunks.add(chunk);
+			}
+			long offset = (((long)chunks.size() - 1) << 32) | chunk.position();
+			chunk.put(name).put(SEP).put(path).put(SEP);
+			return offset;
+		}
+
+		void insert(byte[] name, long offset) {
+			if ((size + 1) > (slots.length * 3 / 4)) {
+				grow();
+			}
+			int mask = slots.length - 1;
+			int slot = hash(name, 0, name.length) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = offset + 1;
+			size++;
+		}
+
+		void grow() {
+			long[] old = slots;
+			slots = new long[old.length * 2];
+			int mask = slots.length - 1;
+			for (long entry : old) {
+				if (entry == 0) {
+					continue;
+				}
+				int len = readField(entry - 1);
+				int slot = hash(scratch, 0, len) & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = entry;
+			}
+		}
+
+		// read the field at offset into scratch, return its length
+		private int readField(long offset) {
+			ByteBuffer chunk = chunks.get((int)(offset >>> 32));
+			int pos = (int)offset;
+			int len = 0;
+			byte b;
+			while ((b = chunk.get(pos + len)) != SEP) {
+				if (len == scratch.length) {
+					scratch = Arrays.copyOf(scratch, len * 2);
+				}
+				scratch[len++] = b;
+			}
+			return len;
+		}
+
+		private boolean nameEquals(ByteBuffer chunk, int pos, byte[] name) {
+			if (pos + name.length >= chunk.position()) {
+				return false;
+			}
+			for (int i = 0; i < name.length; i++) {
+				if (chunk.get(pos + i) != name[i]) {
+					return false;
+				}
+			}
+			return chunk.get(pos + name.length) == SEP;
+		}
+
+		String[] lookup(byte[] name) throws IOException {
+			int mask = slots.length - 1;
+			int slot = hash(name, 0, name.length) & mask;
+			long entry;
+			while ((entry = slots[slot]) != 0) {
+				int chunkIndex = (int)((entry - 1) >>> 32);
+				int pos = (int)(entry - 1);
+				ByteBuffer chunk = chunks.get(chunkIndex);
+				if (nameEquals(chunk, pos, name)) {
+					return readPaths(chunkIndex, pos, name);
+				}
+				slot = (slot + 1) & mask;
+			}
+			return EMPTY_STRINGS;
+		}
+
+		private String[] readPaths(int chunkIndex, int pos, byte[] name) throws IOException {
+			List<String> paths = new ArrayList<String>(2);
+			ByteBuffer chunk = chunks.get(chunkIndex);
+			// chunks are only appended to while loading, so this is stable
+			int end = chunk.position();
+			while (true) {
+				int start = pos + name.length + 1;
+				int len = 0;
+				while (chunk.get(start + len) != SEP) {
+					len++;
+				}
+				byte[] path = new byte[len];
+				for (int i = 0; i < len; i++) {
+					path[i] = chunk.get(start + i);
+				}
+				paths.add(new String(path, UTF8));
+				pos = start + len + 1;
+
+				if (pos >= end) {
+					if (++chunkIndex == chunks.size()) {
+						break;
+					}
+					chunk = chunks.get(chunkIndex);
+					end = chunk.position();
+					pos = 0;
+				}
+				if (!nameEquals(chunk, pos, name)) {
+					break;
+				}
+			}
+			return paths.toArray(new String[paths.size()]);
+		}
+	}
+
+	/**
+	 * @return milliseconds between checks of the file for changes
+	 */
+	public long getCheckInterval() {
+		return checkInterval;
+	}
+
+	/**
+	 * @param checkInterval milliseconds between checks of the file for
+	 * changes
+	 */
+	public void setCheckInterval(long checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+}
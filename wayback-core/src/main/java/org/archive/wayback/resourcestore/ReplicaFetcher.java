@@ -0,0 +1,445 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.util.DaemonThreadFactory;
+
+/**
+ * Fetches a Resource from the first of several replica locations to
+ * respond, with hedged requests: the first location is tried on the
+ * calling thread, and if it has not returned parsed headers within the
+ * hedge delay of starting, the next one is started alongside it on the
+ * hedge pool, and so on. A failed attempt starts the next location at
+ * once. The first Resource to arrive is used, the other attempts are
+ * interrupted, and any Resource they still produce is closed.
+ *
+ * The hedge pool has at most threads threads and no queue. When it is
+ * full, no hedge is started, and the location is left for the calling
+ * thread to try itself if the attempts under way fail, so a saturated
+ * pool never multiplies the load on the replicas.
+ *
+ * The hedge delay is hedgeDelay milliseconds, or, if hedgePercentile is
+ * set, that percentile of recently observed fetch times, if longer.
+ */
+public class ReplicaFetcher {
+	private static final Logger LOGGER =
+		Logger.getLogger(ReplicaFetcher.class.getName());
+
+	// fewer samples than this are not a useful percentile
+	protected final static int MIN_SAMPLES = 20;
+
+	// marks that the fetch has given up, so late attempts close their result
+	private final static Object ABANDONED = new Object();
+
+	/**
+	 * Fetch the resource at one location
+	 */
+	public interface Fetch {
+		/**
+		 * @param location replica path or url
+		 * @return the Resource with headers parsed, or null if not present
+		 * at location
+		 * @throws IOException
+		 */
+		Resource fetch(String location) throws IOException;
+	}
+
+	private int threads = 16;
+	private long hedgeDelay = 500;
+	private int hedgePercentile = 0;
+
+	private long[] latencies = new long[256];
+	private int numLatencies = 0;
+	private int nextLatency = 0;
+
+	private ThreadPoolExecutor executor = null;
+	private ScheduledThreadPoolExecutor timer = null;
+
+	/**
+	 * Fetch from the first of the locations to respond.
+	 *
+	 * @param locations replica locations, in order of preference
+	 * @param fetch loads the resource from one location
+	 * @param stopOnError if true, give up at the first failed attempt,
+	 * unless another has already succeeded
+	 * @param errors receives the exception of each failed attempt
+	 * @return the Resource, or null if no location provided it
+	 */
+	public Resource fetch(String[] locations, Fetch fetch,
+			boolean stopOnError, List<Exception> errors) {
+
+		if (locations.length == 0) {
+			return null;
+		}
+
+		Request request = new Request(locations, fetch, stopOnError);
+
+		try {
+			while (true) {
+				Object w = request.winner.get();
+				if (w instanceof Resource) {
+					return (Resource)w;
+				}
+				if (request.failed && stopOnError) {
+					break;
+				}
+
+				String location;
+				synchronized (request) {
+					location = null;
+					if (request.running == 0) {
+						location = request.remaining.poll();
+						if (location == null) {
+							break;
+						}
+					}
+				}
+				if (location != null) {
+					// nothing else under way, try it here
+					Resource r = request.runHere(location, errors);
+					if (r != null) {
+						return r;
+					}
+					continue;
+				}
+
+				Future<Resource> done = request.service.take();
+				synchronized (request) {
+					request.running--;
+				}
+				try {
+					Resource r = done.get();
+					if (r != null) {
+						return r;
+					}
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					errors.add((cause instanceof Exception) ? (Exception)cause
+							: new IOException(String.valueOf(cause)));
+					request.failed = true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			errors.add(new IOException("Interrupted fetching " + locations[0]));
+		} finally {
+			request.finish();
+		}
+
+		// an attempt may have succeeded just before giving up, if so use it
+		Object r = request.winner.get();
+		if (r instanceof Resource) {
+			return (Resource)r;
+		}
+		return null;
+	}
+
+	/**
+	 * The state of one call to fetch()
+	 */
+	private class Request {
+		final Fetch fetch;
+		final boolean stopOnError;
+		final long delay;
+		final Thread caller = Thread.currentThread();
+		final AtomicReference<Object> winner = new AtomicReference<Object>();
+		final CompletionService<Resource> service =
+			new ExecutorCompletionService<Resource>(getExecutor());
+
+		// guarded by this
+		final LinkedList<String> remaining = new LinkedList<String>();
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		// hedges submitted to the pool and not yet taken by the caller
+		int running = 0;
+		boolean callerBusy = false;
+		boolean callerInterrupted = false;
+
+		volatile boolean failed = false;
+
+		Request(String[] locations, Fetch fetch, boolean stopOnError) {
+			this.fetch = fetch;
+			this.stopOnError = stopOnError;
+			this.delay = getCurrentHedgeDelay();
+			remaining.addAll(Arrays.asList(locations));
+		}
+
+		/**
+		 * Try location on the calling thread.
+		 * @return the Resource if this attempt won
+		 */
+		Resource runHere(String location, List<Exception> errors) {
+			synchronized (this) {
+				callerBusy = true;
+			}
+			try {
+				return attempt(location);
+			} catch (IOException e) {
+				// if another attempt won, this one was interrupted for it
+				if (winner.get() == null) {
+					errors.add(e);
+					failed = true;
+				}
+				return null;
+			} finally {
+				synchronized (this) {
+					callerBusy = false;
+					if (callerInterrupted) {
+						callerInterrupted = false;
+						Thread.interrupted();
+					}
+				}
+			}
+		}
+
+		Resource attempt(String location) throws IOException {
+			if (winner.get() != null) {
+				return null;
+			}
+			scheduleHedge();
+			long start = System.currentTimeMillis();
+			Resource r = fetch.fetch(location);
+			if (r == null) {
+				return null;
+			}
+			addLatency(System.currentTimeMillis() - start);
+			if (!winner.compareAndSet(null, r)) {
+				// another replica was quicker
+				try {
+					r.close();
+				} catch (IOException e) {
+					LOGGER.warning(e.toString());
+				}
+				return null;
+			}
+			return r;
+		}
+
+		/**
+		 * Start the next location on the pool after the hedge delay, which
+		 * counts from the start of the attempt calling this.
+		 */
+		void scheduleHedge() {
+			synchronized (this) {
+				if (remaining.isEmpty() || (winner.get() != null)) {
+					return;
+				}
+				futures.add(getTimer().schedule(new Runnable() {
+					public void run() {
+						startHedge();
+					}
+				}, delay, TimeUnit.MILLISECONDS));
+			}
+		}
+
+		void startHedge() {
+			synchronized (this) {
+				if ((winner.get() != null) || (failed && stopOnError)) {
+					return;
+				}
+				final String location = remaining.poll();
+				if (location == null) {
+					return;
+				}
+				try {
+					futures.add(service.submit(new Callable<Resource>() {
+						public Resource call() throws IOException {
+							return hedge(location);
+						}
+					}));
+					running++;
+					LOGGER.fine("No response within " + delay
+							+ "ms, also trying " + location);
+				} catch (RejectedExecutionException e) {
+					// pool is full, leave it to the caller
+					remaining.addFirst(location);
+				}
+			}
+		}
+
+		Resource hedge(String location) throws IOException {
+			Resource r = null;
+			try {
+				r = attempt(location);
+			} catch (IOException e) {
+				failed = true;
+				startHedge();
+				throw e;
+			}
+			if (r == null) {
+				// failed or not present here, move on without waiting
+				startHedge();
+			} else {
+				synchronized (this) {
+					if (callerBusy && !callerInterrupted) {
+						callerInterrupted = true;
+						caller.interrupt();
+					}
+				}
+			}
+			return r;
+		}
+
+		void finish() {
+			winner.compareAndSet(null, ABANDONED);
+			synchronized (this) {
+				for (Future<?> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+	}
+
+	protected synchronized void addLatency(long millis) {
+		latencies[nextLatency] = millis;
+		nextLatency = (nextLatency + 1) % latencies.length;
+		if (numLatencies < latencies.length) {
+			numLatencies++;
+		}
+	}
+
+	/**
+	 * @return the number of milliseconds to wait for a response before
+	 * trying the next location
+	 */
+	public long getCurrentHedgeDelay() {
+		if (hedgePercentile <= 0) {
+			return hedgeDelay;
+		}
+		long[] sorted;
+		synchronized (this) {
+			if (numLatencies < MIN_SAMPLES) {
+				return hedgeDelay;
+			}
+			sorted = Arrays.copyOf(latencies, numLatencies);
+		}
+		Arrays.sort(sorted);
+		int index = (int)(((long)sorted.length * hedgePercentile) / 100);
+		long observed = sorted[Math.min(index, sorted.length - 1)];
+		return Math.max(hedgeDelay, observed);
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new DaemonThreadFactory("ReplicaFetcher-hedge"));
+		}
+		return executor;
+	}
+
+	private synchronized ScheduledThreadPoolExecutor getTimer() {
+		if (timer == null) {
+			timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("ReplicaFetcher-hedge-timer"));
+		}
+		return timer;
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	/**
+	 * @return the number of hedge attempts running at once
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads the number of hedge attempts running at once, across
+	 * all requests. First attempts run on the requesting thread, and do
+	 * not count.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return milliseconds to wait for a location before also trying the
+	 * next one
+	 */
+	public long getHedgeDelay() {
+		return hedgeDelay;
+	}
+
+	/**
+	 * @param hedgeDelay milliseconds to wait for a location before also
+	 * trying the next one. With hedgePercentile, the minimum wait.
+	 */
+	public void setHedgeDelay(long hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
+	/**
+	 * @return the percentile of recent fetch times used as hedge delay,
+	 * or 0 to always use hedgeDelay
+	 */
+	public int getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * @param hedgePercentile the percentile (1-99) of recent fetch times to
+	 * wait before trying the next location, eg. 95. 0 to always use
+	 * hedgeDelay.
+	 */
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * @param samples the number of recent fetch times hedgePercentile is
+	 * taken over
+	 */
+	public synchronized void setLatencySamples(int samples) {
+		latencies = new long[Math.max(samples, MIN_SAMPLES)];
+		numLatencies = 0;
+		nextLatency = 0;
+	}
+
+	public synchronized int getLatencySamples() {
+		return latencies.length;
+	}
+}
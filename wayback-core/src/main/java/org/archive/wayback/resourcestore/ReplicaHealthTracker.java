@@ -0,0 +1,351 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.archive.wayback.core.Resource;
+
+/**
+ * Tracks the health of storage endpoints across requests, so that replica
+ * paths can be tried best first, and endpoints that are known to be down
+ * are skipped.
+ *
+ * An endpoint is the first of endpointPrefixes a path starts with, else
+ * the scheme and host of a url, else the directory of a local path.
+ * For each endpoint a moving average (EWMA) of fetch time and of error
+ * rate is kept, and a circuit breaker: after failureThreshold failures in
+ * a row the endpoint is skipped for retryInterval milliseconds, after
+ * which a single request is let through to test it again. Fetches are
+ * recorded by making them through a Fetch wrapped by track().
+ *
+ * One tracker may be shared by several ResourceStores.
+ */
+public class ReplicaHealthTracker {
+	private static final Logger LOGGER =
+		Logger.getLogger(ReplicaHealthTracker.class.getName());
+
+	private double alpha = 0.2;
+	private int failureThreshold = 5;
+	private long retryInterval = 30000;
+	private long errorPenalty = 1000;
+	private List<String> endpointPrefixes = null;
+
+	private ConcurrentHashMap<String, Endpoint> endpoints =
+		new ConcurrentHashMap<String, Endpoint>();
+
+	/**
+	 * Health of one endpoint
+	 */
+	public class Endpoint {
+		private String name;
+		private double latency = 0;
+		private double errorRate = 0;
+		private boolean sampled = false;
+		private int consecutiveFailures = 0;
+		private long openUntil = 0;
+
+		Endpoint(String name) {
+			this.name = name;
+		}
+
+		synchronized void success(long millis) {
+			if (!sampled) {
+				latency = millis;
+				sampled = true;
+			} else {
+				latency += alpha * (millis - latency);
+			}
+			errorRate -= alpha * errorRate;
+			if (consecutiveFailures >= failureThreshold) {
+				LOGGER.info("Storage endpoint " + name + " recovered");
+			}
+			consecutiveFailures = 0;
+			openUntil = 0;
+		}
+
+		synchronized void failure(long now) {
+			errorRate += alpha * (1 - errorRate);
+			if (++consecutiveFailures >= failureThreshold) {
+				if (consecutiveFailures == failureThreshold) {
+					LOGGER.warning("Storage endpoint " + name + " failed "
+							+ failureThreshold + " times, skipping for "
+							+ retryInterval + "ms");
+				}
+				openUntil = now + retryInterval;
+			}
+		}
+
+		/**
+		 * @return false while the circuit is open. Once retryInterval has
+		 * passed, true until a test request is started.
+		 */
+		synchronized boolean isAvailable(long now) {
+			return (consecutiveFailures < failureThreshold) || (now >= openUntil);
+		}
+
+		/**
+		 * Note that a request is starting. If the circuit is open, this is
+		 * the test request, and others are held off for retryInterval.
+		 */
+		synchronized void started(long now) {
+			if ((consecutiveFailures >= failureThreshold) && (now >= openUntil)) {
+				openUntil = now + retryInterval;
+			}
+		}
+
+		synchronized double getScore() {
+			return latency + (errorRate * errorPenalty);
+		}
+
+		public synchronized double getLatency() {
+			return latency;
+		}
+
+		public synchronized double getErrorRate() {
+			return errorRate;
+		}
+
+		public synchronized boolean isOpen() {
+			return (consecutiveFailures >= failureThreshold);
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * @param path a replica path or url
+	 * @return the name of the endpoint serving path
+	 */
+	public String getEndpointName(String path) {
+		if (endpointPrefixes != null) {
+			for (String prefix : endpointPrefixes) {
+				if (path.startsWith(prefix)) {
+					return prefix;
+				}
+			}
+		}
+		int scheme = path.indexOf("://");
+		if (scheme >= 0) {
+			int end = path.indexOf('/', scheme + 3);
+			return (end < 0) ? path : path.substring(0, end);
+		}
+		int end = path.lastIndexOf('/');
+		return (end < 0) ? "" : path.substring(0, end + 1);
+	}
+
+	/**
+	 * @param path a replica path or url
+	 * @return the health of the endpoint serving path
+	 */
+	public Endpoint getEndpoint(String path) {
+		String name = getEndpointName(path);
+		Endpoint endpoint = endpoints.get(name);
+		if (endpoint == null) {
+			endpoint = new Endpoint(name);
+			Endpoint existing = endpoints.putIfAbsent(name, endpoint);
+			if (existing != null) {
+				endpoint = existing;
+			}
+		}
+		return endpoint;
+	}
+
+	/**
+	 * Wrap fetch to record the time taken or failure of each fetch against
+	 * the endpoint of its path. A fetch interrupted because another
+	 * replica answered first is not counted as a failure.
+	 *
+	 * @param fetch loads the resource from a path
+	 * @return fetch, tracked
+	 */
+	public ReplicaFetcher.Fetch track(final ReplicaFetcher.Fetch fetch) {
+		return new ReplicaFetcher.Fetch() {
+			public Resource fetch(String path) throws IOException {
+				Endpoint endpoint = getEndpoint(path);
+				long start = System.currentTimeMillis();
+				endpoint.started(start);
+				boolean success = false;
+				try {
+					Resource r = fetch.fetch(path);
+					success = true;
+					endpoint.success(System.currentTimeMillis() - start);
+					return r;
+				} finally {
+					if (!success && !Thread.currentThread().isInterrupted()) {
+						endpoint.failure(System.currentTimeMillis());
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Record a successful fetch from path
+	 * @param path the replica path or url
+	 * @param millis time taken to fetch the headers
+	 */
+	public void success(String path, long millis) {
+		getEndpoint(path).success(millis);
+	}
+
+	/**
+	 * Record a failed fetch from path
+	 * @param path the replica path or url
+	 */
+	public void failure(String path) {
+		getEndpoint(path).failure(System.currentTimeMillis());
+	}
+
+	/**
+	 * Order replica paths best first, by the latency and error rate of
+	 * their endpoints, keeping the given order between equals. Paths on
+	 * endpoints with an open circuit are left out, unless that would
+	 * leave none. Ordering does not start a test request on an endpoint,
+	 * only a tracked fetch does.
+	 *
+	 * @param paths replica paths or urls, in order of preference
+	 * @return the paths to try, in order
+	 */
+	public String[] order(String[] paths) {
+		if (paths.length == 0) {
+			return paths;
+		}
+
+		long now = System.currentTimeMillis();
+		final List<String> allowed = new ArrayList<String>(paths.length);
+		final List<Double> scores = new ArrayList<Double>(paths.length);
+
+		for (String path : paths) {
+			Endpoint endpoint = getEndpoint(path);
+			if (endpoint.isAvailable(now)) {
+				allowed.add(path);
+				scores.add(endpoint.getScore());
+			}
+		}
+
+		if (allowed.isEmpty()) {
+			return paths;
+		}
+
+		Integer[] indexes = new Integer[allowed.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = i;
+		}
+		// stable, so the original order decides between equal endpoints
+		Arrays.sort(indexes, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(scores.get(a), scores.get(b));
+			}
+		});
+
+		String[] ordered = new String[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			ordered[i] = allowed.get(indexes[i]);
+		}
+		return ordered;
+	}
+
+	/**
+	 * @return the weight (0-1) of each new sample in the moving averages
+	 */
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * @param alpha the weight (0-1) of each new sample in the moving
+	 * averages of latency and error rate
+	 */
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+
+	/**
+	 * @return the number of failures in a row after which an endpoint
+	 * is skipped
+	 */
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * @param failureThreshold the number of failures in a row after which
+	 * an endpoint is skipped
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * @return milliseconds to skip a failed endpoint before testing it
+	 * again
+	 */
+	public long getRetryInterval() {
+		return retryInterval;
+	}
+
+	/**
+	 * @param retryInterval milliseconds to skip a failed endpoint before
+	 * testing it again
+	 */
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = retryInterval;
+	}
+
+	/**
+	 * @return milliseconds of latency an error rate of 1 counts as, when
+	 * ordering endpoints
+	 */
+	public long getErrorPenalty() {
+		return errorPenalty;
+	}
+
+	/**
+	 * @param errorPenalty milliseconds of latency an error rate of 1
+	 * counts as, when ordering endpoints
+	 */
+	public void setErrorPenalty(long errorPenalty) {
+		this.errorPenalty = errorPenalty;
+	}
+
+	/**
+	 * @return explicit endpoint prefixes, or null
+	 */
+	public List<String> getEndpointPrefixes() {
+		return endpointPrefixes;
+	}
+
+	/**
+	 * @param endpointPrefixes path prefixes to track as endpoints, eg. the
+	 * prefix of a PrefixLookup, or the prefixPath of a PathIndex
+	 */
+	public void setEndpointPrefixes(List<String> endpointPrefixes) {
+		this.endpointPrefixes = endpointPrefixes;
+	}
+}
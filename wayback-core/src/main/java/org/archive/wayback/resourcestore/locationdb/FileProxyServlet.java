@@ -28,6 +28,9 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -307,11 +310,19 @@ public class FileProxyServlet extends AbstractRequestHandler {
 			return contentType;
 		}
 		public void copyTo(OutputStream os) throws IOException {
-			byte[] buffer = new byte[BUF_SIZE];
 			try {
-				int r = -1;
-				while((r = raf.read(buffer, 0, BUF_SIZE)) != -1) {
-					os.write(buffer, 0, r);
+				// let the channel move the bytes, without a user space copy
+				// where the platform allows
+				FileChannel channel = raf.getChannel();
+				WritableByteChannel out = Channels.newChannel(os);
+				long position = raf.getFilePointer();
+				long end = channel.size();
+				while(position < end) {
+					long sent = channel.transferTo(position, end - position, out);
+					if(sent <= 0) {
+						break;
+					}
+					position += sent;
 				}
 			} finally {
 				raf.close();
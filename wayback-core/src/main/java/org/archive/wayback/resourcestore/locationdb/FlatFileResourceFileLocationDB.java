@@ -25,6 +25,8 @@ import java.util.Iterator;
 import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.resourcestore.NegativeLookupCache;
+import org.archive.wayback.resourcestore.PathIndexTable;
 import org.archive.wayback.util.flatfile.FlatFile;
 
 public class FlatFileResourceFileLocationDB implements ResourceFileLocationDB  {
@@ -33,6 +35,13 @@ public class FlatFileResourceFileLocationDB implements ResourceFileLocationDB  {
 	private String path = null;
 	private FlatFile flatFile = null;
 	private String delimiter = "\t";
+	private boolean inMemory = false;
+	private boolean offHeap = false;
+	private long checkInterval = 10000;
+	private PathIndexTable table = null;
+	private int negativeCacheSize = 0;
+	private long negativeCacheTTL = 60000;
+	private NegativeLookupCache negativeCache = null;
 
         /**
          * This method currently does nothing.
@@ -76,6 +85,16 @@ public class FlatFileResourceFileLocationDB implements ResourceFileLocationDB  {
         @SuppressWarnings("unchecked")
         @Override
 	public String[] nameToUrls(String name) throws IOException {
+		if(inMemory) {
+			String[] urls = getTable().lookup(name);
+			if(urls.length == 0) {
+				LOGGER.info("No locations for " + name + " in " + path);
+			}
+			return urls;
+		}
+		if((negativeCacheSize > 0) && getNegativeCache().isMissing(name)) {
+			return new String[0];
+		}
 		ArrayList<String> urls = new ArrayList<String>();
 		String prefix = name + delimiter;
 		Iterator<String> itr = flatFile.getRecordIterator(prefix);
@@ -93,6 +112,9 @@ public class FlatFileResourceFileLocationDB implements ResourceFileLocationDB  {
 		}
 		if(urls.size() == 0) {
 			LOGGER.info("No locations for " + name + " in " + path);
+			if(negativeCacheSize > 0) {
+				getNegativeCache().addMissing(name);
+			}
 		}
 		String[] a = new String[urls.size()];
 		for(int i=0; i < urls.size(); i++) {
@@ -121,6 +143,22 @@ public class FlatFileResourceFileLocationDB implements ResourceFileLocationDB  {
 		// NO-OP
 	}
 
+	private synchronized PathIndexTable getTable() throws IOException {
+		if(table == null) {
+			table = new PathIndexTable(path, delimiter, offHeap);
+			table.setCheckInterval(checkInterval);
+		}
+		return table;
+	}
+
+	private synchronized NegativeLookupCache getNegativeCache() {
+		if(negativeCache == null) {
+			negativeCache = new NegativeLookupCache(negativeCacheSize,
+					negativeCacheTTL);
+		}
+		return negativeCache;
+	}
+
 	/**
 	 * @param path the path to set
 	 */
@@ -149,4 +187,77 @@ public class FlatFileResourceFileLocationDB implements ResourceFileLocationDB  {
 	public String getDelimiter() {
 		return delimiter;
 	}
+
+	/**
+	 * @return true if the whole file is loaded into memory
+	 */
+	public boolean isInMemory() {
+		return inMemory;
+	}
+
+	/**
+	 * @param inMemory if true, load the whole file into a PathIndexTable
+	 * on first use, rather than searching the file for each lookup
+	 */
+	public void setInMemory(boolean inMemory) {
+		this.inMemory = inMemory;
+	}
+
+	/**
+	 * @return true if the loaded file is kept off the heap
+	 */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * @param offHeap with inMemory, keep the loaded file off the heap
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * @return milliseconds between checks of the file for changes
+	 */
+	public long getCheckInterval() {
+		return checkInterval;
+	}
+
+	/**
+	 * @param checkInterval with inMemory, milliseconds between checks of
+	 * the file for changes
+	 */
+	public void setCheckInterval(long checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * @return number of names not found to remember
+	 */
+	public int getNegativeCacheSize() {
+		return negativeCacheSize;
+	}
+
+	/**
+	 * @param negativeCacheSize number of names not found in the file to
+	 * remember, 0 for none. Not needed with inMemory.
+	 */
+	public void setNegativeCacheSize(int negativeCacheSize) {
+		this.negativeCacheSize = negativeCacheSize;
+	}
+
+	/**
+	 * @return milliseconds to remember a name not found
+	 */
+	public long getNegativeCacheTTL() {
+		return negativeCacheTTL;
+	}
+
+	/**
+	 * @param negativeCacheTTL milliseconds to remember a name not found
+	 */
+	public void setNegativeCacheTTL(long negativeCacheTTL) {
+		this.negativeCacheTTL = negativeCacheTTL;
+	}
 }
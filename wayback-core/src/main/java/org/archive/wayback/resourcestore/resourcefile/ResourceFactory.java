@@ -177,6 +177,9 @@ public class ResourceFactory {
 
 			ArchiveReader reader = WARCReaderFactory.get(fPath, is, false);
 			r = WARCArchiveRecordToResource(reader.get(), reader);
+			if (name.endsWith(ArcWarcFilenameFilter.WARC_SUFFIX)) {
+				((WarcResource) r).setLocalFile(file, offset);
+			}
 
 		} else {
 			is.close();
@@ -19,7 +19,9 @@
  */
 package org.archive.wayback.resourcestore.resourcefile;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.HashMap;
@@ -41,12 +43,20 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.replay.HttpHeaderOperation;
 
 public class WarcResource extends Resource {
+	private final static int MAX_HEADER_BLOCK = 8 * 1024;
+
 	private WARCRecord rec = null;
 	private ArchiveReader reader = null;
 	private Map<String, String> headers = null;
 	private long length = 0;
 	private int status = 0;
 	private boolean parsedHeaders = false;
+	// record content left after the HTTP headers, -1 if unknown or chunked
+	private long payloadAvailable = -1;
+	private File localFile = null;
+	private long localRecordOffset = -1;
+	// found on first use, -1 if not found
+	private long localContentOffset = -2;
 	public WarcResource(WARCRecord rec, ArchiveReader reader) {
 		this.rec = rec;
 		this.reader = reader;
@@ -108,6 +118,8 @@ public class WarcResource extends Resource {
 
 		    Header[] tmpHeaders = LaxHttpParser.parseHeaders(rec,
 		            ARCConstants.DEFAULT_ENCODING);
+		    // before setChunkedEncoding() peeks at the payload
+		    payloadAvailable = rec.available();
 		    headers = new Hashtable<String,String>();
 		    this.setInputStream(rec);
 		    for(Header header: tmpHeaders) {
@@ -116,6 +128,7 @@ public class WarcResource extends Resource {
 		                HttpHeaderOperation.HTTP_TRANSFER_ENC_HEADER)) {
 		            if(header.getValue().toUpperCase().contains(
 		                    HttpHeaderOperation.HTTP_CHUNKED_ENCODING_HEADER)) {
+		                payloadAvailable = -1;
 		                setChunkedEncoding();
 		            }
 		        }
@@ -138,6 +151,7 @@ public class WarcResource extends Resource {
 		            //
 		        }
 		    }
+		    payloadAvailable = rec.available();
 		    setInputStream(rec);
 		}
 		parsedHeaders = true;
@@ -161,6 +175,81 @@ public class WarcResource extends Resource {
 		return length;
 	}
 
+	/**
+	 * Note that this record was read from an uncompressed local file, so
+	 * its payload can be sent straight from the file.
+	 * @param file the WARC file
+	 * @param recordOffset offset in file of the record
+	 */
+	public void setLocalFile(File file, long recordOffset) {
+		this.localFile = file;
+		this.localRecordOffset = recordOffset;
+	}
+
+	/**
+	 * @return the local file the record was read from, or null
+	 */
+	public File getLocalFile() {
+		return localFile;
+	}
+
+	/**
+	 * @return the offset in getLocalFile() of the HTTP payload, or -1 if
+	 * the payload cannot be sent straight from the file: not a local
+	 * uncompressed record, chunked, or some of it already read
+	 * @throws IOException
+	 */
+	public long getLocalPayloadOffset() throws IOException {
+		if ((localFile == null) || (payloadAvailable <= 0)
+				|| (payloadAvailable == Integer.MAX_VALUE)
+				|| (rec.available() != payloadAvailable)) {
+			return -1;
+		}
+		if (localContentOffset == -2) {
+			localContentOffset = findContentOffset(localFile, localRecordOffset);
+		}
+		if (localContentOffset < 0) {
+			return -1;
+		}
+		return localContentOffset + getRecordLength() - payloadAvailable;
+	}
+
+	/**
+	 * @return offset of the end of the blank line ending the header block
+	 * of the uncompressed record at offset in file, or -1 if not found
+	 * within MAX_HEADER_BLOCK bytes
+	 */
+	private static long findContentOffset(File file, long offset)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte[] buf = new byte[MAX_HEADER_BLOCK];
+			raf.seek(offset);
+			int len = 0;
+			for (int r; (len < buf.length)
+					&& ((r = raf.read(buf, len, buf.length - len)) > 0);) {
+				len += r;
+			}
+			for (int i = 3; i < len; i++) {
+				if ((buf[i] == '\n') && (buf[i - 1] == '\r')
+						&& (buf[i - 2] == '\n') && (buf[i - 3] == '\r')) {
+					return offset + i + 1;
+				}
+			}
+			return -1;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the length of the HTTP payload, as given by
+	 * getLocalPayloadOffset(), or -1
+	 */
+	public long getLocalPayloadLength() {
+		return payloadAvailable;
+	}
+
 	@Override
 	public int getStatusCode() {
 		return status;
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
@@ -32,6 +33,11 @@ import org.archive.util.iterator.CloseableIterator;
 /**
  * Composite of multiple Iterators that returns the next from a series of
  * all component Iterators based on Comparator constructor argument.
+ * 
+ * Components are merged through a heap keyed on their next element, so each
+ * element costs O(log k) comparisons for k components. When several
+ * components have equal next elements, the one added first is returned
+ * first.
  *
  * @author brad
  * @version $Date$, $Revision$
@@ -42,6 +48,11 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 	private final static Logger LOGGER = Logger.getLogger(CompositeSortedIterator.class.getName());
 	
 	private ArrayList<PeekableIterator<E>> components;
+	/* components added, but not yet placed in the heap */
+	private ArrayList<Component<E>> pending;
+	private PriorityQueue<Component<E>> heap;
+	/* component which supplied next, to be returned to the heap */
+	private Component<E> lastSource;
 	private E next;
 	private Comparator<E> comparator;
 	
@@ -51,13 +62,28 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 	public CompositeSortedIterator(Comparator<E> comparator) {
 		this.comparator = comparator;
 		components = new ArrayList<PeekableIterator<E>>();
+		pending = new ArrayList<Component<E>>();
+		heap = new PriorityQueue<Component<E>>(11,
+				new ComponentComparator<E>(comparator));
+		lastSource = null;
 		next = null;
 	}
 	/**
 	 * @param itr Iterator which is a component of this composite
 	 */
 	public void addComponent(Iterator<E> itr) {
-		components.add(new PeekableIterator<E>(itr));	
+		PeekableIterator<E> pi = new PeekableIterator<E>(itr);
+		pending.add(new Component<E>(pi, components.size()));
+		components.add(pi);
+	}
+	
+	private void enqueue(Component<E> component) {
+		if(component.itr.hasNext()) {
+			component.head = component.itr.peekNext();
+			if(component.head != null) {
+				heap.add(component);
+			}
+		}
 	}
 	/* (non-Javadoc)
 	 * @see java.util.Iterator#hasNext()
@@ -66,20 +92,23 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 		if(next != null) {
 			return true;
 		}
-		// find lowest next:
-		PeekableIterator<E> nextSource = null;
-		for(int i = 0; i < components.size(); i++) {
-			PeekableIterator<E> pi = components.get(i);
-			if(pi.hasNext()) {
-				E piNext = pi.peekNext();
-				if((next == null) || (comparator.compare(next,piNext) > 0)) {
-					nextSource = pi;
-					next = piNext;
-				}
+		if(lastSource != null) {
+			enqueue(lastSource);
+			lastSource = null;
+		}
+		if(!pending.isEmpty()) {
+			for(Component<E> component : pending) {
+				enqueue(component);
 			}
+			pending.clear();
 		}
+		// find lowest next:
+		Component<E> nextSource = heap.poll();
 		if(nextSource != null) {
-			nextSource.next();
+			next = nextSource.head;
+			nextSource.head = null;
+			nextSource.itr.next();
+			lastSource = nextSource;
 		}
 		return next != null;
 	}
@@ -116,4 +145,30 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 			}
 		}
 	}
+
+	private static class Component<E> {
+		PeekableIterator<E> itr;
+		int order;
+		E head;
+		Component(PeekableIterator<E> itr, int order) {
+			this.itr = itr;
+			this.order = order;
+		}
+	}
+
+	private static class ComponentComparator<E> 
+		implements Comparator<Component<E>> {
+		private Comparator<E> comparator;
+		ComponentComparator(Comparator<E> comparator) {
+			this.comparator = comparator;
+		}
+		public int compare(Component<E> o1, Component<E> o2) {
+			int cmp = comparator.compare(o1.head, o2.head);
+			if(cmp != 0) {
+				return cmp;
+			}
+			// preserve insertion order for equal elements:
+			return o1.order < o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+		}
+	}
 }
@@ -0,0 +1,225 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe LRU cache bounded by the total weight of its values, rather
+ * than by the number of entries.
+ *
+ * Keys are spread over several independently locked segments, each an
+ * access-ordered LinkedHashMap holding an equal share of the total weight,
+ * so concurrent readers rarely contend. Hit, miss and eviction counts are
+ * kept for monitoring.
+ *
+ * @version $Date$, $Revision$
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ConcurrentLRUCache<K,V> {
+	private final static int DEFAULT_SEGMENTS = 16;
+
+	private Segment<K,V>[] segments;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxWeight the maximum total weight of all values in the cache
+	 */
+	public ConcurrentLRUCache(long maxWeight) {
+		this(maxWeight, DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * @param maxWeight the maximum total weight of all values in the cache
+	 * @param numSegments number of independently locked segments
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentLRUCache(long maxWeight, int numSegments) {
+		numSegments = Math.max(1, numSegments);
+		segments = new Segment[numSegments];
+		long segmentWeight = Math.max(1, maxWeight / numSegments);
+		for(int i = 0; i < numSegments; i++) {
+			segments[i] = new Segment<K,V>(segmentWeight);
+		}
+	}
+
+	private Segment<K,V> segmentFor(Object key) {
+		int h = key.hashCode();
+		// spread bits, as HashMap does:
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+
+	/**
+	 * @param key to look up
+	 * @return the cached value for key, or null if not present
+	 */
+	public V get(K key) {
+		Segment<K,V> segment = segmentFor(key);
+		Weighted<V> w;
+		synchronized(segment) {
+			w = segment.map.get(key);
+		}
+		if(w == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return w.value;
+	}
+
+	/**
+	 * @param key to look up
+	 * @return true if key is cached. Does not affect recency or statistics.
+	 */
+	public boolean containsKey(K key) {
+		Segment<K,V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.map.containsKey(key);
+		}
+	}
+
+	/**
+	 * Add or replace the value for key, evicting least recently used entries
+	 * as needed. Values heavier than a whole segment are not cached.
+	 * @param key to store
+	 * @param value to store
+	 * @param weight of value, typically its approximate size in bytes
+	 */
+	public void put(K key, V value, long weight) {
+		Segment<K,V> segment = segmentFor(key);
+		if(weight > segment.maxWeight) {
+			return;
+		}
+		synchronized(segment) {
+			Weighted<V> old = segment.map.put(key, new Weighted<V>(value, weight));
+			if(old != null) {
+				segment.weight -= old.weight;
+			}
+			segment.weight += weight;
+			Iterator<Map.Entry<K,Weighted<V>>> itr =
+				segment.map.entrySet().iterator();
+			while((segment.weight > segment.maxWeight) && itr.hasNext()) {
+				Map.Entry<K,Weighted<V>> eldest = itr.next();
+				segment.weight -= eldest.getValue().weight;
+				itr.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @param key to remove
+	 */
+	public void remove(K key) {
+		Segment<K,V> segment = segmentFor(key);
+		synchronized(segment) {
+			Weighted<V> old = segment.map.remove(key);
+			if(old != null) {
+				segment.weight -= old.weight;
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		for(Segment<K,V> segment : segments) {
+			synchronized(segment) {
+				segment.map.clear();
+				segment.weight = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return number of entries currently cached
+	 */
+	public int size() {
+		int size = 0;
+		for(Segment<K,V> segment : segments) {
+			synchronized(segment) {
+				size += segment.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return total weight of entries currently cached
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for(Segment<K,V> segment : segments) {
+			synchronized(segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * @return number of get() calls which found a value
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of get() calls which found no value
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of entries evicted to make room for others
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private static class Weighted<V> {
+		V value;
+		long weight;
+		Weighted(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private static class Segment<K,V> {
+		LinkedHashMap<K,Weighted<V>> map =
+			new LinkedHashMap<K,Weighted<V>>(16, 0.75f, true);
+		long maxWeight;
+		long weight = 0;
+		Segment(long maxWeight) {
+			this.maxWeight = maxWeight;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory for background pools which should neither keep the JVM
+ * alive nor need an explicit shutdown. Threads are named with the given
+ * prefix, a pool number and a thread number.
+ *
+ * @version $Date$, $Revision$
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+	private final static AtomicInteger poolNumber = new AtomicInteger();
+	private final String prefix;
+	private final AtomicInteger threadNumber = new AtomicInteger();
+
+	/**
+	 * @param name prefix for the names of threads created
+	 */
+	public DaemonThreadFactory(String name) {
+		prefix = name + "-" + poolNumber.incrementAndGet() + "-";
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of raw (nowrap) Inflaters and their input buffers, so that
+ * decompressing a record or index block does not allocate a new Inflater,
+ * with its native zlib state, and a new buffer each time.
+ *
+ * At most maxIdle of each are kept; any beyond that are released (an
+ * Inflater is ended) when returned. Objects that are never returned are
+ * simply garbage collected.
+ *
+ * PooledGZIPInputStream uses the default pool, which can be configured by
+ * declaring a DefaultInflaterPool bean, eg:
+ *
+ * <pre>
+ * &lt;bean class="org.archive.wayback.util.InflaterPool$DefaultInflaterPool"&gt;
+ *   &lt;property name="maxIdle" value="128" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @see PooledGZIPInputStream
+ */
+public class InflaterPool {
+	/** size of pooled buffers */
+	public final static int BUFFER_SIZE = 16 * 1024;
+
+	private static InflaterPool defaultPool = new InflaterPool();
+
+	/**
+	 * An InflaterPool which, once created, is the default pool
+	 */
+	static public class DefaultInflaterPool extends InflaterPool {
+		public DefaultInflaterPool() {
+			super();
+			defaultPool = this;
+		}
+	}
+
+	/**
+	 * @return the pool used by PooledGZIPInputStream by default
+	 */
+	public static InflaterPool getDefault() {
+		return defaultPool;
+	}
+
+	private int maxIdle = 64;
+
+	private final ConcurrentLinkedQueue<Inflater> inflaters =
+		new ConcurrentLinkedQueue<Inflater>();
+	private final AtomicInteger idleInflaters = new AtomicInteger();
+
+	private final ConcurrentLinkedQueue<byte[]> buffers =
+		new ConcurrentLinkedQueue<byte[]>();
+	private final AtomicInteger idleBuffers = new AtomicInteger();
+
+	/**
+	 * @return a reset Inflater for raw deflate data, to be given back with
+	 * releaseInflater()
+	 */
+	public Inflater getInflater() {
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			return new Inflater(true);
+		}
+		idleInflaters.decrementAndGet();
+		return inflater;
+	}
+
+	/**
+	 * @param inflater no longer used by the caller
+	 */
+	public void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		if (idleInflaters.incrementAndGet() > maxIdle) {
+			idleInflaters.decrementAndGet();
+			inflater.end();
+			return;
+		}
+		inflaters.offer(inflater);
+	}
+
+	/**
+	 * @return a buffer of BUFFER_SIZE bytes, to be given back with
+	 * releaseBuffer()
+	 */
+	public byte[] getBuffer() {
+		byte[] buffer = buffers.poll();
+		if (buffer == null) {
+			return new byte[BUFFER_SIZE];
+		}
+		idleBuffers.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * @param buffer no longer used by the caller
+	 */
+	public void releaseBuffer(byte[] buffer) {
+		if ((buffer.length != BUFFER_SIZE)
+				|| (idleBuffers.incrementAndGet() > maxIdle)) {
+			if (buffer.length == BUFFER_SIZE) {
+				idleBuffers.decrementAndGet();
+			}
+			return;
+		}
+		buffers.offer(buffer);
+	}
+
+	/**
+	 * @return the most idle Inflaters, and buffers, kept
+	 */
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * @param maxIdle the most idle Inflaters, and buffers, to keep
+	 */
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+}
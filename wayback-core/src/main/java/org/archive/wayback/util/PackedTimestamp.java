@@ -0,0 +1,139 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+/**
+ * Integer arithmetic on 14-digit yyyyMMddHHmmss capture timestamps, so
+ * per-capture date comparisons need neither a Date, a Calendar nor a
+ * DateFormat.
+ * 
+ * A timestamp may be held "packed" as the long with the same decimal digits
+ * (20100102030405L), which sorts in date order, or as milliseconds since the
+ * epoch (UTC), which supports date differences.
+ */
+public class PackedTimestamp {
+	
+	/**
+	 * Returned by conversions given anything other than a valid 14-digit
+	 * timestamp
+	 */
+	public final static long INVALID = Long.MIN_VALUE;
+	
+	public final static int DIGITS = 14;
+	
+	private final static long MS_PER_DAY = 24L * 60 * 60 * 1000;
+	
+	private final static int[] DAYS_IN_MONTH = 
+		{31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+	/**
+	 * @param timestamp 14-digit timestamp
+	 * @return timestamp as a packed long, or INVALID if it is not 14 digits
+	 */
+	public static long pack(String timestamp) {
+		if ((timestamp == null) || (timestamp.length() != DIGITS)) {
+			return INVALID;
+		}
+		long packed = 0;
+		for (int i = 0; i < DIGITS; i++) {
+			char c = timestamp.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return INVALID;
+			}
+			packed = (packed * 10) + (c - '0');
+		}
+		return packed;
+	}
+	
+	/**
+	 * @param packed packed timestamp
+	 * @return 14-digit timestamp String
+	 */
+	public static String unpack(long packed) {
+		char[] digits = new char[DIGITS];
+		for (int i = DIGITS - 1; i >= 0; i--) {
+			digits[i] = (char) ('0' + (packed % 10));
+			packed /= 10;
+		}
+		return new String(digits);
+	}
+
+	/**
+	 * @param packed packed timestamp
+	 * @return milliseconds since the epoch, or INVALID if any component is
+	 * out of range
+	 */
+	public static long packedToEpochMillis(long packed) {
+		if ((packed < 0) || (packed > 99991231235959L)) {
+			return INVALID;
+		}
+		int second = (int) (packed % 100);
+		int minute = (int) ((packed / 100) % 100);
+		int hour = (int) ((packed / 10000) % 100);
+		int day = (int) ((packed / 1000000) % 100);
+		int month = (int) ((packed / 100000000) % 100);
+		int year = (int) (packed / 10000000000L);
+		if ((month < 1) || (month > 12) || (day < 1)
+				|| (day > DAYS_IN_MONTH[month - 1]) || (hour > 23)
+				|| (minute > 59) || (second > 59)) {
+			return INVALID;
+		}
+		if ((month == 2) && (day == 29) && !isLeapYear(year)) {
+			return INVALID;
+		}
+		return (daysFromCivil(year, month, day) * MS_PER_DAY)
+			+ (((hour * 60L + minute) * 60L + second) * 1000L);
+	}
+
+	/**
+	 * @param timestamp 14-digit timestamp
+	 * @return milliseconds since the epoch, or INVALID if timestamp is not a
+	 * valid 14-digit timestamp
+	 */
+	public static long toEpochMillis(String timestamp) {
+		long packed = pack(timestamp);
+		return (packed == INVALID) ? INVALID : packedToEpochMillis(packed);
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		if (((x % y) != 0) && ((x < 0) != (y < 0))) {
+			q--;
+		}
+		return q;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+	}
+
+	/**
+	 * @return days since 1970-01-01 of the proleptic Gregorian date, after
+	 * Howard Hinnant's days_from_civil
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = (month <= 2) ? year - 1 : year;
+		long era = floorDiv(y, 400);
+		long yoe = y - era * 400;
+		long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * GZIP decoding InputStream, like java.util.zip.GZIPInputStream, including
+ * concatenated members, but using an Inflater and buffer from an
+ * {@link InflaterPool}, by default InflaterPool.getDefault(). They are
+ * given back to the pool as soon as the end of the last member is read,
+ * or on close(), whichever is first.
+ */
+public class PooledGZIPInputStream extends InflaterInputStream {
+	private final static int GZIP_MAGIC = 0x8b1f;
+
+	private final static int FHCRC = 2;
+	private final static int FEXTRA = 4;
+	private final static int FNAME = 8;
+	private final static int FCOMMENT = 16;
+
+	private final InflaterPool pool;
+	private CRC32 crc = new CRC32();
+	private boolean eos = false;
+	private boolean closed = false;
+	private boolean released = false;
+
+	/**
+	 * @param in the gzipped data
+	 * @throws IOException if the gzip header is missing or corrupt
+	 */
+	public PooledGZIPInputStream(InputStream in) throws IOException {
+		this(in, InflaterPool.getDefault());
+	}
+
+	/**
+	 * @param in the gzipped data
+	 * @param pool the pool to borrow an Inflater and buffer from
+	 * @throws IOException if the gzip header is missing or corrupt
+	 */
+	public PooledGZIPInputStream(InputStream in, InflaterPool pool)
+			throws IOException {
+		super(in, pool.getInflater(), 1);
+		this.pool = pool;
+		buf = pool.getBuffer();
+		try {
+			readHeader(in);
+		} catch (IOException e) {
+			release();
+			throw e;
+		}
+	}
+
+	private void release() {
+		if (!released) {
+			released = true;
+			pool.releaseInflater(inf);
+			pool.releaseBuffer(buf);
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (eos) {
+			return -1;
+		}
+		int n = super.read(b, off, len);
+		if (n == -1) {
+			if (readTrailer()) {
+				eos = true;
+				release();
+			} else {
+				return read(b, off, len);
+			}
+		} else {
+			crc.update(b, off, n);
+		}
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		return eos ? 0 : super.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			release();
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the number of header bytes read
+	 */
+	private int readHeader(InputStream source) throws IOException {
+		CheckedInputStream in = new CheckedInputStream(source, crc);
+		crc.reset();
+		if (readUShort(in) != GZIP_MAGIC) {
+			throw new ZipException("Not in GZIP format");
+		}
+		if (readUByte(in) != 8) {
+			throw new ZipException("Unsupported compression method");
+		}
+		int flags = readUByte(in);
+		skipBytes(in, 6);
+		int n = 2 + 2 + 6;
+		if ((flags & FEXTRA) == FEXTRA) {
+			int m = readUShort(in);
+			skipBytes(in, m);
+			n += m + 2;
+		}
+		if ((flags & FNAME) == FNAME) {
+			do {
+				n++;
+			} while (readUByte(in) != 0);
+		}
+		if ((flags & FCOMMENT) == FCOMMENT) {
+			do {
+				n++;
+			} while (readUByte(in) != 0);
+		}
+		if ((flags & FHCRC) == FHCRC) {
+			int v = (int)crc.getValue() & 0xffff;
+			if (readUShort(in) != v) {
+				throw new ZipException("Corrupt GZIP header");
+			}
+			n += 2;
+		}
+		crc.reset();
+		return n;
+	}
+
+	/**
+	 * @return true if this was the last member
+	 */
+	private boolean readTrailer() throws IOException {
+		InputStream in = this.in;
+		int n = inf.getRemaining();
+		if (n > 0) {
+			in = new SequenceInputStream(
+					new ByteArrayInputStream(buf, len - n, n),
+					new FilterInputStream(in) {
+						public void close() throws IOException {}
+					});
+		}
+		if ((readUInt(in) != crc.getValue())
+				|| (readUInt(in) != (inf.getTotalOut() & 0xffffffffL))) {
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+		// another member follows if there is more input
+		if ((this.in.available() > 0) || (n > 26)) {
+			int m = 8;
+			try {
+				m += readHeader(in);
+			} catch (IOException e) {
+				// trailing garbage, not another member
+				return true;
+			}
+			inf.reset();
+			if (n > m) {
+				inf.setInput(buf, len - n + m, n - m);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private long readUInt(InputStream in) throws IOException {
+		long s = readUShort(in);
+		return ((long)readUShort(in) << 16) | s;
+	}
+
+	private int readUShort(InputStream in) throws IOException {
+		int b = readUByte(in);
+		return (readUByte(in) << 8) | b;
+	}
+
+	private int readUByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	private void skipBytes(InputStream in, int n) throws IOException {
+		while (n > 0) {
+			if (in.read() == -1) {
+				throw new EOFException();
+			}
+			n--;
+		}
+	}
+}
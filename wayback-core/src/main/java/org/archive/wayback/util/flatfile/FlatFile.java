@@ -29,6 +29,7 @@ import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.util.ByteOp;
@@ -43,10 +44,18 @@ import org.archive.wayback.util.CompositeSortedIterator;
  * @version $Date$, $Revision$
  */
 public class FlatFile {
+	private static final Logger LOGGER =
+		Logger.getLogger(FlatFile.class.getName());
 
 	private static final long serialVersionUID = 6174187801001601557L;
 	private long lastMatchOffset;
 	protected File file = null;
+	private boolean memoryMapped = false;
+	private int cachedSearchLevels = MappedLineFile.DEFAULT_CACHED_LEVELS;
+	private MappedLineFile mappedFile = null;
+	private int sparseIndexInterval = 0;
+	private String sparseIndexPath = null;
+	private SparseLineIndex sparseIndex = null;
 	/**
 	 * 
 	 */
@@ -83,6 +92,118 @@ public class FlatFile {
 		return file.getAbsolutePath();
 	}
 
+	/**
+	 * @return true if lookups are performed against a memory-mapped view of
+	 * 		the file, rather than by opening the file for each request
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+	/**
+	 * @param memoryMapped if true, lookups are performed against a shared
+	 * 		memory-mapped view of the file, comparing raw UTF-8 bytes, and
+	 * 		caching the top levels of the binary search tree.
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+	/**
+	 * @return the number of binary search levels cached in memory-mapped mode
+	 */
+	public int getCachedSearchLevels() {
+		return cachedSearchLevels;
+	}
+	/**
+	 * @param cachedSearchLevels the number of binary search levels whose probe
+	 * 		lines are cached in memory-mapped mode
+	 */
+	public void setCachedSearchLevels(int cachedSearchLevels) {
+		this.cachedSearchLevels = cachedSearchLevels;
+	}
+
+	/**
+	 * @return the shared MappedLineFile for this file, (re)mapping it if it
+	 * 		has not yet been mapped, or has changed since it was mapped.
+	 * @throws IOException if the file could not be mapped
+	 */
+	protected synchronized MappedLineFile getMappedFile() throws IOException {
+		if((mappedFile == null) || mappedFile.isStale()) {
+			mappedFile = new MappedLineFile(file, cachedSearchLevels);
+		}
+		return mappedFile;
+	}
+
+	/**
+	 * @return the number of bytes between lines recorded in the sparse
+	 * 		in-memory index, or 0 if no sparse index is used
+	 */
+	public int getSparseIndexInterval() {
+		return sparseIndexInterval;
+	}
+	/**
+	 * @param sparseIndexInterval if greater than 0, build (or load) a sparse
+	 * 		in-memory index holding one line every sparseIndexInterval bytes,
+	 * 		and use it to replace the on-disk binary search with a single seek
+	 * 		and a short forward scan.
+	 */
+	public void setSparseIndexInterval(int sparseIndexInterval) {
+		this.sparseIndexInterval = sparseIndexInterval;
+	}
+	/**
+	 * @return the path where the sparse index is persisted, by default the
+	 * 		path of this file with ".sparse" appended
+	 */
+	public String getSparseIndexPath() {
+		if((sparseIndexPath == null) && (file != null)) {
+			return file.getAbsolutePath() + ".sparse";
+		}
+		return sparseIndexPath;
+	}
+	/**
+	 * @param sparseIndexPath the path where the sparse index is persisted
+	 */
+	public void setSparseIndexPath(String sparseIndexPath) {
+		this.sparseIndexPath = sparseIndexPath;
+	}
+
+	/**
+	 * @return the current SparseLineIndex for this file, loading or building
+	 * 		it if needed, or null if sparseIndexInterval is not set.
+	 * @throws IOException if the file could not be indexed
+	 */
+	protected synchronized SparseLineIndex getSparseIndex() throws IOException {
+		if(sparseIndexInterval <= 0) {
+			return null;
+		}
+		if((sparseIndex != null)
+				&& sparseIndex.isCurrent(file, sparseIndexInterval)) {
+			return sparseIndex;
+		}
+		File indexFile = new File(getSparseIndexPath());
+		if(indexFile.exists()) {
+			try {
+				SparseLineIndex loaded = SparseLineIndex.load(indexFile);
+				if(loaded.isCurrent(file, sparseIndexInterval)) {
+					sparseIndex = loaded;
+					return sparseIndex;
+				}
+			} catch(IOException e) {
+				LOGGER.warning("Unable to load sparse index " +
+						indexFile.getAbsolutePath() + ":" + e.getMessage());
+			}
+		}
+		LOGGER.info("Building sparse index for " + file.getAbsolutePath());
+		sparseIndex = SparseLineIndex.build(file, sparseIndexInterval,
+				SparseLineIndex.DEFAULT_MAX_KEY_LENGTH);
+		try {
+			sparseIndex.store(indexFile);
+		} catch(IOException e) {
+			LOGGER.warning("Unable to store sparse index " +
+					indexFile.getAbsolutePath() + ":" + e.getMessage());
+		}
+		return sparseIndex;
+	}
+
 	/**
 	 * Binary search thru RandomAccessFile argument to locate the first line
 	 * prefixed by key argument. As a side effect, the RandomAccessFile's
@@ -94,6 +215,10 @@ public class FlatFile {
 	 * @throws IOException
 	 */
 	public long findKeyOffset(RandomAccessFile fh, String key) throws IOException {
+		SparseLineIndex sparse = getSparseIndex();
+		if(sparse != null) {
+			return sparse.findKeyOffset(fh, key, false);
+		}
 		int blockSize = 8192;
 		long fileSize = fh.length();
 		long min = 0;
@@ -125,6 +250,10 @@ public class FlatFile {
 	    return min;
 	}
 	public long findKeyOffsetLT(RandomAccessFile fh, String key) throws IOException {
+		SparseLineIndex sparse = getSparseIndex();
+		if(sparse != null) {
+			return sparse.findKeyOffset(fh, key, true);
+		}
 		int blockSize = 8192;
 		long fileSize = fh.length();
 		long min = 0;
@@ -169,6 +298,9 @@ public class FlatFile {
 	 * @throws IOException
 	 */
 	public CloseableIterator<String> getSequentialIterator() throws IOException {
+		if(memoryMapped) {
+			return new RecordIterator(getMappedFile().getReader(0));
+		}
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		return new RecordIterator(br);
 	}
@@ -180,6 +312,12 @@ public class FlatFile {
 	 */
 	public CloseableIterator<String> getRecordIterator(final String prefix) throws IOException {
 		RecordIterator itr = null;
+		if(memoryMapped) {
+			MappedLineFile mapped = getMappedFile();
+			long offset = mapped.findKeyOffset(prefix);
+			lastMatchOffset = offset;
+			return new RecordIterator(mapped.getReader(offset));
+		}
 		RandomAccessFile raf = new RandomAccessFile(file,"r");
 		long offset = findKeyOffset(raf,prefix);
 		lastMatchOffset = offset;
@@ -192,6 +330,12 @@ public class FlatFile {
 
 	public CloseableIterator<String> getRecordIteratorLT(final String prefix) throws IOException {
 		RecordIterator itr = null;
+		if(memoryMapped) {
+			MappedLineFile mapped = getMappedFile();
+			long offset = mapped.findKeyOffsetLT(prefix);
+			lastMatchOffset = offset;
+			return new RecordIterator(mapped.getReader(offset));
+		}
 		RandomAccessFile raf = new RandomAccessFile(file,"r");
 		long offset = findKeyOffsetLT(raf,prefix);
 		lastMatchOffset = offset;
@@ -212,7 +356,13 @@ public class FlatFile {
 
 		ReverseRecordIterator itr = null;
 		RandomAccessFile raf = new RandomAccessFile(file,"r");
-		long offset = findKeyOffset(raf,prefix);
+		long offset;
+		if(memoryMapped) {
+			offset = getMappedFile().findKeyOffset(prefix);
+			raf.seek(offset);
+		} else {
+			offset = findKeyOffset(raf,prefix);
+		}
 		if(offset < 1) {
 			raf.close();
 			return new ReverseRecordIterator(null);
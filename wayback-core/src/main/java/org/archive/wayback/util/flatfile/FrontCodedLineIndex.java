@@ -0,0 +1,357 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Complete in-memory copy of a sorted line-oriented file, with each line
+ * stored as the number of leading bytes it shares with the previous line
+ * plus the remaining bytes. Every restartInterval lines the shared count is
+ * forced to zero, and the location of that line is recorded, so lookups
+ * binary search the restart lines, then decode at most restartInterval
+ * lines.
+ *
+ * Sorted summary files, like ZipNum chunk indexes, share long prefixes
+ * between adjacent lines, so the encoded form is typically several times
+ * smaller than the file. Lines are held in a few large byte arrays, rather
+ * than as individual Strings.
+ *
+ * Lookups have the same semantics as {@link FlatFile#getRecordIterator(String)}
+ * and {@link FlatFile#getRecordIteratorLT(String)}, and never touch disk.
+ *
+ * @version $Date$, $Revision$
+ */
+public class FrontCodedLineIndex {
+	/** Default number of lines between restart points */
+	public final static int DEFAULT_RESTART_INTERVAL = 16;
+
+	private final static int CHUNK_SIZE = 64 * 1024 * 1024;
+	private final static int CHUNK_SHIFT = 32;
+	private final static long CHUNK_MASK = 0xFFFFFFFFL;
+
+	private int restartInterval;
+	private int size;
+	private byte[][] chunks;
+	/* (chunk index << CHUNK_SHIFT) | offset in chunk, of each restart line */
+	private long[] restarts;
+
+	private FrontCodedLineIndex() {
+	}
+
+	private static int unsignedCompare(byte[] a, int aLen, byte[] b) {
+		int len = Math.min(aLen, b.length);
+		for(int i = 0; i < len; i++) {
+			int x = a[i] & 0xff;
+			int y = b[i] & 0xff;
+			if(x != y) {
+				return x - y;
+			}
+		}
+		return aLen - b.length;
+	}
+
+	/**
+	 * Growable byte array holding the chunk currently being built.
+	 */
+	private static class ChunkBuilder {
+		byte[] buffer = new byte[64 * 1024];
+		int used = 0;
+		void write(int b) {
+			if(used == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			buffer[used++] = (byte) b;
+		}
+		void write(byte[] b, int off, int len) {
+			if(used + len > buffer.length) {
+				buffer = Arrays.copyOf(buffer,
+						Math.max(used + len, buffer.length * 2));
+			}
+			System.arraycopy(b, off, buffer, used, len);
+			used += len;
+		}
+		void writeVarInt(int value) {
+			while((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+		byte[] toArray() {
+			return Arrays.copyOf(buffer, used);
+		}
+	}
+
+	/**
+	 * Read every line of file into a new index.
+	 * @param file sorted file to load
+	 * @param restartInterval number of lines between restart points
+	 * @return the new FrontCodedLineIndex
+	 * @throws IOException if file could not be read
+	 */
+	public static FrontCodedLineIndex build(File file, int restartInterval)
+	throws IOException {
+		if(restartInterval < 1) {
+			throw new IllegalArgumentException("restartInterval must be > 0");
+		}
+		FrontCodedLineIndex index = new FrontCodedLineIndex();
+		index.restartInterval = restartInterval;
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		long[] restarts = new long[1024];
+		int numRestarts = 0;
+		ChunkBuilder chunk = new ChunkBuilder();
+		byte[] prev = new byte[256];
+		int prevLen = 0;
+		byte[] line = new byte[256];
+		int lineLen = 0;
+		int size = 0;
+
+		InputStream is = new BufferedInputStream(new FileInputStream(file),
+				ByteOp.BUFFER_SIZE * 16);
+		try {
+			int c = 0;
+			while(c != -1) {
+				c = is.read();
+				if((c != -1) && (c != '\n')) {
+					if(lineLen == line.length) {
+						line = Arrays.copyOf(line, lineLen * 2);
+					}
+					line[lineLen++] = (byte) c;
+					continue;
+				}
+				if((c == -1) && (lineLen == 0)) {
+					break;
+				}
+				if((lineLen > 0) && (line[lineLen - 1] == '\r')) {
+					lineLen--;
+				}
+				int shared = 0;
+				if(size % restartInterval == 0) {
+					if(chunk.used >= CHUNK_SIZE) {
+						chunks.add(chunk.toArray());
+						chunk = new ChunkBuilder();
+					}
+					if(numRestarts == restarts.length) {
+						restarts = Arrays.copyOf(restarts, numRestarts * 2);
+					}
+					restarts[numRestarts++] =
+						((long) chunks.size() << CHUNK_SHIFT) | chunk.used;
+				} else {
+					int max = Math.min(prevLen, lineLen);
+					while((shared < max) && (prev[shared] == line[shared])) {
+						shared++;
+					}
+				}
+				chunk.writeVarInt(shared);
+				chunk.writeVarInt(lineLen - shared);
+				chunk.write(line, shared, lineLen - shared);
+				size++;
+
+				byte[] tmp = prev;
+				prev = line;
+				prevLen = lineLen;
+				line = tmp;
+				lineLen = 0;
+			}
+		} finally {
+			is.close();
+		}
+		chunks.add(chunk.toArray());
+		index.size = size;
+		index.chunks = chunks.toArray(new byte[chunks.size()][]);
+		index.restarts = Arrays.copyOf(restarts, numRestarts);
+		return index;
+	}
+
+	/**
+	 * @return number of lines held
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return approximate number of bytes of heap used by the encoded lines
+	 */
+	public long getMemoryUsage() {
+		long total = restarts.length * 8L;
+		for(byte[] chunk : chunks) {
+			total += chunk.length;
+		}
+		return total;
+	}
+
+	/**
+	 * @param key UTF-8 bytes to search for
+	 * @return index of the last line less than key, or -1 if there is none
+	 */
+	private int findLastBefore(byte[] key) {
+		Decoder decoder = new Decoder();
+		int min = 0;
+		int max = restarts.length - 1;
+		int group = -1;
+		while(min <= max) {
+			int mid = (min + max) >>> 1;
+			decoder.seekRestart(mid);
+			decoder.decode();
+			if(unsignedCompare(decoder.line, decoder.lineLen, key) < 0) {
+				group = mid;
+				min = mid + 1;
+			} else {
+				max = mid - 1;
+			}
+		}
+		if(group < 0) {
+			return -1;
+		}
+		decoder.seekRestart(group);
+		int found = group * restartInterval;
+		int end = Math.min(size, found + restartInterval);
+		decoder.decode();
+		for(int i = found + 1; i < end; i++) {
+			decoder.decode();
+			if(unsignedCompare(decoder.line, decoder.lineLen, key) >= 0) {
+				break;
+			}
+			found = i;
+		}
+		return found;
+	}
+
+	/**
+	 * @return iterator over every line
+	 */
+	public CloseableIterator<String> getSequentialIterator() {
+		return new LineIterator(0);
+	}
+
+	/**
+	 * @param prefix key to search for
+	 * @return iterator starting at the first line greater than or equal to
+	 * 		prefix, continuing to the last line
+	 */
+	public CloseableIterator<String> getRecordIterator(String prefix) {
+		return new LineIterator(findLastBefore(prefix.getBytes(ByteOp.UTF8)) + 1);
+	}
+
+	/**
+	 * @param prefix key to search for
+	 * @return iterator starting at the last line less than prefix, or the
+	 * 		first line if there is none, continuing to the last line
+	 */
+	public CloseableIterator<String> getRecordIteratorLT(String prefix) {
+		int found = findLastBefore(prefix.getBytes(ByteOp.UTF8));
+		return new LineIterator(Math.max(0, found));
+	}
+
+	/**
+	 * Decodes successive lines starting at a restart point.
+	 */
+	private class Decoder {
+		byte[] chunk;
+		int pos;
+		byte[] line = new byte[256];
+		int lineLen = 0;
+
+		void seekRestart(int restart) {
+			long location = restarts[restart];
+			chunk = chunks[(int) (location >>> CHUNK_SHIFT)];
+			pos = (int) (location & CHUNK_MASK);
+			lineLen = 0;
+		}
+
+		private int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			while(true) {
+				int b = chunk[pos++] & 0xff;
+				value |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0) {
+					return value;
+				}
+				shift += 7;
+			}
+		}
+
+		void decode() {
+			int shared = readVarInt();
+			int len = readVarInt();
+			int total = shared + len;
+			if(total > line.length) {
+				line = Arrays.copyOf(line, Math.max(total, line.length * 2));
+			}
+			System.arraycopy(chunk, pos, line, shared, len);
+			pos += len;
+			lineLen = total;
+		}
+	}
+
+	private class LineIterator implements CloseableIterator<String> {
+		private Decoder decoder = new Decoder();
+		private int next;
+
+		LineIterator(int start) {
+			next = start;
+			if(start < size) {
+				int restart = start / restartInterval;
+				decoder.seekRestart(restart);
+				for(int i = restart * restartInterval; i < start; i++) {
+					decoder.decode();
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		public String next() {
+			if(next >= size) {
+				throw new NoSuchElementException();
+			}
+			if(next % restartInterval == 0) {
+				decoder.seekRestart(next / restartInterval);
+			}
+			decoder.decode();
+			next++;
+			return new String(decoder.line, 0, decoder.lineLen, ByteOp.UTF8);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() throws IOException {
+			next = size;
+		}
+	}
+}
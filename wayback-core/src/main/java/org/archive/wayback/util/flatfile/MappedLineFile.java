@@ -0,0 +1,360 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Read-only, memory-mapped view of a sorted line-oriented file, which
+ * performs the same block-oriented binary search as
+ * {@link FlatFile#findKeyOffset(RandomAccessFile, String)}, but compares raw
+ * UTF-8 bytes within the mapped region instead of decoding a String for each
+ * probe.
+ *
+ * The first line of each block probed in the top levels of the search tree
+ * is cached, so most lookups only touch the mapped file for the last few
+ * probes and the final forward scan.
+ *
+ * Files larger than 2GB are mapped as several segments. Instances are
+ * thread-safe, and are intended to be shared across all requests for the
+ * same file. Use {@link #isStale()} to detect that the underlying file has
+ * changed and a new instance should be created.
+ *
+ * @version $Date$, $Revision$
+ */
+public class MappedLineFile {
+	/** Default number of search tree levels whose probe lines are cached */
+	public final static int DEFAULT_CACHED_LEVELS = 12;
+	/** Maximum number of search tree levels whose probe lines are cached */
+	public final static int MAX_CACHED_LEVELS = 20;
+
+	private final static int BLOCK_SIZE = 8192;
+	private final static int SEGMENT_SHIFT = 30;
+	private final static long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	private final static long SEGMENT_MASK = SEGMENT_SIZE - 1;
+	private final static byte NEWLINE = '\n';
+
+	private File file;
+	private long length;
+	private long lastModified;
+	private MappedByteBuffer[] segments;
+	private AtomicReferenceArray<byte[]> probeCache;
+
+	/**
+	 * @param file the sorted file to map
+	 * @throws IOException if the file could not be mapped
+	 */
+	public MappedLineFile(File file) throws IOException {
+		this(file, DEFAULT_CACHED_LEVELS);
+	}
+
+	/**
+	 * @param file the sorted file to map
+	 * @param cachedLevels number of levels of the binary search tree whose
+	 * 		probe lines are kept on the heap, 0 to disable.
+	 * @throws IOException if the file could not be mapped
+	 */
+	public MappedLineFile(File file, int cachedLevels) throws IOException {
+		this.file = file;
+		int levels = Math.max(0, Math.min(cachedLevels, MAX_CACHED_LEVELS));
+		lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			length = channel.size();
+			int numSegments = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+			segments = new MappedByteBuffer[numSegments];
+			for(int i = 0; i < numSegments; i++) {
+				long start = (long) i << SEGMENT_SHIFT;
+				long size = Math.min(SEGMENT_SIZE, length - start);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						start, size);
+			}
+		} finally {
+			// mapping remains valid after the channel is closed:
+			raf.close();
+		}
+		probeCache = new AtomicReferenceArray<byte[]>(1 << levels);
+	}
+
+	/**
+	 * @return true if the underlying file has been modified or replaced since
+	 * 		it was mapped
+	 */
+	public boolean isStale() {
+		return (file.lastModified() != lastModified)
+			|| (file.length() != length);
+	}
+
+	/**
+	 * @return the size in bytes of the mapped file
+	 */
+	public long length() {
+		return length;
+	}
+
+	private byte get(long pos) {
+		return segments[(int) (pos >>> SEGMENT_SHIFT)].get(
+				(int) (pos & SEGMENT_MASK));
+	}
+
+	/**
+	 * @param pos offset within the file
+	 * @return offset of the first byte following the next newline at or
+	 * 		after pos, or the file length if there is none
+	 */
+	private long nextLineStart(long pos) {
+		while(pos < length) {
+			if(get(pos++) == NEWLINE) {
+				break;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Compare the line starting at offset start with key, using unsigned byte
+	 * order, as "LC_ALL=C sort" does.
+	 * @param start offset of the first byte of the line
+	 * @param key UTF-8 bytes of the key
+	 * @return negative, zero or positive as the line is less than, equal to
+	 * 		or greater than key
+	 */
+	private int compareLine(long start, byte[] key) {
+		long pos = start;
+		for(int i = 0; i < key.length; i++, pos++) {
+			if(pos >= length) {
+				return -1;
+			}
+			int b = get(pos) & 0xff;
+			if(b == NEWLINE) {
+				return -1;
+			}
+			int k = key[i] & 0xff;
+			if(b != k) {
+				return b - k;
+			}
+		}
+		if((pos < length) && (get(pos) != NEWLINE)) {
+			return 1;
+		}
+		return 0;
+	}
+
+	private static int compareBytes(byte[] line, byte[] key) {
+		int len = Math.min(line.length, key.length);
+		for(int i = 0; i < len; i++) {
+			int b = line[i] & 0xff;
+			int k = key[i] & 0xff;
+			if(b != k) {
+				return b - k;
+			}
+		}
+		return line.length - key.length;
+	}
+
+	private byte[] copyLine(long start) {
+		long end = nextLineStart(start);
+		if((end > start) && (get(end - 1) == NEWLINE)) {
+			end--;
+		}
+		byte[] line = new byte[(int) (end - start)];
+		for(int i = 0; i < line.length; i++) {
+			line[i] = get(start + i);
+		}
+		return line;
+	}
+
+	/**
+	 * @param block the block number
+	 * @return offset of the first complete line starting within block
+	 */
+	private long blockLineStart(long block) {
+		long start = block * BLOCK_SIZE;
+		if(block > 0) {
+			start = nextLineStart(start);
+		}
+		return start;
+	}
+
+	/**
+	 * Compare the first complete line in block with key, consulting the probe
+	 * cache when node is within the cached levels of the search tree.
+	 */
+	private int compareProbe(long block, int node, byte[] key) {
+		byte[] line = null;
+		boolean cacheable = node < probeCache.length();
+		if(cacheable) {
+			line = probeCache.get(node);
+			if(line != null) {
+				return compareBytes(line, key);
+			}
+		}
+		long start = blockLineStart(block);
+		if(start >= length) {
+			// no line in this block: sorts after everything
+			return 1;
+		}
+		if(cacheable) {
+			line = copyLine(start);
+			probeCache.set(node, line);
+			return compareBytes(line, key);
+		}
+		return compareLine(start, key);
+	}
+
+	/**
+	 * Binary search for the block containing the first line >= key.
+	 * @return offset of the first complete line in that block
+	 */
+	private long findBlockStart(byte[] key) {
+		long min = 0;
+		long max = length / BLOCK_SIZE;
+		int node = 1;
+		while(max - min > 1) {
+			long mid = min + ((max - min) / 2);
+			if(compareProbe(mid, node, key) < 0) {
+				min = mid;
+				node = (2 * node) + 1;
+			} else {
+				max = mid;
+				node = 2 * node;
+			}
+			// saturate once below the cached levels of the tree:
+			node = Math.min(node, probeCache.length());
+		}
+		return blockLineStart(min);
+	}
+
+	/**
+	 * @param key to search for
+	 * @return offset of the first line which is greater than or equal to key,
+	 * 		or the length of the file if no such line exists.
+	 */
+	public long findKeyOffset(String key) {
+		byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		long pos = findBlockStart(keyBytes);
+		while(pos < length) {
+			if(compareLine(pos, keyBytes) >= 0) {
+				break;
+			}
+			pos = nextLineStart(pos);
+		}
+		return pos;
+	}
+
+	/**
+	 * @param key to search for
+	 * @return offset of the last line which is less than key, or of the first
+	 * 		line in the search block if no such line exists.
+	 */
+	public long findKeyOffsetLT(String key) {
+		byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		long pos = findBlockStart(keyBytes);
+		long last = pos;
+		while(pos < length) {
+			if(compareLine(pos, keyBytes) >= 0) {
+				break;
+			}
+			last = pos;
+			pos = nextLineStart(pos);
+		}
+		return last;
+	}
+
+	/**
+	 * @param offset to start reading from
+	 * @return InputStream reading the mapped file from offset to the end.
+	 * 		Closing it is not required, and does not affect the mapping.
+	 */
+	public InputStream getInputStream(long offset) {
+		return new MappedInputStream(offset);
+	}
+
+	/**
+	 * @param offset to start reading from
+	 * @return UTF-8 BufferedReader reading the mapped file from offset
+	 */
+	public BufferedReader getReader(long offset) {
+		return new BufferedReader(new InputStreamReader(
+				getInputStream(offset), ByteOp.UTF8));
+	}
+
+	private class MappedInputStream extends InputStream {
+		private long pos;
+		private ByteBuffer current = null;
+
+		public MappedInputStream(long pos) {
+			this.pos = pos;
+		}
+
+		private ByteBuffer currentSegment() {
+			if((current == null) || !current.hasRemaining()) {
+				if(pos >= length) {
+					return null;
+				}
+				current = segments[(int) (pos >>> SEGMENT_SHIFT)].duplicate();
+				current.position((int) (pos & SEGMENT_MASK));
+			}
+			return current;
+		}
+
+		@Override
+		public int read() throws IOException {
+			ByteBuffer bb = currentSegment();
+			if(bb == null) {
+				return -1;
+			}
+			pos++;
+			return bb.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) {
+				return 0;
+			}
+			ByteBuffer bb = currentSegment();
+			if(bb == null) {
+				return -1;
+			}
+			int amt = Math.min(len, bb.remaining());
+			bb.get(b, off, amt);
+			pos += amt;
+			return amt;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(Integer.MAX_VALUE, length - pos);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Sparse, in-memory index of a sorted line-oriented file, holding the
+ * (possibly truncated) first bytes and the offset of one line every
+ * interval bytes. All keys are held in a single byte array, so even very
+ * large files produce a compact index.
+ *
+ * Lookups binary search the in-memory keys, then perform a single seek and
+ * a short buffered forward scan of the file, rather than a full on-disk
+ * binary search.
+ *
+ * Indexes can be persisted next to the file they describe, and record the
+ * length and modification time of that file, so they can be discarded
+ * when it changes.
+ *
+ * @version $Date$, $Revision$
+ */
+public class SparseLineIndex {
+	/** Default number of bytes between indexed lines */
+	public final static int DEFAULT_INTERVAL = 64 * 1024;
+	/** Default maximum number of bytes of each indexed line to keep */
+	public final static int DEFAULT_MAX_KEY_LENGTH = 256;
+
+	private final static String MAGIC = "WB-SPARSE-INDEX-1";
+	private final static int SCAN_BUFFER_SIZE = 8192;
+	private final static byte NEWLINE = '\n';
+
+	private long fileLength;
+	private long fileLastModified;
+	private int interval;
+	private int maxKeyLength;
+	private int size;
+	private long[] offsets;
+	/* key i is in keys[keyStarts[i]] to keys[keyStarts[i+1]] */
+	private int[] keyStarts;
+	private byte[] keys;
+
+	private SparseLineIndex() {
+	}
+
+	/**
+	 * Scan file, recording the first line starting at or after each multiple
+	 * of interval bytes.
+	 * @param file sorted file to index
+	 * @param interval number of bytes between indexed lines
+	 * @param maxKeyLength maximum number of bytes of each line to keep
+	 * @return the new SparseLineIndex
+	 * @throws IOException if file could not be read
+	 */
+	public static SparseLineIndex build(File file, int interval,
+			int maxKeyLength) throws IOException {
+		SparseLineIndex index = new SparseLineIndex();
+		index.fileLastModified = file.lastModified();
+		index.interval = interval;
+		index.maxKeyLength = maxKeyLength;
+
+		int capacity = (int) Math.min(Integer.MAX_VALUE - 1,
+				(file.length() / interval) + 2);
+		long[] offsets = new long[capacity];
+		int[] keyStarts = new int[capacity + 1];
+		byte[] keys = new byte[Math.min(capacity, 1024) * 64];
+		int size = 0;
+		int keysUsed = 0;
+
+		InputStream is = new BufferedInputStream(new FileInputStream(file),
+				ByteOp.BUFFER_SIZE * 16);
+		try {
+			long pos = 0;
+			long lineStart = 0;
+			long nextMark = 0;
+			boolean atLineStart = true;
+			int keyBytesLeft = 0;
+			int c;
+			while((c = is.read()) != -1) {
+				if(atLineStart) {
+					atLineStart = false;
+					if(lineStart >= nextMark) {
+						if(size == offsets.length) {
+							offsets = Arrays.copyOf(offsets, size * 2);
+							keyStarts = Arrays.copyOf(keyStarts, (size * 2) + 1);
+						}
+						offsets[size] = lineStart;
+						keyStarts[size] = keysUsed;
+						size++;
+						keyBytesLeft = maxKeyLength;
+						nextMark = lineStart + interval;
+					}
+				}
+				if(c == NEWLINE) {
+					atLineStart = true;
+					lineStart = pos + 1;
+					keyBytesLeft = 0;
+				} else if(keyBytesLeft > 0) {
+					if(keysUsed == keys.length) {
+						keys = Arrays.copyOf(keys, keys.length * 2);
+					}
+					keys[keysUsed++] = (byte) c;
+					keyBytesLeft--;
+				}
+				pos++;
+			}
+			index.fileLength = pos;
+		} finally {
+			is.close();
+		}
+		keyStarts[size] = keysUsed;
+		index.size = size;
+		index.offsets = Arrays.copyOf(offsets, size);
+		index.keyStarts = Arrays.copyOf(keyStarts, size + 1);
+		index.keys = Arrays.copyOf(keys, keysUsed);
+		return index;
+	}
+
+	/**
+	 * @param indexFile file previously written with {@link #store(File)}
+	 * @return the SparseLineIndex read from indexFile
+	 * @throws IOException if indexFile could not be read, or is not a
+	 * 		SparseLineIndex
+	 */
+	public static SparseLineIndex load(File indexFile) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(indexFile)));
+		try {
+			if(!MAGIC.equals(dis.readUTF())) {
+				throw new IOException("Not a sparse index:"
+						+ indexFile.getAbsolutePath());
+			}
+			SparseLineIndex index = new SparseLineIndex();
+			index.fileLength = dis.readLong();
+			index.fileLastModified = dis.readLong();
+			index.interval = dis.readInt();
+			index.maxKeyLength = dis.readInt();
+			index.size = dis.readInt();
+			index.offsets = new long[index.size];
+			index.keyStarts = new int[index.size + 1];
+			for(int i = 0; i < index.size; i++) {
+				index.offsets[i] = dis.readLong();
+			}
+			for(int i = 0; i <= index.size; i++) {
+				index.keyStarts[i] = dis.readInt();
+			}
+			index.keys = new byte[index.keyStarts[index.size]];
+			dis.readFully(index.keys);
+			return index;
+		} finally {
+			dis.close();
+		}
+	}
+
+	/**
+	 * @param indexFile path where this index should be persisted
+	 * @throws IOException if indexFile could not be written
+	 */
+	public void store(File indexFile) throws IOException {
+		File tmp = new File(indexFile.getAbsolutePath() + ".tmp");
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			dos.writeUTF(MAGIC);
+			dos.writeLong(fileLength);
+			dos.writeLong(fileLastModified);
+			dos.writeInt(interval);
+			dos.writeInt(maxKeyLength);
+			dos.writeInt(size);
+			for(int i = 0; i < size; i++) {
+				dos.writeLong(offsets[i]);
+			}
+			for(int i = 0; i <= size; i++) {
+				dos.writeInt(keyStarts[i]);
+			}
+			dos.write(keys);
+		} finally {
+			dos.close();
+		}
+		if(!tmp.renameTo(indexFile)) {
+			indexFile.delete();
+			if(!tmp.renameTo(indexFile)) {
+				tmp.delete();
+				throw new IOException("Unable to rename " +
+						tmp.getAbsolutePath() + " to " +
+						indexFile.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * @param file the file this index was built from
+	 * @param interval the currently configured interval
+	 * @return true if file has not changed since this index was built, and
+	 * 		the index was built with interval
+	 */
+	public boolean isCurrent(File file, int interval) {
+		return (this.interval == interval)
+			&& (file.length() == fileLength)
+			&& (file.lastModified() == fileLastModified);
+	}
+
+	/**
+	 * @return the number of lines in the index
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i entry index
+	 * @param key UTF-8 bytes to compare against
+	 * @return true if the line at entry i is certainly less than key
+	 */
+	private boolean isBefore(int i, byte[] key) {
+		int start = keyStarts[i];
+		int len = keyStarts[i + 1] - start;
+		int cmpLen = Math.min(len, key.length);
+		for(int j = 0; j < cmpLen; j++) {
+			int b = keys[start + j] & 0xff;
+			int k = key[j] & 0xff;
+			if(b != k) {
+				return b < k;
+			}
+		}
+		if(len < key.length) {
+			// stored bytes are a prefix of key: if they were truncated the
+			// complete line may still sort after key.
+			return len < maxKeyLength;
+		}
+		return false;
+	}
+
+	/**
+	 * @param key UTF-8 bytes of the key
+	 * @return offset of the start of a line which is at or before both the
+	 * 		first line >= key and the last line < key
+	 */
+	private long findStartOffset(byte[] key) {
+		// find last entry which is certainly before key:
+		int min = 0;
+		int max = size - 1;
+		int found = -1;
+		while(min <= max) {
+			int mid = (min + max) >>> 1;
+			if(isBefore(mid, key)) {
+				found = mid;
+				min = mid + 1;
+			} else {
+				max = mid - 1;
+			}
+		}
+		return found < 0 ? 0 : offsets[found];
+	}
+
+	private static int compareLine(byte[] line, int len, byte[] key) {
+		int cmpLen = Math.min(len, key.length);
+		for(int i = 0; i < cmpLen; i++) {
+			int b = line[i] & 0xff;
+			int k = key[i] & 0xff;
+			if(b != k) {
+				return b - k;
+			}
+		}
+		return len - key.length;
+	}
+
+	/**
+	 * Locate a key within the indexed file, with the same semantics as
+	 * {@link FlatFile#findKeyOffset(RandomAccessFile, String)} and
+	 * {@link FlatFile#findKeyOffsetLT(RandomAccessFile, String)}. As a side
+	 * effect, fh is positioned at the returned offset.
+	 *
+	 * @param fh RandomAccessFile open on the indexed file
+	 * @param key to search for
+	 * @param lessThan if true, locate the last line less than key, otherwise
+	 * 		locate the first line greater than or equal to key
+	 * @return the offset of the located line
+	 * @throws IOException if fh could not be read
+	 */
+	public long findKeyOffset(RandomAccessFile fh, String key,
+			boolean lessThan) throws IOException {
+		byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		long lineStart = findStartOffset(keyBytes);
+		long last = lineStart;
+		long result = -1;
+		byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		byte[] line = new byte[256];
+		int lineLen = 0;
+		long pos = lineStart;
+		fh.seek(lineStart);
+		while(result < 0) {
+			int amt = fh.read(buffer);
+			if(amt == -1) {
+				if((lineLen > 0) && (compareLine(line, lineLen, keyBytes) < 0)) {
+					last = lineStart;
+					lineStart = pos;
+				}
+				result = lessThan ? last : lineStart;
+				break;
+			}
+			for(int i = 0; i < amt; i++) {
+				byte b = buffer[i];
+				pos++;
+				if(b != NEWLINE) {
+					if(lineLen == line.length) {
+						line = Arrays.copyOf(line, lineLen * 2);
+					}
+					line[lineLen++] = b;
+					continue;
+				}
+				if(compareLine(line, lineLen, keyBytes) >= 0) {
+					result = lessThan ? last : lineStart;
+					break;
+				}
+				last = lineStart;
+				lineStart = pos;
+				lineLen = 0;
+			}
+		}
+		fh.seek(result);
+		return result;
+	}
+}
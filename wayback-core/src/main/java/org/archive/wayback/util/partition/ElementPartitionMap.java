@@ -37,6 +37,15 @@ public interface ElementPartitionMap<T> {
 	 * @return the Date for the element
 	 */
 	public Date elementToDate(T element);
+
+	/**
+	 * Convert an element to milliseconds since the epoch, as 
+	 * elementToDate(element).getTime(), ideally without allocating a Date.
+	 * 
+	 * @param element the element to convert
+	 * @return the time for the element
+	 */
+	public long elementToTime(T element);
 	
 	/**
 	 * Add the element to a partition, possible modifying the Partition in some
@@ -73,6 +73,15 @@ public class Partition<T> {
 				(end.compareTo(d) > 0); 
 	}
 
+	/**
+	 * Checks if a time is within this partition
+	 * @param time milliseconds since the epoch to check
+	 * @return boolean true if time is >= start, and < end
+	 */
+	public boolean containsTime(long time) {
+		return (start.getTime() <= time) && (end.getTime() > time);
+	}
+
 	/**
 	 * @return the start Date for this Partition.
 	 */
@@ -196,22 +196,25 @@ public class Partitioner<T> {
 		int idx = 0;
 		int size = partitions.size();
 		T element = null;
+		long elementTime = 0;
 		while(idx < size) {
 			Partition<T> partition = partitions.get(idx);
 			if(element == null) {
 				if(itr.hasNext()) {
 					element = itr.next();
+					elementTime = map.elementToTime(element);
 				} else {
 					// all done
 					break;
 				}
 			}
 			// will current result fit in the current partition?
-			while(partition.containsDate(map.elementToDate(element))) {
+			while(partition.containsTime(elementTime)) {
 				map.addElementToPartition(element, partition);
 				element = null;
 				if(itr.hasNext()) {
 					element = itr.next();
+					elementTime = map.elementToTime(element);
 				} else {
 					break;
 				}
@@ -930,8 +930,8 @@ implements ShutdownListener {
 			return prev;
 		}
 		
-		long prevMS = prev.getCaptureDate().getTime();
-		long nextMS = next.getCaptureDate().getTime();
+		long prevMS = prev.getCaptureTime();
+		long nextMS = next.getCaptureTime();
 		long prevDiff = Math.abs(prevMS - requestMS);
 		long nextDiff = Math.abs(requestMS - nextMS);
 		
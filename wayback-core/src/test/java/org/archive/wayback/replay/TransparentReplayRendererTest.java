@@ -5,8 +5,12 @@ package org.archive.wayback.replay;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
@@ -26,6 +30,7 @@ import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.resourcestore.resourcefile.ResourceFactory;
 import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
@@ -254,4 +259,97 @@ public class TransparentReplayRendererTest extends TestCase {
         String output = new String(servletOutput.getBytes(), "UTF-8");
         assertEquals(payload, output);
     }
+
+    /**
+     * write a record for PAYLOAD_GIF to a local uncompressed WARC file,
+     * after some other bytes, and read it back with ResourceFactory.
+     */
+    protected Resource createLocalResource(File warc) throws Exception {
+        final String ct = "image/gif";
+        WARCRecordInfo recinfo = TestWARCRecordInfo.createHttpResponse(ct, TestWARCRecordInfo.PAYLOAD_GIF);
+        OutputStream out = new FileOutputStream(warc);
+        out.write(new byte[100]);
+        InputStream in = TestWARCReader.buildRecordContent(recinfo);
+        for (int b; (b = in.read()) != -1;) {
+            out.write(b);
+        }
+        out.close();
+        return ResourceFactory.getResource(warc, 100);
+    }
+
+    /**
+     * test replay of a capture in an uncompressed local WARC file, with a
+     * container supporting sendfile: the payload's file region is handed
+     * to the container, rather than written.
+     * @throws Exception
+     */
+    public void testRenderResource_LocalFileSendfile() throws Exception {
+        File warc = File.createTempFile("sendfile", ".warc");
+        try {
+            Resource payloadResource = createLocalResource(warc);
+
+            HttpServletRequest sendfileRequest = EasyMock.createMock(HttpServletRequest.class);
+            EasyMock.expect(sendfileRequest.getAttribute("org.apache.tomcat.sendfile.support")).andReturn(Boolean.TRUE);
+            sendfileRequest.setAttribute("org.apache.tomcat.sendfile.filename", warc.getCanonicalPath());
+            Capture<Object> start = new Capture<Object>();
+            Capture<Object> end = new Capture<Object>();
+            sendfileRequest.setAttribute(EasyMock.eq("org.apache.tomcat.sendfile.start"), EasyMock.capture(start));
+            sendfileRequest.setAttribute(EasyMock.eq("org.apache.tomcat.sendfile.end"), EasyMock.capture(end));
+
+            response.setStatus(200);
+            response.setHeader(EasyMock.<String>anyObject(), EasyMock.<String>anyObject());
+            EasyMock.expectLastCall().anyTimes();
+            EasyMock.replay(response, sendfileRequest);
+
+            TransparentReplayRenderer cut2 = new TransparentReplayRenderer(new IdentityHttpHeaderProcessor());
+            cut2.setSendLocalFiles(true);
+            cut2.renderResource(sendfileRequest, response, wbRequest, result,
+                    payloadResource, payloadResource, uriConverter, results);
+
+            EasyMock.verify(response, sendfileRequest);
+            payloadResource.close();
+
+            long offset = (Long)start.getValue();
+            int length = (int)((Long)end.getValue() - offset);
+            byte[] content = new byte[length];
+            RandomAccessFile raf = new RandomAccessFile(warc, "r");
+            raf.seek(offset);
+            raf.readFully(content);
+            raf.close();
+            assertTrue("file region", Arrays.equals(TestWARCRecordInfo.PAYLOAD_GIF, content));
+        } finally {
+            warc.delete();
+        }
+    }
+
+    /**
+     * test replay of a capture in an uncompressed local WARC file, without
+     * sendfile: the payload is transferred from the file channel.
+     * @throws Exception
+     */
+    public void testRenderResource_LocalFileTransfer() throws Exception {
+        File warc = File.createTempFile("transfer", ".warc");
+        try {
+            Resource payloadResource = createLocalResource(warc);
+
+            TestServletOutputStream servletOutput = new TestServletOutputStream();
+            response.setStatus(200);
+            EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+            response.setHeader(EasyMock.<String>anyObject(), EasyMock.<String>anyObject());
+            EasyMock.expectLastCall().anyTimes();
+            EasyMock.replay(response);
+
+            TransparentReplayRenderer cut2 = new TransparentReplayRenderer(new IdentityHttpHeaderProcessor());
+            cut2.setSendLocalFiles(true);
+            cut2.renderResource(request, response, wbRequest, result,
+                    payloadResource, payloadResource, uriConverter, results);
+
+            EasyMock.verify(response);
+            payloadResource.close();
+
+            assertTrue("servlet output", Arrays.equals(TestWARCRecordInfo.PAYLOAD_GIF, servletOutput.getBytes()));
+        } finally {
+            warc.delete();
+        }
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.resourceindex.filters.ClosestResultTrackingFilter;
+
+/**
+ * @version $Date$, $Revision$
+ */
+public class ClosestWindowCollectorTest extends TestCase {
+
+	private List<CaptureSearchResult> captures(int count) {
+		List<CaptureSearchResult> list = new ArrayList<CaptureSearchResult>();
+		for(int i = 0; i < count; i++) {
+			CaptureSearchResult result = new CaptureSearchResult();
+			result.setCaptureTimestamp(String.format("%04d%02d01000000",
+					2000 + (i / 12), (i % 12) + 1));
+			list.add(result);
+		}
+		return list;
+	}
+
+	private CaptureSearchResults collect(List<CaptureSearchResult> list,
+			long wantMS, int window) {
+		ClosestWindowCollector collector =
+			new ClosestWindowCollector(wantMS, window);
+		ClosestResultTrackingFilter tracker =
+			new ClosestResultTrackingFilter(wantMS);
+		for(CaptureSearchResult result : list) {
+			tracker.filterObject(result);
+			collector.add(result);
+		}
+		assertSame(tracker.getClosest(), collector.getClosest());
+		assertEquals(list.size(), collector.getNumSeen());
+		CaptureSearchResults results = new CaptureSearchResults();
+		collector.addTo(results);
+		return results;
+	}
+
+	/**
+	 * Check retained results around a capture in the middle.
+	 */
+	public void testMiddle() {
+		List<CaptureSearchResult> list = captures(100);
+		CaptureSearchResult want = list.get(50);
+		CaptureSearchResults results =
+			collect(list, want.getCaptureDate().getTime() + 1000, 3);
+		// first, 3 before, closest, 3 after, last:
+		assertEquals(9, results.size());
+		List<CaptureSearchResult> got = results.getResults();
+		assertSame(list.get(0), got.get(0));
+		for(int i = 0; i < 7; i++) {
+			assertSame(list.get(47 + i), got.get(i + 1));
+		}
+		assertSame(list.get(99), got.get(8));
+		assertEquals(list.get(0).getCaptureTimestamp(),
+				results.getFirstResultTimestamp());
+		assertEquals(list.get(99).getCaptureTimestamp(),
+				results.getLastResultTimestamp());
+		// prev/next links stay within the retained results:
+		assertSame(got.get(3), want.getPrevResult());
+		assertSame(got.get(5), want.getNextResult());
+	}
+
+	/**
+	 * Check windows touching either end are not duplicated.
+	 */
+	public void testEnds() {
+		List<CaptureSearchResult> list = captures(10);
+		CaptureSearchResults results =
+			collect(list, list.get(0).getCaptureDate().getTime(), 3);
+		assertEquals(5, results.size());
+		assertSame(list.get(9), results.getResults().getLast());
+
+		list = captures(10);
+		results = collect(list, list.get(9).getCaptureDate().getTime() + 1, 3);
+		assertEquals(5, results.size());
+		assertSame(list.get(0), results.getResults().getFirst());
+		assertSame(list.get(9), results.getResults().getLast());
+
+		list = captures(3);
+		results = collect(list, list.get(1).getCaptureDate().getTime(), 5);
+		assertEquals(3, results.size());
+	}
+}
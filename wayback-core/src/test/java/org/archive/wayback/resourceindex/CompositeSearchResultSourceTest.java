@@ -0,0 +1,269 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+
+/**
+ * Tests concurrent lookups in {@link CompositeSearchResultSource} against
+ * stub sources which are slow, fail, or fail on their first hasNext().
+ */
+public class CompositeSearchResultSourceTest extends TestCase {
+	private CompositeSearchResultSource composite;
+	private List<StubSource> required = new ArrayList<StubSource>();
+
+	/**
+	 * Returns captures of the given urlkeys after delay milliseconds, or
+	 * fails if failLookup or failHasNext are set.
+	 */
+	private static class StubSource implements SearchResultSource {
+		String keys[];
+		long delay = 0;
+		boolean failLookup = false;
+		boolean failHasNext = false;
+		List<StubIterator> iterators = new ArrayList<StubIterator>();
+
+		StubSource(String... keys) {
+			this.keys = keys;
+		}
+		public CloseableIterator<CaptureSearchResult> getPrefixIterator(
+				String prefix) throws ResourceIndexNotAvailableException {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new ResourceIndexNotAvailableException("interrupted");
+			}
+			if(failLookup) {
+				throw new ResourceIndexNotAvailableException("failed");
+			}
+			List<CaptureSearchResult> results =
+				new ArrayList<CaptureSearchResult>();
+			for(String key : keys) {
+				CaptureSearchResult result = new CaptureSearchResult();
+				result.setUrlKey(key);
+				result.setCaptureTimestamp("20100101000000");
+				results.add(result);
+			}
+			StubIterator itr = new StubIterator(results, failHasNext);
+			synchronized(iterators) {
+				iterators.add(itr);
+			}
+			return itr;
+		}
+		public CloseableIterator<CaptureSearchResult> getPrefixReverseIterator(
+				String prefix) throws ResourceIndexNotAvailableException {
+			throw new ResourceIndexNotAvailableException("unsupported op");
+		}
+		public void cleanup(CloseableIterator<CaptureSearchResult> c)
+		throws IOException {
+			c.close();
+		}
+		public void shutdown() throws IOException {
+		}
+		boolean allClosed() {
+			synchronized(iterators) {
+				for(StubIterator itr : iterators) {
+					if(!itr.closed) {
+						return false;
+					}
+				}
+				return !iterators.isEmpty();
+			}
+		}
+	}
+
+	private static class StubIterator
+	implements CloseableIterator<CaptureSearchResult> {
+		List<CaptureSearchResult> results;
+		boolean failHasNext;
+		int next = 0;
+		volatile boolean closed = false;
+
+		StubIterator(List<CaptureSearchResult> results, boolean failHasNext) {
+			this.results = results;
+			this.failHasNext = failHasNext;
+		}
+		public boolean hasNext() {
+			if(failHasNext) {
+				throw new IllegalStateException("failed seek");
+			}
+			return next < results.size();
+		}
+		public CaptureSearchResult next() {
+			return results.get(next++);
+		}
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	protected void setUp() throws Exception {
+		composite = new CompositeSearchResultSource() {
+			protected boolean isRequired(SearchResultSource source) {
+				return required.contains(source);
+			}
+		};
+		composite.setParallelThreads(2);
+		composite.setSourceTimeout(200);
+	}
+
+	protected void tearDown() throws Exception {
+		composite.shutdown();
+	}
+
+	private List<String> keys(CloseableIterator<CaptureSearchResult> itr)
+	throws IOException {
+		List<String> keys = new ArrayList<String>();
+		while(itr.hasNext()) {
+			keys.add(itr.next().getUrlKey());
+		}
+		itr.close();
+		return keys;
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testMergedOrder() throws Exception {
+		StubSource slow = new StubSource("a", "d", "g");
+		slow.delay = 50;
+		composite.addSource(slow);
+		composite.addSource(new StubSource("b", "e", "h"));
+		// more sources than threads, so one runs on this thread:
+		composite.addSource(new StubSource("c", "f", "i"));
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h",
+				"i"), keys(composite.getPrefixIterator("")));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testTimeout() throws Exception {
+		StubSource slow = new StubSource("a");
+		slow.delay = 5000;
+		composite.addSource(slow);
+		composite.addSource(new StubSource("b"));
+		long start = System.currentTimeMillis();
+		assertEquals(Arrays.asList("b"), keys(composite.getPrefixIterator("")));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+
+	/**
+	 * With one thread, the second lookup runs on the requesting thread
+	 * rather than waiting behind the first and timing out.
+	 * @throws Exception
+	 */
+	public void testTimeoutStartsWithLookup() throws Exception {
+		composite.setParallelThreads(1);
+		composite.setSourceTimeout(300);
+		StubSource first = new StubSource("a");
+		first.delay = 200;
+		StubSource second = new StubSource("b");
+		second.delay = 200;
+		composite.addSource(first);
+		composite.addSource(second);
+		assertEquals(Arrays.asList("a", "b"),
+				keys(composite.getPrefixIterator("")));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testOptionalFailure() throws Exception {
+		StubSource failing = new StubSource("a");
+		failing.failLookup = true;
+		StubSource badSeek = new StubSource("c");
+		badSeek.failHasNext = true;
+		composite.addSource(failing);
+		composite.addSource(new StubSource("b"));
+		composite.addSource(badSeek);
+		assertEquals(Arrays.asList("b"), keys(composite.getPrefixIterator("")));
+		// the iterator which failed its first hasNext() was cleaned up:
+		assertTrue(badSeek.allClosed());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testAllFail() throws Exception {
+		StubSource failing = new StubSource("a");
+		failing.failLookup = true;
+		StubSource slow = new StubSource("b");
+		slow.delay = 5000;
+		composite.addSource(failing);
+		composite.addSource(slow);
+		try {
+			composite.getPrefixIterator("");
+			fail("expected ResourceIndexNotAvailableException");
+		} catch (ResourceIndexNotAvailableException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testRequiredFailure() throws Exception {
+		StubSource ok = new StubSource("a");
+		StubSource failing = new StubSource("b");
+		failing.failLookup = true;
+		required.add(failing);
+		composite.addSource(ok);
+		composite.addSource(failing);
+		try {
+			composite.getPrefixIterator("");
+			fail("expected ResourceIndexNotAvailableException");
+		} catch (ResourceIndexNotAvailableException e) {
+			// expected
+		}
+		assertTrue(ok.allClosed());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testRequiredTimeout() throws Exception {
+		StubSource ok = new StubSource("a");
+		StubSource slow = new StubSource("b");
+		slow.delay = 5000;
+		required.add(slow);
+		composite.addSource(ok);
+		composite.addSource(slow);
+		try {
+			composite.getPrefixIterator("");
+			fail("expected ResourceIndexNotAvailableException");
+		} catch (ResourceIndexNotAvailableException e) {
+			// expected
+		}
+		assertTrue(ok.allClosed());
+	}
+}
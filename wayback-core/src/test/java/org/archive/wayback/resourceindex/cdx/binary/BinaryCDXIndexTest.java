@@ -0,0 +1,167 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdx.binary;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.cdx.format.CDXFlexFormat;
+
+/**
+ * Converts a CDX file to binary form and checks lookups return the same
+ * records as the text file.
+ *
+ * @version $Date$, $Revision$
+ */
+public class BinaryCDXIndexTest extends TestCase {
+	private File cdx;
+	private File binary;
+	private List<String> lines = new ArrayList<String>();
+
+	protected void setUp() throws Exception {
+		cdx = File.createTempFile("binary", ".cdx");
+		binary = File.createTempFile("binary", ".bcdx");
+		for(int i = 0; i < 1000; i++) {
+			String key = String.format("com,example)/page%04d", i / 3);
+			String ts = String.format("2010010100%04d", i % 3);
+			if(i % 2 == 0) {
+				lines.add(key + " " + ts + " http://example.com/page" + (i / 3)
+						+ " text/html 200 SHA1DIGEST" + i + " - - "
+						+ (i * 1000) + " file-" + (i % 7) + ".warc.gz");
+			} else {
+				lines.add(key + " " + ts + " http://example.com/page" + (i / 3)
+						+ " warc/revisit - SHA1DIGEST" + i + " - A "
+						+ (i * 10) + " " + (i * 1000) + " file-" + (i % 7)
+						+ ".warc.gz");
+			}
+		}
+		PrintWriter pw = new PrintWriter(cdx, "UTF-8");
+		pw.println(" CDX N b a m s k r M S V g");
+		for(String line : lines) {
+			pw.println(line);
+		}
+		pw.close();
+	}
+
+	protected void tearDown() throws Exception {
+		cdx.delete();
+		binary.delete();
+	}
+
+	private void assertSame(CaptureSearchResult want, CaptureSearchResult got) {
+		assertEquals(want.getUrlKey(), got.getUrlKey());
+		assertEquals(want.getCaptureTimestamp(), got.getCaptureTimestamp());
+		assertEquals(want.getOriginalUrl(), got.getOriginalUrl());
+		assertEquals(want.getMimeType(), got.getMimeType());
+		assertEquals(want.getHttpCode(), got.getHttpCode());
+		assertEquals(want.getDigest(), got.getDigest());
+		assertEquals(want.getRedirectUrl(), got.getRedirectUrl());
+		assertEquals(want.getRobotFlags(), got.getRobotFlags());
+		assertEquals(want.getOffset(), got.getOffset());
+		assertEquals(want.getCompressedLength(), got.getCompressedLength());
+		assertEquals(want.getFile(), got.getFile());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testRoundTrip() throws Exception {
+		assertEquals(lines.size(), BinaryCDXWriter.convert(cdx, binary));
+		BinaryCDXIndex index = new BinaryCDXIndex();
+		index.setPath(binary.getAbsolutePath());
+		index.init();
+		assertTrue(index.getBlockCount() > 1);
+
+		CloseableIterator<CaptureSearchResult> itr =
+			index.getPrefixIterator("");
+		for(String line : lines) {
+			assertTrue(itr.hasNext());
+			assertSame(CDXFlexFormat.parseCDXLineFlexFast(line), itr.next());
+		}
+		assertFalse(itr.hasNext());
+		index.cleanup(itr);
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testPrefixLookups() throws Exception {
+		BinaryCDXWriter.convert(cdx, binary);
+		BinaryCDXIndex index = new BinaryCDXIndex();
+		index.setPath(binary.getAbsolutePath());
+		for(int i = 0; i < lines.size(); i += 37) {
+			String key = lines.get(i).substring(0, lines.get(i).indexOf(' '));
+			int first = i;
+			while((first > 0) && lines.get(first - 1).startsWith(key + " ")) {
+				first--;
+			}
+			CloseableIterator<CaptureSearchResult> itr =
+				index.getPrefixIterator(key);
+			assertTrue(itr.hasNext());
+			assertSame(CDXFlexFormat.parseCDXLineFlexFast(lines.get(first)),
+					itr.next());
+			itr.close();
+		}
+		CloseableIterator<CaptureSearchResult> itr =
+			index.getPrefixIterator("zzz");
+		assertFalse(itr.hasNext());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testBadLinesSkipped() throws Exception {
+		PrintWriter pw = new PrintWriter(cdx, "UTF-8");
+		pw.println(" CDX N b a m s k r M S V g");
+		for(int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			pw.println(line);
+			if(i == 10) {
+				String key = line.substring(0, line.indexOf(' '));
+				pw.println(key + " 2010O10100000 http://example.com/ text/html"
+						+ " 200 SHA1DIGEST - - 10 file-0.warc.gz");
+			} else if(i == 500) {
+				String key = line.substring(0, line.indexOf(' '));
+				pw.println(key + " 20100101000009 http://example.com/ text/html"
+						+ " 200 SHA1DIGEST - - 10 -7 file-0.warc.gz");
+			}
+		}
+		pw.close();
+
+		assertEquals(lines.size(), BinaryCDXWriter.convert(cdx, binary));
+		BinaryCDXIndex index = new BinaryCDXIndex();
+		index.setPath(binary.getAbsolutePath());
+		index.init();
+		CloseableIterator<CaptureSearchResult> itr =
+			index.getPrefixIterator("");
+		for(String line : lines) {
+			assertTrue(itr.hasNext());
+			assertSame(CDXFlexFormat.parseCDXLineFlexFast(line), itr.next());
+		}
+		assertFalse(itr.hasNext());
+		index.cleanup(itr);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdx.format;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.CaptureSearchResult;
+
+/**
+ * Checks that lazily parsed results match eagerly parsed ones.
+ */
+public class LazyCaptureSearchResultTest extends TestCase {
+	private final static String LINES[] = {
+		"com,example)/ 20100101000000 http://example.com/ text/html 200 ABCDEF - 1234 foo.warc.gz",
+		"com,example)/a 20100101000000 example.com text/html 200 ABCDEF - A 1234 foo.warc.gz",
+		"com,example:8080)/a 20100101000000 example.com text/html 200 ABCDEF - A 99 1234 foo.warc.gz ",
+		"com,example)/ 20100101000000 http://example.com/ warc/revisit - ABCDEF http://example.com/b - - - -",
+		"com,example)/ 20100101000000 http://example.com/ text/html 200 ABCDEF - - - 1234 foo.warc.gz",
+	};
+
+	private void assertSameFields(CaptureSearchResult want,
+			CaptureSearchResult got) {
+		assertEquals(want.getUrlKey(), got.getUrlKey());
+		assertEquals(want.getCaptureTimestamp(), got.getCaptureTimestamp());
+		assertEquals(want.getOriginalUrl(), got.getOriginalUrl());
+		assertEquals(want.getMimeType(), got.getMimeType());
+		assertEquals(want.getHttpCode(), got.getHttpCode());
+		assertEquals(want.getDigest(), got.getDigest());
+		assertEquals(want.getRedirectUrl(), got.getRedirectUrl());
+		assertEquals(want.getRobotFlags(), got.getRobotFlags());
+		assertEquals(want.getOffset(), got.getOffset());
+		assertEquals(want.getCompressedLength(), got.getCompressedLength());
+		assertEquals(want.getFile(), got.getFile());
+	}
+
+	/**
+	 * 
+	 */
+	public void testMatchesEagerParsing() {
+		for(String line : LINES) {
+			CaptureSearchResult want = CDXFlexFormat.parseCDXLineFlexFast(line);
+			CaptureSearchResult got = CDXFlexFormat.parseCDXLineFlexLazy(line);
+			assertNotNull(line, got);
+			assertSameFields(want, got);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void testBadLines() {
+		assertNull(LazyCaptureSearchResult.parse("a b c"));
+		assertNull(LazyCaptureSearchResult.parse(
+				"a b c d e f g h i j k l"));
+		assertNull(LazyCaptureSearchResult.parse(
+				"com,example)/ 2010 http://example.com/ text/html 200 X - x12 f"));
+		assertNull(LazyCaptureSearchResult.parse(
+				"com,example)/ 2010 http://example.com/ text/html 200 X - A 1x 12 f"));
+	}
+
+	/**
+	 * 
+	 */
+	public void testSettersOverrideLine() {
+		CaptureSearchResult result = LazyCaptureSearchResult.parse(LINES[1]);
+		result.setFile("bar.warc.gz");
+		result.setMimeType("image/png");
+		result.setRobotIgnore();
+		result.putCustom("note", "value");
+		assertEquals("bar.warc.gz", result.getFile());
+		assertEquals("image/png", result.getMimeType());
+		assertTrue(result.isRobotIgnore());
+		assertEquals("value", result.getCustom("note"));
+		assertEquals("com,example)/a", result.getUrlKey());
+	}
+}
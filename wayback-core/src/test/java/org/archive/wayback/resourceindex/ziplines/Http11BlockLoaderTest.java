@@ -0,0 +1,121 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link Http11BlockLoader#getBlocks(List)} against a local HTTP
+ * server which honors single byte ranges.
+ */
+public class Http11BlockLoaderTest extends TestCase {
+	private HttpServer server;
+	private byte[] content;
+	private AtomicInteger requestCount = new AtomicInteger();
+	private String url;
+
+	protected void setUp() throws Exception {
+		content = new byte[1024 * 1024];
+		for(int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/part-00", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requestCount.incrementAndGet();
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				String spec[] = range.substring("bytes=".length()).split("-");
+				int start = Integer.parseInt(spec[0]);
+				int end = Integer.parseInt(spec[1]);
+				int length = end - start + 1;
+				exchange.getResponseHeaders().add("Content-Range",
+						"bytes " + start + "-" + end + "/" + content.length);
+				exchange.sendResponseHeaders(206, length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(content, start, length);
+				os.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/part-00";
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	private void assertRange(byte[] got, long offset, int length) {
+		assertEquals(length, got.length);
+		assertTrue(Arrays.equals(Arrays.copyOfRange(content, (int) offset,
+				(int) offset + length), got));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testGetBlocksCoalesces() throws Exception {
+		Http11BlockLoader loader = new Http11BlockLoader();
+		loader.setMaxRangeGap(1024);
+		List<BlockRequest> requests = new ArrayList<BlockRequest>();
+		// adjacent:
+		requests.add(new BlockRequest(url, 8192, 4096));
+		requests.add(new BlockRequest(url, 0, 8192));
+		// within maxRangeGap of the previous range:
+		requests.add(new BlockRequest(url, 12800, 100));
+		// far away:
+		requests.add(new BlockRequest(url, 500000, 2000));
+		List<byte[]> blocks = loader.getBlocks(requests);
+		assertEquals(2, requestCount.get());
+		assertEquals(requests.size(), blocks.size());
+		for(int i = 0; i < requests.size(); i++) {
+			BlockRequest r = requests.get(i);
+			assertRange(blocks.get(i), r.getOffset(), r.getLength());
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testMaxMergedLength() throws Exception {
+		Http11BlockLoader loader = new Http11BlockLoader();
+		loader.setMaxMergedLength(16384);
+		List<BlockRequest> requests = new ArrayList<BlockRequest>();
+		for(int i = 0; i < 8; i++) {
+			requests.add(new BlockRequest(url, i * 8192, 8192));
+		}
+		List<byte[]> blocks = loader.getBlocks(requests);
+		assertEquals(4, requestCount.get());
+		for(int i = 0; i < 8; i++) {
+			assertRange(blocks.get(i), i * 8192, 8192);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.util.ByteOp;
+import org.archive.wayback.util.InflaterPool;
+
+/**
+ * Tests read-ahead in {@link ZiplinesChunkIterator} against a BlockLoader
+ * whose blocks complete out of order, or not until released.
+ */
+public class ZiplinesChunkIteratorTest extends TestCase {
+	private final static int LINES_PER_BLOCK = 20;
+
+	private ExecutorService executor;
+	private AtomicInteger inflatersInUse = new AtomicInteger();
+	private AtomicInteger interrupted = new AtomicInteger();
+	private CountDownLatch gate = new CountDownLatch(1);
+
+	/**
+	 * Counts Inflaters handed out and not yet given back.
+	 */
+	private class CountingPool extends InflaterPool.DefaultInflaterPool {
+		public Inflater getInflater() {
+			inflatersInUse.incrementAndGet();
+			return super.getInflater();
+		}
+		public void releaseInflater(Inflater inflater) {
+			inflatersInUse.decrementAndGet();
+			super.releaseInflater(inflater);
+		}
+	}
+
+	/**
+	 * Serves block N at offset N. Later blocks return sooner, blocks from
+	 * interruptibleFrom wait for the gate until interrupted, and blocks
+	 * from stubbornFrom wait for the gate regardless.
+	 */
+	private class StubLoader implements BlockLoader {
+		int blocks;
+		int interruptibleFrom;
+		int stubbornFrom;
+		StubLoader(int blocks, int interruptibleFrom, int stubbornFrom) {
+			this.blocks = blocks;
+			this.interruptibleFrom = interruptibleFrom;
+			this.stubbornFrom = stubbornFrom;
+		}
+		public byte[] getBlock(String url, long offset, int length)
+		throws IOException {
+			int block = (int) offset;
+			try {
+				if(block >= stubbornFrom) {
+					while(true) {
+						try {
+							gate.await();
+							break;
+						} catch (InterruptedException e) {
+							// keep waiting
+						}
+					}
+				} else if(block >= interruptibleFrom) {
+					gate.await();
+				} else {
+					Thread.sleep((blocks - block) * 3);
+				}
+			} catch (InterruptedException e) {
+				interrupted.incrementAndGet();
+				throw new IOException("interrupted");
+			}
+			return gzip(block);
+		}
+	}
+
+	protected void setUp() throws Exception {
+		new CountingPool();
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	protected void tearDown() throws Exception {
+		gate.countDown();
+		executor.shutdownNow();
+		new InflaterPool.DefaultInflaterPool();
+	}
+
+	private static String line(int block, int line) {
+		return String.format("block-%02d line-%02d", block, line);
+	}
+
+	private static byte[] gzip(int block) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(baos);
+		for(int i = 0; i < LINES_PER_BLOCK; i++) {
+			gz.write((line(block, i) + "\n").getBytes(ByteOp.UTF8));
+		}
+		gz.close();
+		return baos.toByteArray();
+	}
+
+	private List<ZiplinedBlock> blocks(BlockLoader loader, int count) {
+		List<ZiplinedBlock> blocks = new ArrayList<ZiplinedBlock>();
+		for(int i = 0; i < count; i++) {
+			ZiplinedBlock block =
+				new ZiplinedBlock(new String[] {"part-00"}, i);
+			block.setLoader(loader);
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	private void waitFor(AtomicInteger counter, int value)
+	throws InterruptedException {
+		for(int i = 0; (i < 500) && (counter.get() != value); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(value, counter.get());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testBlockOrder() throws Exception {
+		int count = 8;
+		ZiplinesChunkIterator itr = new ZiplinesChunkIterator(
+				blocks(new StubLoader(count, count, count), count),
+				executor, 3);
+		for(int block = 0; block < count; block++) {
+			for(int i = 0; i < LINES_PER_BLOCK; i++) {
+				assertTrue(itr.hasNext());
+				assertEquals(line(block, i), itr.next());
+			}
+		}
+		assertFalse(itr.hasNext());
+		itr.close();
+		assertEquals(0, inflatersInUse.get());
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testCloseReleasesPending() throws Exception {
+		// reading block 0 leaves blocks 1-4 pending: 1 and 2 complete, 3
+		// waits until interrupted, and 4 completes after cancellation
+		ZiplinesChunkIterator itr = new ZiplinesChunkIterator(
+				blocks(new StubLoader(6, 3, 4), 6), executor, 4);
+		assertTrue(itr.hasNext());
+		assertEquals(line(0, 0), itr.next());
+		waitFor(inflatersInUse, 3);
+		itr.close();
+		waitFor(interrupted, 1);
+		gate.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(0, inflatersInUse.get());
+	}
+}
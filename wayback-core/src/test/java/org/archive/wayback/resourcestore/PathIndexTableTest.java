@@ -0,0 +1,100 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PathIndexTableTest extends TestCase {
+
+	File index;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		index = File.createTempFile("pathindex", ".txt");
+		write("a.warc.gz\t/data/1/a.warc.gz\n"
+				+ "b.warc.gz\t/data/1/b.warc.gz\n"
+				+ "b.warc.gz\t/data/2/b.warc.gz\n"
+				+ "b.warc.gz.open\t/data/3/b.warc.gz.open\n"
+				+ "c.warc.gz\thttp://example.org/c.warc.gz\n");
+	}
+
+	protected void tearDown() throws Exception {
+		index.delete();
+		super.tearDown();
+	}
+
+	void write(String content) throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(index), "UTF-8");
+		w.write(content);
+		w.close();
+	}
+
+	void checkLookups(PathIndexTable table) {
+		assertEquals(4, table.size());
+		assertTrue(Arrays.equals(new String[] {"/data/1/a.warc.gz"}, table.lookup("a.warc.gz")));
+		assertTrue(Arrays.equals(new String[] {"/data/1/b.warc.gz", "/data/2/b.warc.gz"}, table.lookup("b.warc.gz")));
+		assertTrue(Arrays.equals(new String[] {"/data/3/b.warc.gz.open"}, table.lookup("b.warc.gz.open")));
+		assertTrue(Arrays.equals(new String[] {"http://example.org/c.warc.gz"}, table.lookup("c.warc.gz")));
+		assertEquals(0, table.lookup("b.warc").length);
+		assertEquals(0, table.lookup("d.warc.gz").length);
+	}
+
+	public void testLookup() throws Exception {
+		checkLookups(new PathIndexTable(index.getAbsolutePath(), "\t", false));
+	}
+
+	public void testOffHeapLookup() throws Exception {
+		checkLookups(new PathIndexTable(index.getAbsolutePath(), "\t", true));
+	}
+
+	public void testReload() throws Exception {
+		PathIndexTable table = new PathIndexTable(index.getAbsolutePath(), "\t", false);
+		table.setCheckInterval(0);
+		write("d.warc.gz\t/data/4/d.warc.gz\n");
+		index.setLastModified(index.lastModified() + 2000);
+
+		table.lookup("d.warc.gz");
+		for (int i = 0; (i < 50) && (table.size() != 1); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(Arrays.equals(new String[] {"/data/4/d.warc.gz"}, table.lookup("d.warc.gz")));
+		assertEquals(0, table.lookup("a.warc.gz").length);
+	}
+
+	public void testNegativeLookupCache() throws Exception {
+		NegativeLookupCache cache = new NegativeLookupCache(2, 1000);
+		assertFalse(cache.isMissing("a"));
+		cache.addMissing("a");
+		cache.addMissing("b");
+		assertTrue(cache.isMissing("a"));
+		cache.addMissing("c");
+		// b was least recently used
+		assertFalse(cache.isMissing("b"));
+		assertTrue(cache.isMissing("a"));
+		assertTrue(cache.isMissing("c"));
+	}
+}
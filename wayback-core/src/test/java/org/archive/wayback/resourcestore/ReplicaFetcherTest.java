@@ -0,0 +1,191 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.Resource;
+
+public class ReplicaFetcherTest extends TestCase {
+
+	ReplicaFetcher fetcher;
+	AtomicInteger closed = new AtomicInteger();
+
+	class TestResource extends Resource {
+		String location;
+
+		TestResource(String location) {
+			this.location = location;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed.incrementAndGet();
+		}
+
+		@Override
+		public int getStatusCode() {
+			return 200;
+		}
+
+		@Override
+		public long getRecordLength() {
+			return 0;
+		}
+
+		@Override
+		public Map<String, String> getHttpHeaders() {
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public int read() throws IOException {
+			return -1;
+		}
+	}
+
+	// set by fetch to the thread each location was tried on
+	Map<String, Thread> threads = new ConcurrentHashMap<String, Thread>();
+	// released by the fetch of "hedge"
+	CountDownLatch hedged = new CountDownLatch(1);
+
+	// locations are "<millis to respond>", "missing", "error", "hedge",
+	// "block", which fails when interrupted for the winning hedge, or
+	// "stubborn", which finishes anyway when interrupted
+	ReplicaFetcher.Fetch fetch = new ReplicaFetcher.Fetch() {
+		public Resource fetch(String location) throws IOException {
+			threads.put(location, Thread.currentThread());
+			if (location.equals("error")) {
+				throw new IOException("error at " + location);
+			}
+			if (location.equals("missing")) {
+				return null;
+			}
+			if (location.equals("hedge")) {
+				hedged.countDown();
+				return new TestResource(location);
+			}
+			try {
+				if (location.equals("block")) {
+					hedged.await();
+					new CountDownLatch(1).await();
+				} else if (location.equals("stubborn")) {
+					try {
+						new CountDownLatch(1).await();
+					} catch (InterruptedException e) {
+						// carry on regardless
+					}
+				} else {
+					Thread.sleep(Long.parseLong(location));
+				}
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted");
+			}
+			return new TestResource(location);
+		}
+	};
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fetcher = new ReplicaFetcher();
+		fetcher.setHedgeDelay(50);
+	}
+
+	protected void tearDown() throws Exception {
+		fetcher.shutdown();
+		super.tearDown();
+	}
+
+	public void testFirstReplica() {
+		List<Exception> errors = new ArrayList<Exception>();
+		TestResource r = (TestResource)fetcher.fetch(new String[] {"0", "0"}, fetch, false, errors);
+		assertEquals("0", r.location);
+		assertSame(Thread.currentThread(), threads.get("0"));
+		assertTrue(errors.isEmpty());
+	}
+
+	public void testHedgeSlowReplica() throws Exception {
+		List<Exception> errors = new ArrayList<Exception>();
+		TestResource r = (TestResource)fetcher.fetch(new String[] {"block", "hedge"}, fetch, false, errors);
+		assertEquals("hedge", r.location);
+		assertSame(Thread.currentThread(), threads.get("block"));
+		assertNotSame(Thread.currentThread(), threads.get("hedge"));
+		assertTrue(errors.isEmpty());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	public void testSkipFailedReplicas() {
+		List<Exception> errors = new ArrayList<Exception>();
+		TestResource r = (TestResource)fetcher.fetch(new String[] {"error", "missing", "10"}, fetch, false, errors);
+		assertEquals("10", r.location);
+		assertEquals(1, errors.size());
+	}
+
+	public void testFailedReplicaTriedAtOnce() {
+		// with no hedging, the next location is tried on the caller
+		fetcher.setHedgeDelay(3600 * 1000);
+		List<Exception> errors = new ArrayList<Exception>();
+		TestResource r = (TestResource)fetcher.fetch(new String[] {"missing", "0"}, fetch, false, errors);
+		assertEquals("0", r.location);
+		assertSame(Thread.currentThread(), threads.get("0"));
+	}
+
+	public void testStopOnError() {
+		List<Exception> errors = new ArrayList<Exception>();
+		assertNull(fetcher.fetch(new String[] {"error", "0"}, fetch, true, errors));
+		assertEquals(1, errors.size());
+		assertNull(threads.get("0"));
+	}
+
+	public void testNoneAvailable() {
+		List<Exception> errors = new ArrayList<Exception>();
+		assertNull(fetcher.fetch(new String[] {"missing", "error"}, fetch, false, errors));
+		assertEquals(1, errors.size());
+		assertNull(fetcher.fetch(new String[0], fetch, false, errors));
+	}
+
+	public void testLoserClosed() throws Exception {
+		List<Exception> errors = new ArrayList<Exception>();
+		// the first replica finishes after the hedge has won
+		TestResource r = (TestResource)fetcher.fetch(new String[] {"stubborn", "hedge"}, fetch, false, errors);
+		assertEquals("hedge", r.location);
+		assertEquals(1, closed.get());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	public void testPercentileDelay() {
+		fetcher.setHedgePercentile(90);
+		assertEquals(50, fetcher.getCurrentHedgeDelay());
+		List<Exception> errors = new ArrayList<Exception>();
+		for (int i = 0; i < ReplicaFetcher.MIN_SAMPLES; i++) {
+			fetcher.fetch(new String[] {"100"}, fetch, false, errors);
+		}
+		assertTrue(fetcher.getCurrentHedgeDelay() >= 100);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.Resource;
+
+public class ReplicaHealthTrackerTest extends TestCase {
+
+	ReplicaHealthTracker tracker;
+
+	ReplicaFetcher.Fetch ok = new ReplicaFetcher.Fetch() {
+		public Resource fetch(String path) throws IOException {
+			return null;
+		}
+	};
+
+	ReplicaFetcher.Fetch error = new ReplicaFetcher.Fetch() {
+		public Resource fetch(String path) throws IOException {
+			throw new IOException("error at " + path);
+		}
+	};
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		tracker = new ReplicaHealthTracker();
+		tracker.setFailureThreshold(3);
+		tracker.setRetryInterval(1000);
+	}
+
+	public void testEndpointName() {
+		assertEquals("http://a.example:8080", tracker.getEndpointName("http://a.example:8080/warcs/x.warc.gz"));
+		assertEquals("http://a.example", tracker.getEndpointName("http://a.example"));
+		assertEquals("/data/1/", tracker.getEndpointName("/data/1/x.warc.gz"));
+		assertEquals("", tracker.getEndpointName("x.warc.gz"));
+		tracker.setEndpointPrefixes(Arrays.asList("/data/"));
+		assertEquals("/data/", tracker.getEndpointName("/data/1/x.warc.gz"));
+	}
+
+	public void testOrderByLatency() {
+		String[] paths = {"http://a/x", "http://b/x", "http://c/x"};
+		// unknown endpoints keep their order
+		assertTrue(Arrays.equals(paths, tracker.order(paths)));
+
+		tracker.success("http://a/y", 500);
+		tracker.success("http://b/y", 100);
+		tracker.success("http://c/y", 100);
+		assertTrue(Arrays.equals(new String[] {"http://b/x", "http://c/x", "http://a/x"}, tracker.order(paths)));
+
+		tracker.failure("http://b/y");
+		assertTrue(Arrays.equals(new String[] {"http://c/x", "http://b/x", "http://a/x"}, tracker.order(paths)));
+	}
+
+	public void testCircuitBreaker() throws Exception {
+		String[] paths = {"http://a/x", "http://b/x"};
+		for (int i = 0; i < 3; i++) {
+			tracker.failure("http://a/x");
+		}
+		assertTrue(tracker.getEndpoint("http://a/x").isOpen());
+		assertTrue(Arrays.equals(new String[] {"http://b/x"}, tracker.order(paths)));
+
+		// all down, try them anyway
+		for (int i = 0; i < 3; i++) {
+			tracker.failure("http://b/x");
+		}
+		assertTrue(Arrays.equals(paths, tracker.order(paths)));
+
+		Thread.sleep(1100);
+		// after the retry interval, both may be tried again
+		assertTrue(Arrays.equals(paths, tracker.order(paths)));
+		// ordering alone does not use up the trial request
+		assertTrue(Arrays.equals(paths, tracker.order(paths)));
+
+		// the trial request to a fails, b is still on trial
+		try {
+			tracker.track(error).fetch("http://a/x");
+			fail("expected error");
+		} catch (IOException e) {
+			// expected
+		}
+		assertTrue(Arrays.equals(new String[] {"http://b/x"}, tracker.order(paths)));
+
+		// trial request to b succeeds
+		tracker.track(ok).fetch("http://b/x");
+		assertFalse(tracker.getEndpoint("http://b/x").isOpen());
+		assertTrue(Arrays.equals(new String[] {"http://b/x"}, tracker.order(paths)));
+	}
+
+	public void testTrialStartedByFetch() throws Exception {
+		String[] paths = {"http://a/x", "http://b/x"};
+		for (int i = 0; i < 3; i++) {
+			tracker.failure("http://a/x");
+		}
+		Thread.sleep(1100);
+		final String[] ordered = new String[1];
+		// while the trial request runs, a is held off
+		tracker.track(new ReplicaFetcher.Fetch() {
+			public Resource fetch(String path) throws IOException {
+				ordered[0] = Arrays.toString(tracker.order(new String[] {"http://a/x", "http://b/x"}));
+				return null;
+			}
+		}).fetch("http://a/x");
+		assertEquals("[http://b/x]", ordered[0]);
+		assertFalse(tracker.getEndpoint("http://a/x").isOpen());
+		assertEquals(2, tracker.order(paths).length);
+	}
+
+	public void testInterruptedNotFailure() throws Exception {
+		Thread.currentThread().interrupt();
+		try {
+			tracker.track(error).fetch("http://a/x");
+			fail("expected error");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			Thread.interrupted();
+		}
+		assertEquals(0.0, tracker.getEndpoint("http://a/x").getErrorRate());
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link CompositeSortedIterator}. Running main() compares the
+ * heap merge against a linear scan of all components for several fan-outs.
+ *
+ */
+public class CompositeSortedIteratorTest extends TestCase {
+
+	private static Comparator<String> FIRST_WORD = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.split(" ")[0].compareTo(o2.split(" ")[0]);
+		}
+	};
+	private static Comparator<Integer> INT_ORDER = new Comparator<Integer>() {
+		public int compare(Integer o1, Integer o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	/**
+	 * 
+	 */
+	public void testMerge() {
+		CompositeSortedIterator<String> itr =
+			new CompositeSortedIterator<String>(FIRST_WORD);
+		itr.addComponent(Arrays.asList("a 1", "c 1", "e 1").iterator());
+		itr.addComponent(new ArrayList<String>().iterator());
+		itr.addComponent(Arrays.asList("b 2", "c 2", "d 2").iterator());
+		itr.addComponent(Arrays.asList("a 3", "c 3").iterator());
+		String want[] = {"a 1", "a 3", "b 2", "c 1", "c 2", "c 3", "d 2", "e 1"};
+		for(String w : want) {
+			assertTrue(itr.hasNext());
+			assertEquals(w, itr.next());
+		}
+		assertFalse(itr.hasNext());
+		try {
+			itr.next();
+			fail("expected NoSuchElementException");
+		} catch(NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void testRandomMerge() {
+		Random random = new Random(42);
+		List<List<Integer>> lists = makeLists(random, 16, 500);
+		CompositeSortedIterator<Integer> itr =
+			new CompositeSortedIterator<Integer>(INT_ORDER);
+		List<Integer> all = new ArrayList<Integer>();
+		for(List<Integer> list : lists) {
+			itr.addComponent(list.iterator());
+			all.addAll(list);
+		}
+		Collections.sort(all);
+		for(Integer i : all) {
+			assertEquals(i, itr.next());
+		}
+		assertFalse(itr.hasNext());
+	}
+
+	private static List<List<Integer>> makeLists(Random random, int k,
+			int size) {
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for(int i = 0; i < k; i++) {
+			List<Integer> list = new ArrayList<Integer>();
+			for(int j = 0; j < size; j++) {
+				list.add(random.nextInt(1000000));
+			}
+			Collections.sort(list);
+			lists.add(list);
+		}
+		return lists;
+	}
+
+	private static int linearMerge(List<List<Integer>> lists) {
+		List<PeekableIterator<Integer>> components =
+			new ArrayList<PeekableIterator<Integer>>();
+		for(List<Integer> list : lists) {
+			components.add(new PeekableIterator<Integer>(list.iterator()));
+		}
+		int count = 0;
+		while(true) {
+			PeekableIterator<Integer> nextSource = null;
+			Integer next = null;
+			for(PeekableIterator<Integer> pi : components) {
+				if(pi.hasNext()) {
+					Integer piNext = pi.peekNext();
+					if((next == null) || (INT_ORDER.compare(next, piNext) > 0)) {
+						nextSource = pi;
+						next = piNext;
+					}
+				}
+			}
+			if(nextSource == null) {
+				return count;
+			}
+			nextSource.next();
+			count++;
+		}
+	}
+
+	private static int heapMerge(List<List<Integer>> lists) {
+		CompositeSortedIterator<Integer> itr =
+			new CompositeSortedIterator<Integer>(INT_ORDER);
+		for(List<Integer> list : lists) {
+			itr.addComponent(list.iterator());
+		}
+		int count = 0;
+		while(itr.hasNext()) {
+			itr.next();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Benchmark the heap merge against the previous linear scan.
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		int total = 1 << 20;
+		int rounds = 5;
+		Random random = new Random(42);
+		for(int k : new int[] {2, 16, 128}) {
+			List<List<Integer>> lists = makeLists(random, k, total / k);
+			long linear = Long.MAX_VALUE;
+			long heap = Long.MAX_VALUE;
+			for(int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				linearMerge(lists);
+				linear = Math.min(linear, System.nanoTime() - start);
+				start = System.nanoTime();
+				heapMerge(lists);
+				heap = Math.min(heap, System.nanoTime() - start);
+			}
+			System.out.println(String.format(
+					"k=%3d records=%d linear=%6dms heap=%6dms speedup=%.2fx",
+					k, total, linear / 1000000, heap / 1000000,
+					(double) linear / heap));
+		}
+	}
+}
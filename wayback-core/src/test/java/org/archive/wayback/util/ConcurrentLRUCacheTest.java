@@ -0,0 +1,71 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ConcurrentLRUCache}
+ */
+public class ConcurrentLRUCacheTest extends TestCase {
+
+	/**
+	 * 
+	 */
+	public void testEvictsLeastRecentlyUsed() {
+		ConcurrentLRUCache<String,String> cache =
+			new ConcurrentLRUCache<String,String>(30, 1);
+		cache.put("a", "A", 10);
+		cache.put("b", "B", 10);
+		cache.put("c", "C", 10);
+		// touch a, so b is now eldest:
+		assertEquals("A", cache.get("a"));
+		cache.put("d", "D", 10);
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.get("a"));
+		assertEquals("C", cache.get("c"));
+		assertEquals("D", cache.get("d"));
+		assertEquals(3, cache.size());
+		assertEquals(30, cache.getWeight());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	/**
+	 * 
+	 */
+	public void testWeights() {
+		ConcurrentLRUCache<String,String> cache =
+			new ConcurrentLRUCache<String,String>(100, 1);
+		cache.put("big", "X", 101);
+		assertNull(cache.get("big"));
+		cache.put("a", "A", 60);
+		cache.put("a", "A2", 20);
+		assertEquals(20, cache.getWeight());
+		cache.put("b", "B", 80);
+		assertEquals("A2", cache.get("a"));
+		assertEquals(100, cache.getWeight());
+		cache.remove("a");
+		assertEquals(80, cache.getWeight());
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
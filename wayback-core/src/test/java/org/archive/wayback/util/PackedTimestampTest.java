@@ -0,0 +1,124 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import junit.framework.TestCase;
+
+import org.archive.util.ArchiveUtils;
+import org.archive.wayback.core.CaptureSearchResult;
+
+/**
+ * Checks PackedTimestamp agrees with ArchiveUtils date parsing.
+ *
+ * @version $Date$, $Revision$
+ */
+public class PackedTimestampTest extends TestCase {
+
+	private void assertMatches(String timestamp) throws Exception {
+		assertEquals(timestamp, ArchiveUtils.getDate(timestamp).getTime(),
+				PackedTimestamp.toEpochMillis(timestamp));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testValid() throws Exception {
+		assertMatches("19700101000000");
+		assertMatches("19961231235959");
+		assertMatches("20000229120000");
+		assertMatches("20100102030405");
+		assertMatches("20121231235959");
+		assertMatches("99991231235959");
+		// every 37 hours and 17 seconds from 1995 to 2015
+		long step = ((37L * 60 * 60) + 17) * 1000;
+		long end = ArchiveUtils.getDate("20150101000000").getTime();
+		for(long t = ArchiveUtils.getDate("19950101000000").getTime();
+				t < end; t += step) {
+			String timestamp = ArchiveUtils.get14DigitDate(t);
+			assertEquals(timestamp, t, PackedTimestamp.toEpochMillis(timestamp));
+			assertMatches(timestamp);
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testBefore1970() throws Exception {
+		assertMatches("19691231235959");
+		assertMatches("19000228000000");
+		assertMatches("19000301000000");
+		assertMatches("16000229000000");
+		assertMatches("16000101000000");
+	}
+
+	/**
+	 * ArchiveUtils leniently rolls these over into the next field, but they
+	 * are not dates a capture can have.
+	 */
+	public void testInvalid() {
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("20110229000000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("19000229000000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("20101301000000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("20100001000000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("20100431000000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("20100101240000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("20100101006000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("2010010100000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("201001010000001"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis("2010O101000000"));
+		assertEquals(PackedTimestamp.INVALID,
+				PackedTimestamp.toEpochMillis(null));
+	}
+
+	/**
+	 * Invalid timestamps still get the date they got before PackedTimestamp,
+	 * from Timestamp.parseBefore().
+	 */
+	public void testInvalidFallsBack() {
+		String timestamps[] = {"20110229000000", "20101301000000", "2010"};
+		for(String timestamp : timestamps) {
+			CaptureSearchResult result = new CaptureSearchResult();
+			result.setCaptureTimestamp(timestamp);
+			assertEquals(timestamp,
+					Timestamp.parseBefore(timestamp).getDate().getTime(),
+					result.getCaptureTime());
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testPackUnpack() throws Exception {
+		assertEquals(20100102030405L, PackedTimestamp.pack("20100102030405"));
+		assertEquals("20100102030405", PackedTimestamp.unpack(20100102030405L));
+		assertEquals("00000101000000", PackedTimestamp.unpack(101000000L));
+		assertEquals(PackedTimestamp.INVALID, PackedTimestamp.pack("2010"));
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+public class PooledGZIPInputStreamTest extends TestCase {
+
+	private byte[] gzip(String s) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(baos);
+		gz.write(s.getBytes(ByteOp.UTF8));
+		gz.close();
+		return baos.toByteArray();
+	}
+
+	private String gunzip(byte[] bytes) throws IOException {
+		InputStream is = new PooledGZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ByteOp.copyStream(is, baos);
+		is.close();
+		return new String(baos.toByteArray(), ByteOp.UTF8);
+	}
+
+	public void testSingleMember() throws IOException {
+		assertEquals("hello world", gunzip(gzip("hello world")));
+		assertEquals("", gunzip(gzip("")));
+	}
+
+	public void testMultiMember() throws IOException {
+		byte[] a = gzip("first ");
+		byte[] b = gzip("second");
+		byte[] both = new byte[a.length + b.length];
+		System.arraycopy(a, 0, both, 0, a.length);
+		System.arraycopy(b, 0, both, a.length, b.length);
+		assertEquals("first second", gunzip(both));
+	}
+
+	public void testReuse() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append(i).append(' ');
+		}
+		String s = sb.toString();
+		byte[] bytes = gzip(s);
+		for (int i = 0; i < 200; i++) {
+			assertEquals(s, gunzip(bytes));
+		}
+		// released early, before the whole stream is read
+		for (int i = 0; i < 200; i++) {
+			InputStream is = new PooledGZIPInputStream(new ByteArrayInputStream(bytes));
+			assertEquals('0', is.read());
+			is.close();
+			is.close();
+		}
+		assertEquals(s, gunzip(bytes));
+	}
+
+	public void testOwnPool() throws IOException {
+		InflaterPool pool = new InflaterPool();
+		pool.setMaxIdle(1);
+		Inflater inflater = pool.getInflater();
+		pool.releaseInflater(inflater);
+		InputStream is = new PooledGZIPInputStream(
+				new ByteArrayInputStream(gzip("hello world")), pool);
+		assertNotSame(inflater, pool.getInflater());
+		ByteOp.copyStream(is, new ByteArrayOutputStream());
+		// given back at the end, before close
+		assertSame(inflater, pool.getInflater());
+		is.close();
+	}
+
+	public void testCorruptTrailer() throws IOException {
+		byte[] bytes = gzip("hello world");
+		bytes[bytes.length - 5] ^= 0xff;
+		try {
+			gunzip(bytes);
+			fail("expected corrupt trailer");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals("ok", gunzip(gzip("ok")));
+	}
+
+	public void testNotGzip() {
+		try {
+			gunzip("plain text".getBytes());
+			fail("expected not gzip");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+import junit.framework.TestCase;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Checks that front-coded in-memory lookups return the same lines as
+ * FlatFile lookups.
+ *
+ * @version $Date$, $Revision$
+ */
+public class FrontCodedLineIndexTest extends TestCase {
+	private File file;
+
+	protected void setUp() throws Exception {
+		file = File.createTempFile("frontcoded", ".idx");
+		PrintWriter pw = new PrintWriter(file, "UTF-8");
+		for(int i = 0; i < 5000; i += 2) {
+			pw.print(String.format(
+					"com,example)/dir/%05d 20100101000000\tpart-%02d\t%d\n",
+					i, i / 1000, i * 100));
+		}
+		pw.close();
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private void checkKey(FlatFile ff, FrontCodedLineIndex index, String key)
+			throws Exception {
+		CloseableIterator<String> want = ff.getRecordIteratorLT(key);
+		CloseableIterator<String> got = index.getRecordIteratorLT(key);
+		for(int i = 0; i < 3 && want.hasNext(); i++) {
+			assertTrue(key, got.hasNext());
+			assertEquals(key, want.next(), got.next());
+		}
+		want.close();
+		got.close();
+		want = ff.getRecordIterator(key);
+		got = index.getRecordIterator(key);
+		assertEquals(key, want.hasNext(), got.hasNext());
+		if(want.hasNext()) {
+			assertEquals(key, want.next(), got.next());
+		}
+		want.close();
+		got.close();
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testMatchesFlatFile() throws Exception {
+		FlatFile ff = new FlatFile(file.getAbsolutePath());
+		for(int interval : new int[] {1, 7, 16}) {
+			FrontCodedLineIndex index = FrontCodedLineIndex.build(file, interval);
+			assertEquals(2500, index.size());
+			if(interval > 1) {
+				assertTrue(index.getMemoryUsage() < file.length());
+			}
+			for(int i = 0; i < 5000; i += 13) {
+				checkKey(ff, index, String.format("com,example)/dir/%05d", i));
+			}
+			checkKey(ff, index, "a");
+			checkKey(ff, index, "com,example)/dir/");
+			checkKey(ff, index, "zzz");
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testSequential() throws Exception {
+		FlatFile ff = new FlatFile(file.getAbsolutePath());
+		FrontCodedLineIndex index = FrontCodedLineIndex.build(file, 16);
+		CloseableIterator<String> want = ff.getSequentialIterator();
+		CloseableIterator<String> got = index.getSequentialIterator();
+		while(want.hasNext()) {
+			assertEquals(want.next(), got.next());
+		}
+		assertFalse(got.hasNext());
+		want.close();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that memory-mapped searches land on the same offsets as the
+ * RandomAccessFile searches in FlatFile.
+ *
+ * @version $Date$, $Revision$
+ */
+public class MappedLineFileTest extends TestCase {
+	private File file;
+
+	protected void setUp() throws Exception {
+		file = File.createTempFile("mapped", ".cdx");
+		PrintWriter pw = new PrintWriter(file, "UTF-8");
+		for(int i = 0; i < 20000; i += 2) {
+			pw.println(String.format("com,example)/%06d 20100101000000 x", i));
+		}
+		pw.close();
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private void checkKey(FlatFile ff, MappedLineFile mapped, String key)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			assertEquals(key, ff.findKeyOffset(raf, key),
+					mapped.findKeyOffset(key));
+			assertEquals(key, ff.findKeyOffsetLT(raf, key),
+					mapped.findKeyOffsetLT(key));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testOffsetsMatchFlatFile() throws Exception {
+		FlatFile ff = new FlatFile(file.getAbsolutePath());
+		MappedLineFile mapped = new MappedLineFile(file, 4);
+		for(int i = 0; i < 20000; i += 37) {
+			checkKey(ff, mapped, String.format("com,example)/%06d", i));
+		}
+		checkKey(ff, mapped, "a");
+		checkKey(ff, mapped, "com,example)/");
+		// repeat, now answered from the probe cache:
+		for(int i = 0; i < 20000; i += 37) {
+			checkKey(ff, mapped, String.format("com,example)/%06d", i));
+		}
+		assertEquals(file.length(), mapped.findKeyOffset("zzz"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testMappedRecordIterator() throws Exception {
+		FlatFile ff = new FlatFile(file.getAbsolutePath());
+		ff.setMemoryMapped(true);
+		RecordIterator itr = (RecordIterator) ff.getRecordIterator(
+				"com,example)/000101");
+		assertTrue(itr.hasNext());
+		assertEquals("com,example)/000102 20100101000000 x", itr.next());
+		assertEquals("com,example)/000104 20100101000000 x", itr.next());
+		itr.close();
+
+		itr = (RecordIterator) ff.getRecordIteratorLT("com,example)/000102");
+		assertEquals("com,example)/000100 20100101000000 x", itr.next());
+		itr.close();
+
+		itr = (RecordIterator) ff.getRecordIterator("com,example)/019998");
+		assertEquals("com,example)/019998 20100101000000 x", itr.next());
+		assertFalse(itr.hasNext());
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that sparse index lookups land on the same offsets as the full
+ * on-disk binary search in FlatFile.
+ *
+ * @version $Date$, $Revision$
+ */
+public class SparseLineIndexTest extends TestCase {
+	private File file;
+
+	protected void setUp() throws Exception {
+		file = File.createTempFile("sparse", ".cdx");
+		PrintWriter pw = new PrintWriter(file, "UTF-8");
+		for(int i = 0; i < 20000; i += 2) {
+			pw.println(String.format("com,example)/%06d 20100101000000 x", i));
+		}
+		pw.close();
+	}
+
+	protected void tearDown() throws Exception {
+		new File(file.getAbsolutePath() + ".sparse").delete();
+		file.delete();
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testOffsetsMatchFlatFile() throws Exception {
+		FlatFile plain = new FlatFile(file.getAbsolutePath());
+		FlatFile sparse = new FlatFile(file.getAbsolutePath());
+		sparse.setSparseIndexInterval(1024);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			String keys[] = {"a", "com,example)/", "com,example)/000100",
+					"com,example)/000101", "com,example)/019998", "zzz"};
+			for(String key : keys) {
+				assertEquals(key, plain.findKeyOffset(raf, key),
+						sparse.findKeyOffset(raf, key));
+				assertEquals(key, raf.getFilePointer(),
+						sparse.findKeyOffset(raf, key));
+				assertEquals(key, plain.findKeyOffsetLT(raf, key),
+						sparse.findKeyOffsetLT(raf, key));
+			}
+			for(int i = 0; i < 20000; i += 37) {
+				String key = String.format("com,example)/%06d", i);
+				assertEquals(key, plain.findKeyOffset(raf, key),
+						sparse.findKeyOffset(raf, key));
+				assertEquals(key, plain.findKeyOffsetLT(raf, key),
+						sparse.findKeyOffsetLT(raf, key));
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testTruncatedKeys() throws Exception {
+		SparseLineIndex index = SparseLineIndex.build(file, 100, 13);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FlatFile plain = new FlatFile(file.getAbsolutePath());
+			String key = "com,example)/000100";
+			assertEquals(plain.findKeyOffset(raf, key),
+					index.findKeyOffset(raf, key, false));
+			assertEquals(plain.findKeyOffsetLT(raf, key),
+					index.findKeyOffset(raf, key, true));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testStoreAndLoad() throws Exception {
+		SparseLineIndex index = SparseLineIndex.build(file, 4096,
+				SparseLineIndex.DEFAULT_MAX_KEY_LENGTH);
+		File indexFile = new File(file.getAbsolutePath() + ".sparse");
+		index.store(indexFile);
+		SparseLineIndex loaded = SparseLineIndex.load(indexFile);
+		assertEquals(index.size(), loaded.size());
+		assertTrue(loaded.isCurrent(file, 4096));
+		assertFalse(loaded.isCurrent(file, 8192));
+	}
+}